@@ -0,0 +1,124 @@
+package io.ologn.common.bench;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+import io.ologn.common.collect.OlognArrays;
+
+/**
+ * Throughput report for the primitive array statistics of 
+ * {@link OlognArrays}, next to the boxed object versions, the streams and 
+ * the plain one-accumulator loops they replace.<br>
+ * The inputs use a fixed seed. The numbers depend on the machine and the 
+ * JIT.<br>
+ * Run from the repository root:<br>
+ * {@code javac -cp libs/* -d out $(find src bench -name "*.java")}<br>
+ * {@code java -cp out io.ologn.common.bench.ArrayStatsBenchmark [length]}
+ * @author lisq199
+ */
+public class ArrayStatsBenchmark {
+	
+	protected static final long SEED = 0x5EED;
+	protected static final int RUNS = 10;
+	
+	/**
+	 * The kernels only run a few times each, so every kernel is warmed up 
+	 * for at least this many calls and this long, which gives the JIT 
+	 * time to compile the loops even on one CPU
+	 */
+	protected static final int WARMUP_RUNS = 30;
+	protected static final long WARMUP_NANOS = 2_000_000_000L;
+	
+	public static void main(String[] args) {
+		int length = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 22;
+		report(System.out, length);
+	}
+	
+	/**
+	 * Print the full report
+	 * @param ps
+	 * @param length the length of the arrays
+	 */
+	public static void report(PrintStream ps, int length) {
+		Random random = new Random(SEED);
+		int[] ints = new int[length];
+		double[] doubles = new double[length];
+		for (int i = 0; i < length; i++) {
+			ints[i] = random.nextInt();
+			doubles[i] = random.nextGaussian();
+		}
+		Integer[] boxed = Arrays.stream(ints).boxed().toArray(Integer[]::new);
+		ps.printf("length: %d%n%n%-36s %10s%n", length, "kernel", "ns/elem");
+		print(ps, "min(Integer[]) (old)", length,
+				() -> OlognArrays.min(boxed));
+		print(ps, "IntStream.min", length,
+				() -> IntStream.of(ints).min().getAsInt());
+		print(ps, "min(int[])", length, () -> OlognArrays.min(ints));
+		print(ps, "minMax(int[])", length,
+				() -> OlognArrays.minMax(ints)[1]);
+		print(ps, "IntStream.asLongStream.sum", length,
+				() -> IntStream.of(ints).asLongStream().sum());
+		print(ps, "sum(int[])", length, () -> OlognArrays.sum(ints));
+		print(ps, "DoubleStream.sum", length,
+				() -> DoubleStream.of(doubles).sum());
+		print(ps, "one accumulator loop", length, () -> {
+			double sum = 0;
+			for (double d : doubles) {
+				sum += d;
+			}
+			return sum;
+		});
+		print(ps, "sum(double[])", length, () -> OlognArrays.sum(doubles));
+		print(ps, "one pass variance loop", length, () -> {
+			double sum = 0;
+			double squares = 0;
+			for (double d : doubles) {
+				sum += d;
+				squares += d * d;
+			}
+			double mean = sum / doubles.length;
+			return squares / doubles.length - mean * mean;
+		});
+		print(ps, "variance(double[])", length,
+				() -> OlognArrays.variance(doubles));
+		print(ps, "max(double[])", length, () -> OlognArrays.max(doubles));
+	}
+	
+	protected static void print(PrintStream ps, String name, int length,
+			DoubleSupplier kernel) {
+		ps.printf("%-36s %10.3f%n", name, nanosPerElement(kernel, length));
+	}
+	
+	/**
+	 * Measure a kernel over an array, keeping the best of several runs 
+	 * after warmup. See {@link #WARMUP_NANOS}.
+	 * @param kernel
+	 * @param length the length of the array the kernel reads
+	 * @return
+	 */
+	public static double nanosPerElement(DoubleSupplier kernel, int length) {
+		double sink = 0;
+		long warmupStart = System.nanoTime();
+		for (int r = 0; r < WARMUP_RUNS
+				|| System.nanoTime() - warmupStart < WARMUP_NANOS; r++) {
+			sink += kernel.getAsDouble();
+		}
+		double best = Double.MAX_VALUE;
+		for (int r = 0; r < RUNS; r++) {
+			long start = System.nanoTime();
+			sink += kernel.getAsDouble();
+			best = Math.min(best,
+					(double) (System.nanoTime() - start) / length);
+		}
+		if (sink == 42) {
+			// Keep the results alive
+			System.out.print("");
+		}
+		return best;
+	}
+	
+}
@@ -0,0 +1,78 @@
+package io.ologn.common.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs every kernel of a benchmark in a new JVM with the same classpath. 
+ * <br>
+ * In one JVM, the kernels share the call sites of the harness, such as 
+ * the call of a lambda or of equals in a shared loop. Once such a call 
+ * site has seen several classes, the JIT stops inlining it, so the 
+ * numbers of a kernel depend on which kernels ran before it. In its own 
+ * JVM, every call site of a kernel only sees the classes of that kernel. 
+ * <br>
+ * A benchmark main method checks {@link #isKernel(String[])} first. If 
+ * it is true, it runs the kernel named by the second argument and prints 
+ * the result as the last line.
+ * @author lisq199
+ */
+public class ForkedRunner {
+	
+	public static final String KERNEL_ARG = "--kernel";
+	
+	/**
+	 * Check if the arguments of a main method ask to run one kernel
+	 * @param args
+	 * @return
+	 */
+	public static boolean isKernel(String[] args) {
+		return args.length > 1 && KERNEL_ARG.equals(args[0]);
+	}
+	
+	/**
+	 * Run one kernel of a benchmark in a new JVM
+	 * @param main the benchmark class with the main method
+	 * @param kernel the name of the kernel
+	 * @param args more arguments for the kernel
+	 * @return the number printed on the last line
+	 * @throws IOException
+	 * @throws InterruptedException
+	 * @throws IllegalStateException if the JVM fails
+	 */
+	public static double run(Class<?> main, String kernel, String... args)
+			throws IOException, InterruptedException {
+		List<String> command = new ArrayList<String>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+				.toString());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(main.getName());
+		command.add(KERNEL_ARG);
+		command.add(kernel);
+		command.addAll(Arrays.asList(args));
+		Process process = new ProcessBuilder(command)
+				.redirectError(Redirect.INHERIT).start();
+		String last = null;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				process.getInputStream(), StandardCharsets.UTF_8))) {
+			for (String line; (line = reader.readLine()) != null;) {
+				last = line;
+			}
+		}
+		int status = process.waitFor();
+		if (status != 0 || last == null) {
+			throw new IllegalStateException("kernel " + kernel
+					+ " failed with status " + status);
+		}
+		return Double.parseDouble(last.trim());
+	}
+
+}
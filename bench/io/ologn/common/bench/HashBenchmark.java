@@ -0,0 +1,142 @@
+package io.ologn.common.bench;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import io.ologn.common.Murmur3Hash128;
+import io.ologn.common.OlognHashCode;
+import io.ologn.common.XxHash64;
+import io.ologn.common.bench.HashQuality.KeyHash;
+
+/**
+ * Hash quality and throughput report for {@link OlognHashCode} with 
+ * different start/prime choices, {@link XxHash64} and 
+ * {@link Murmur3Hash128}. Every key is a long that is hashed as 2 int 
+ * fields (high and low), so the start/prime choice actually matters.<br>
+ * All random inputs use fixed seeds, so the quality numbers are 
+ * reproducible. Throughput numbers depend on the machine. Every hash is 
+ * timed in its own JVM with {@link ForkedRunner}, because the hashes are 
+ * called through one KeyHash call site, which stops being inlined once 
+ * it has seen several of them.<br>
+ * Run from the repository root:<br>
+ * {@code javac -cp libs/* -d out $(find src bench -name "*.java")}<br>
+ * {@code java -cp out io.ologn.common.bench.HashBenchmark [keys] [log2Buckets]}
+ * @author lisq199
+ */
+public class HashBenchmark {
+	
+	protected static final long SEED = 0x5EED;
+	
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+		if (ForkedRunner.isKernel(args)) {
+			KeyHash h = hashes().get(args[1]);
+			if (h == null) {
+				throw new IllegalArgumentException("unknown hash: "
+						+ args[1]);
+			}
+			long[] keys = keySets(Integer.parseInt(args[2])).get("random");
+			System.out.println(HashQuality.nanosPerHash(h, keys));
+			return;
+		}
+		int keys = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+		int log2Buckets = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		report(System.out, keys, log2Buckets);
+	}
+	
+	/**
+	 * Print the full report
+	 * @param ps
+	 * @param keys the number of keys in each key set
+	 * @param log2Buckets the table size for the bucket metrics
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void report(PrintStream ps, int keys, int log2Buckets)
+			throws IOException, InterruptedException {
+		Map<String, long[]> keySets = keySets(keys);
+		int buckets = 1 << log2Buckets;
+		ps.printf("keys: %d, buckets: %d, expected collision rate: %.4f%n%n",
+				keys, buckets,
+				HashQuality.expectedCollisionRate(buckets, keys));
+		ps.printf("%-28s %8s %8s %8s", "hash", "ns/hash", "avgBias",
+				"maxBias");
+		for (String name : keySets.keySet()) {
+			ps.printf(" %10s %8s", name + ":coll", "chi2 z");
+		}
+		ps.println();
+		for (Map.Entry<String, KeyHash> e : hashes().entrySet()) {
+			KeyHash h = e.getValue();
+			int bits = e.getKey().startsWith("OlognHashCode") ? 32 : 64;
+			double[] avalanche = HashQuality.avalanche(h, bits, 2000, SEED);
+			double ns = ForkedRunner.run(HashBenchmark.class, e.getKey(),
+					Integer.toString(keys));
+			ps.printf("%-28s %8.2f %8.4f %8.4f", e.getKey(), ns,
+					avalanche[0], avalanche[1]);
+			for (long[] set : keySets.values()) {
+				int[] counts = HashQuality.bucketCounts(h, set, log2Buckets);
+				ps.printf(" %10.4f %8.1f",
+						HashQuality.collisionRate(counts, set.length),
+						HashQuality.chiSquaredZ(counts, set.length));
+			}
+			ps.println();
+		}
+	}
+	
+	/**
+	 * The hash functions in the report
+	 * @return
+	 */
+	protected static Map<String, KeyHash> hashes() {
+		Map<String, KeyHash> hashes = new LinkedHashMap<String, KeyHash>();
+		int[][] startPrimes = {
+			{37, 31}, {17, 31}, {1, 31}, {37, 37}, {37, 101},
+			{37, 0x01000193}, {37, 0x9E3779B1}
+		};
+		for (int[] sp : startPrimes) {
+			int start = sp[0];
+			int prime = sp[1];
+			hashes.put("OlognHashCode(" + start + ", 0x"
+					+ Integer.toHexString(prime) + ")",
+					key -> OlognHashCode.init(start, prime)
+							.addInt((int) (key >>> 32)).addInt((int) key)
+							.get());
+		}
+		hashes.put("XxHash64.hashLong", XxHash64::hashLong);
+		hashes.put("XxHash64 builder",
+				key -> XxHash64.init().addLong(key).get());
+		hashes.put("Murmur3Hash128 low",
+				key -> Murmur3Hash128.init().addLong(key).getLow());
+		return hashes;
+	}
+	
+	/**
+	 * The key sets in the report
+	 * @param n
+	 * @return
+	 */
+	protected static Map<String, long[]> keySets(int n) {
+		Map<String, long[]> sets = new LinkedHashMap<String, long[]>();
+		long[] sequential = new long[n];
+		long[] strided = new long[n];
+		long[] grid = new long[n];
+		long[] random = new long[n];
+		int side = (int) Math.ceil(Math.sqrt(n));
+		Random r = new Random(SEED);
+		for (int i = 0; i < n; i++) {
+			sequential[i] = i;
+			strided[i] = (long) i << 10;
+			grid[i] = (long) (i / side) << 32 | (i % side);
+			random[i] = r.nextLong();
+		}
+		sets.put("seq", sequential);
+		sets.put("stride", strided);
+		sets.put("grid", grid);
+		sets.put("random", random);
+		return sets;
+	}
+
+}
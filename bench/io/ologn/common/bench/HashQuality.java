@@ -0,0 +1,146 @@
+package io.ologn.common.bench;
+
+import java.util.Random;
+
+/**
+ * Distribution quality metrics for hash functions of long keys.<br>
+ * All the metrics only look at the lowest {@code bits} bits of the 
+ * results, so 32-bit and 64-bit hash functions can be compared.
+ * @author lisq199
+ */
+public class HashQuality {
+	
+	/**
+	 * A hash function of long keys
+	 */
+	@FunctionalInterface
+	public interface KeyHash {
+		long hash(long key);
+	}
+	
+	/**
+	 * Avalanche test: flip every input bit of random keys and check the 
+	 * probability of every output bit flipping, which should be 0.5.
+	 * @param h
+	 * @param bits the number of output bits
+	 * @param samples the number of random keys
+	 * @param seed
+	 * @return {mean bias, max bias}, where bias is |p - 0.5|
+	 */
+	public static double[] avalanche(KeyHash h, int bits, int samples,
+			long seed) {
+		long[][] flips = new long[64][bits];
+		Random random = new Random(seed);
+		for (int s = 0; s < samples; s++) {
+			long key = random.nextLong();
+			long base = h.hash(key);
+			for (int in = 0; in < 64; in++) {
+				long diff = base ^ h.hash(key ^ (1L << in));
+				for (int out = 0; out < bits; out++) {
+					flips[in][out] += (diff >>> out) & 1;
+				}
+			}
+		}
+		double sum = 0;
+		double max = 0;
+		for (int in = 0; in < 64; in++) {
+			for (int out = 0; out < bits; out++) {
+				double bias = Math.abs((double) flips[in][out] / samples
+						- 0.5);
+				sum += bias;
+				max = Math.max(max, bias);
+			}
+		}
+		return new double[] {sum / (64 * bits), max};
+	}
+	
+	/**
+	 * Count how many keys land in each bucket of a power-of-two table, 
+	 * using the low bits of the hash like java.util.HashMap does 
+	 * (without its extra spreading).
+	 * @param h
+	 * @param keys
+	 * @param log2Buckets
+	 * @return
+	 */
+	public static int[] bucketCounts(KeyHash h, long[] keys,
+			int log2Buckets) {
+		int[] counts = new int[1 << log2Buckets];
+		int mask = counts.length - 1;
+		for (long key : keys) {
+			counts[(int) h.hash(key) & mask]++;
+		}
+		return counts;
+	}
+	
+	/**
+	 * The fraction of keys that land in an already occupied bucket
+	 * @param counts
+	 * @param keys
+	 * @return
+	 */
+	public static double collisionRate(int[] counts, int keys) {
+		int occupied = 0;
+		for (int c : counts) {
+			if (c > 0) {
+				occupied++;
+			}
+		}
+		return (double) (keys - occupied) / keys;
+	}
+	
+	/**
+	 * The collision rate of an ideal random hash function
+	 * @param buckets
+	 * @param keys
+	 * @return
+	 */
+	public static double expectedCollisionRate(int buckets, int keys) {
+		double occupied = buckets
+				* -Math.expm1(keys * Math.log1p(-1.0 / buckets));
+		return (keys - occupied) / keys;
+	}
+	
+	/**
+	 * Chi-squared statistic of the bucket counts against a uniform 
+	 * distribution, normalized to a z-score: (chi2 - dof) / sqrt(2 dof). 
+	 * Values within about +/-3 are consistent with a uniform hash.
+	 * @param counts
+	 * @param keys
+	 * @return
+	 */
+	public static double chiSquaredZ(int[] counts, int keys) {
+		double expected = (double) keys / counts.length;
+		double chi2 = 0;
+		for (int c : counts) {
+			double d = c - expected;
+			chi2 += d * d / expected;
+		}
+		int dof = counts.length - 1;
+		return (chi2 - dof) / Math.sqrt(2.0 * dof);
+	}
+	
+	/**
+	 * Measure the average time of one hash call in nanoseconds, with the 
+	 * warmup and best of several runs of 
+	 * {@link ArrayStatsBenchmark#nanosPerElement(java.util.function.DoubleSupplier, int)}.<br>
+	 * Only measure one hash per JVM, for example with 
+	 * {@link ForkedRunner}. The hash is called from one call site here, 
+	 * and once that call site has seen several hashes, the JIT stops 
+	 * inlining it, so the later hashes would be timed through a virtual 
+	 * call.
+	 * @param h
+	 * @param keys
+	 * @return
+	 */
+	public static double nanosPerHash(KeyHash h, long[] keys) {
+		return ArrayStatsBenchmark.nanosPerElement(() -> {
+			long sum = 0;
+			for (long key : keys) {
+				sum += h.hash(key);
+			}
+			return sum;
+		}, keys.length);
+	}
+
+}
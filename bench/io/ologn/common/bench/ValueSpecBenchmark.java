@@ -0,0 +1,292 @@
+package io.ologn.common.bench;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntFunction;
+
+import io.ologn.common.OlognHashCode;
+import io.ologn.common.ValueSpec;
+
+/**
+ * Throughput report for the equals and hashCode generated by 
+ * {@link ValueSpec}, next to the hand-written OlognHashCode versions. 
+ * Every variant is its own class, and every kernel runs in its own JVM 
+ * with {@link ForkedRunner}, so the call sites of a kernel only see one 
+ * class.<br>
+ * "spec" calls the handles held by the spec, and "static handles" calls 
+ * the handles stored in static final fields of the class.<br>
+ * Run from the repository root:<br>
+ * {@code javac -cp libs/* -d out $(find src bench -name "*.java")}<br>
+ * {@code java -cp out io.ologn.common.bench.ValueSpecBenchmark [length]}
+ * @author lisq199
+ */
+public class ValueSpecBenchmark {
+	
+	protected static final String[] OPERATIONS = {"hashCode", "equals"};
+	
+	/**
+	 * The classes by group and variant, as "group/variant"
+	 */
+	protected static final Map<String, IntFunction<?>> CLASSES =
+			new LinkedHashMap<String, IntFunction<?>>();
+	
+	static {
+		CLASSES.put("4 doubles, like LinearScale/hand-written",
+				HandDoubles::new);
+		CLASSES.put("4 doubles, like LinearScale/spec", SpecDoubles::new);
+		CLASSES.put("4 doubles, like LinearScale/static handles",
+				StaticDoubles::new);
+		CLASSES.put("String, int and String[], like ClassFileInfo/"
+				+ "hand-written", HandStrings::new);
+		CLASSES.put("String, int and String[], like ClassFileInfo/spec",
+				SpecStrings::new);
+		CLASSES.put("String, int and String[], like ClassFileInfo/"
+				+ "static handles", StaticStrings::new);
+	}
+	
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+		if (ForkedRunner.isKernel(args)) {
+			int length = Integer.parseInt(args[2]);
+			System.out.println(ArrayStatsBenchmark.nanosPerElement(
+					kernel(args[1], length), length));
+			return;
+		}
+		int length = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 16;
+		report(System.out, length);
+	}
+	
+	/**
+	 * Print the full report, running every kernel in its own JVM
+	 * @param ps
+	 * @param length the number of objects hashed and compared per run
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void report(PrintStream ps, int length)
+			throws IOException, InterruptedException {
+		ps.printf("length: %d%n%n%-44s %10s%n", length, "kernel",
+				"ns/call");
+		for (String operation : OPERATIONS) {
+			String group = null;
+			for (String key : CLASSES.keySet()) {
+				String[] groupVariant = key.split("/");
+				if (!groupVariant[0].equals(group)) {
+					group = groupVariant[0];
+					ps.println(group);
+				}
+				double ns = ForkedRunner.run(ValueSpecBenchmark.class,
+						operation + "/" + key, Integer.toString(length));
+				ps.printf("  %-42s %10.3f%n", operation + " "
+						+ groupVariant[1], ns);
+			}
+		}
+	}
+	
+	/**
+	 * Create a kernel by name
+	 * @param name "operation/group/variant"
+	 * @param length
+	 * @return
+	 */
+	protected static DoubleSupplier kernel(String name, int length) {
+		int slash = name.indexOf('/');
+		IntFunction<?> factory = CLASSES.get(name.substring(slash + 1));
+		if (factory == null) {
+			throw new IllegalArgumentException("unknown kernel: " + name);
+		}
+		return name.startsWith("hashCode/") ? hashCodes(length, factory)
+				: equals(length, factory);
+	}
+	
+	/**
+	 * A kernel that sums the hash codes of objects
+	 */
+	protected static <T> DoubleSupplier hashCodes(int length,
+			IntFunction<T> factory) {
+		Object[] objects = create(length, factory);
+		return () -> {
+			int sum = 0;
+			for (Object o : objects) {
+				sum += o.hashCode();
+			}
+			return sum;
+		};
+	}
+	
+	/**
+	 * A kernel that compares objects with equal copies
+	 */
+	protected static <T> DoubleSupplier equals(int length,
+			IntFunction<T> factory) {
+		Object[] objects = create(length, factory);
+		Object[] copies = create(length, factory);
+		return () -> {
+			int count = 0;
+			for (int i = 0; i < objects.length; i++) {
+				if (objects[i].equals(copies[i])) {
+					count++;
+				}
+			}
+			return count;
+		};
+	}
+	
+	protected static <T> Object[] create(int length,
+			IntFunction<T> factory) {
+		Object[] objects = new Object[length];
+		for (int i = 0; i < length; i++) {
+			objects[i] = factory.apply(i);
+		}
+		return objects;
+	}
+	
+	protected static class HandDoubles {
+		
+		protected final double a, b, c, d;
+		
+		protected HandDoubles(int i) {
+			a = i;
+			b = i * 0.5;
+			c = -i;
+			d = i * 3.0;
+		}
+		
+		@Override
+		public int hashCode() {
+			return OlognHashCode.hash(OlognHashCode.hashOf(a),
+					OlognHashCode.hashOf(b), OlognHashCode.hashOf(c),
+					OlognHashCode.hashOf(d));
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return OlognHashCode.equals(this, obj, (x, y) -> x.a == y.a
+					&& x.b == y.b && x.c == y.c && x.d == y.d);
+		}
+	
+	}
+	
+	protected static class SpecDoubles extends HandDoubles {
+		
+		protected static final ValueSpec<SpecDoubles> SPEC = ValueSpec.of(
+				SpecDoubles.class, "a", "b", "c", "d");
+		
+		protected SpecDoubles(int i) {
+			super(i);
+		}
+		
+		@Override
+		public int hashCode() {
+			return SPEC.hashCode(this);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return SPEC.equals(this, obj);
+		}
+	
+	}
+	
+	protected static class StaticDoubles extends HandDoubles {
+		
+		protected static final ValueSpec<StaticDoubles> SPEC = ValueSpec.of(
+				StaticDoubles.class, "a", "b", "c", "d");
+		protected static final MethodHandle HASH_CODE =
+				SPEC.getHashCodeHandle();
+		protected static final MethodHandle EQUALS = SPEC.getEqualsHandle();
+		
+		protected StaticDoubles(int i) {
+			super(i);
+		}
+		
+		@Override
+		public int hashCode() {
+			return ValueSpec.invokeHashCode(HASH_CODE, this);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return ValueSpec.invokeEquals(EQUALS, this, obj);
+		}
+	
+	}
+	
+	protected static class HandStrings {
+		
+		protected final String name;
+		protected final int flags;
+		protected final String[] names;
+		
+		protected HandStrings(int i) {
+			name = "io.ologn.common.Name" + i;
+			flags = i;
+			names = new String[] {"java.io.Closeable", "Interface" + i};
+		}
+		
+		@Override
+		public int hashCode() {
+			return OlognHashCode.hash(OlognHashCode.hashOf(name),
+					OlognHashCode.hashOf(flags), Arrays.hashCode(names));
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return OlognHashCode.equals(this, obj, (x, y) ->
+					x.name.equals(y.name) && x.flags == y.flags
+					&& Arrays.equals(x.names, y.names));
+		}
+	
+	}
+	
+	protected static class SpecStrings extends HandStrings {
+		
+		protected static final ValueSpec<SpecStrings> SPEC = ValueSpec.of(
+				SpecStrings.class, "name", "flags", "names");
+		
+		protected SpecStrings(int i) {
+			super(i);
+		}
+		
+		@Override
+		public int hashCode() {
+			return SPEC.hashCode(this);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return SPEC.equals(this, obj);
+		}
+	
+	}
+	
+	protected static class StaticStrings extends HandStrings {
+		
+		protected static final ValueSpec<StaticStrings> SPEC = ValueSpec.of(
+				StaticStrings.class, "name", "flags", "names");
+		protected static final MethodHandle HASH_CODE =
+				SPEC.getHashCodeHandle();
+		protected static final MethodHandle EQUALS = SPEC.getEqualsHandle();
+		
+		protected StaticStrings(int i) {
+			super(i);
+		}
+		
+		@Override
+		public int hashCode() {
+			return ValueSpec.invokeHashCode(HASH_CODE, this);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return ValueSpec.invokeEquals(EQUALS, this, obj);
+		}
+	
+	}
+
+}
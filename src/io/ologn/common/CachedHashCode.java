@@ -0,0 +1,47 @@
+package io.ologn.common;
+
+/**
+ * Base class for immutable types whose hash code is expensive to compute. 
+ * The hash code is computed on the first call of hashCode() and cached, 
+ * so later calls are O(1).<br>
+ * The cache uses the racy single-check idiom (like java.lang.String): 
+ * there is no locking, and several threads may compute the hash code at 
+ * the same time, which is harmless because they all get the same result.
+ * <br>
+ * Note: Only extend this class if the fields used by 
+ * {@link #computeHashCode()} never change after construction.
+ * @author lisq199
+ */
+public abstract class CachedHashCode {
+	
+	/**
+	 * The cached hash code, or 0 if it has not been computed
+	 */
+	private transient int hash;
+	
+	/**
+	 * Whether the computed hash code is actually 0
+	 */
+	private transient boolean hashIsZero;
+	
+	/**
+	 * Compute the hash code. Only called until a result has been cached.
+	 * @return
+	 */
+	protected abstract int computeHashCode();
+	
+	@Override
+	public int hashCode() {
+		int h = hash;
+		if (h == 0 && !hashIsZero) {
+			h = computeHashCode();
+			if (h == 0) {
+				hashIsZero = true;
+			} else {
+				hash = h;
+			}
+		}
+		return h;
+	}
+
+}
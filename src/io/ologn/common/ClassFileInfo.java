@@ -0,0 +1,381 @@
+package io.ologn.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The header of a class file: its name, access flags, superclass, 
+ * interfaces and runtime-visible annotations. It is parsed straight from 
+ * the bytes of the class file, so the class does not have to be loaded.
+ * <br>
+ * Only the constant pool entries that are needed are decoded, and fields 
+ * and methods are skipped without being parsed.<br>
+ * Source of format: <a href="https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-4.html">
+ * link</a><br>
+ * All the names are fully qualified binary names, such as 
+ * "java.util.Map$Entry".
+ * @author lisq199
+ */
+public class ClassFileInfo {
+	
+	protected static final int MAGIC = 0xCAFEBABE;
+	protected static final int ACC_ANNOTATION = 0x2000;
+	
+	/**
+	 * Only used by toString, equals and hashCode are hand-written
+	 */
+	protected static final ValueSpec<ClassFileInfo> SPEC = ValueSpec.of(
+			ClassFileInfo.class, "name", "accessFlags", "superName",
+			"interfaces", "annotations");
+	
+	protected final String name;
+	protected final int accessFlags;
+	protected final String superName;
+	protected final String[] interfaces;
+	protected final String[] annotations;
+	
+	protected ClassFileInfo(String name, int accessFlags, String superName,
+			String[] interfaces, String[] annotations) {
+		this.name = name;
+		this.accessFlags = accessFlags;
+		this.superName = superName;
+		this.interfaces = interfaces;
+		this.annotations = annotations;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Get the package name, or "" for the default package
+	 * @return
+	 */
+	public String getPackageName() {
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? "" : name.substring(0, dot);
+	}
+	
+	/**
+	 * Get the access flags of the class file. Note: for nested classes 
+	 * these are not the same as Class.getModifiers(), which come from the 
+	 * InnerClasses attribute.
+	 * @return
+	 */
+	public int getAccessFlags() {
+		return accessFlags;
+	}
+	
+	/**
+	 * Get the name of the superclass, or null for java.lang.Object and 
+	 * module-info
+	 * @return
+	 */
+	public String getSuperName() {
+		return superName;
+	}
+	
+	/**
+	 * Get the names of the directly implemented interfaces
+	 * @return
+	 */
+	public String[] getInterfaces() {
+		return interfaces.clone();
+	}
+	
+	/**
+	 * Get the names of the runtime-visible annotation types directly on 
+	 * the class
+	 * @return
+	 */
+	public String[] getAnnotations() {
+		return annotations.clone();
+	}
+	
+	public boolean isPublic() {
+		return Modifier.isPublic(accessFlags);
+	}
+	
+	public boolean isAbstract() {
+		return Modifier.isAbstract(accessFlags);
+	}
+	
+	public boolean isInterface() {
+		return Modifier.isInterface(accessFlags);
+	}
+	
+	public boolean isAnnotation() {
+		return (accessFlags & ACC_ANNOTATION) != 0;
+	}
+	
+	/**
+	 * Check if the class directly implements an interface
+	 * @param interfaceName
+	 * @return
+	 */
+	public boolean hasInterface(String interfaceName) {
+		for (String i : interfaces) {
+			if (i.equals(interfaceName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Check if the class is directly annotated with an annotation type
+	 * @param annotationName
+	 * @return
+	 */
+	public boolean hasAnnotation(String annotationName) {
+		for (String a : annotations) {
+			if (a.equals(annotationName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public int hashCode() {
+		return OlognHashCode.hash(OlognHashCode.hashOf(name),
+				OlognHashCode.hashOf(accessFlags),
+				OlognHashCode.hashOf(superName), Arrays.hashCode(interfaces),
+				Arrays.hashCode(annotations));
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		return OlognHashCode.equals(this, obj, (a, b) ->
+				a.name.equals(b.name) && a.accessFlags == b.accessFlags
+				&& Objects.equals(a.superName, b.superName)
+				&& Arrays.equals(a.interfaces, b.interfaces)
+				&& Arrays.equals(a.annotations, b.annotations));
+	}
+	
+	@Override
+	public String toString() {
+		return SPEC.toString(this);
+	}
+	
+	/**
+	 * Create a ClassFileInfo from values that were parsed before, for 
+	 * example from an index.
+	 * @return
+	 */
+	public static ClassFileInfo init(String name, int accessFlags,
+			String superName, String[] interfaces, String[] annotations) {
+		return new ClassFileInfo(name, accessFlags, superName,
+				interfaces.clone(), annotations.clone());
+	}
+	
+	/**
+	 * Parse the bytes of a class file
+	 * @param bytes
+	 * @return
+	 */
+	public static ClassFileInfo parse(byte[] bytes) {
+		return parse(ByteBuffer.wrap(bytes));
+	}
+	
+	/**
+	 * Read and parse a class file from an InputStream. The stream is not 
+	 * closed.
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static ClassFileInfo parse(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] chunk = new byte[8192];
+		int n;
+		while ((n = in.read(chunk)) != -1) {
+			out.write(chunk, 0, n);
+		}
+		return parse(out.toByteArray());
+	}
+	
+	/**
+	 * Parse a class file from the remaining bytes of a ByteBuffer, which 
+	 * can also be a mapped buffer. The position of the buffer is not 
+	 * changed.
+	 * @param buffer
+	 * @return
+	 * @throws IllegalArgumentException if it's not a valid class file
+	 */
+	public static ClassFileInfo parse(ByteBuffer buffer) {
+		ByteBuffer b = buffer.slice();
+		try {
+			if (b.getInt() != MAGIC) {
+				throw new IllegalArgumentException("not a class file");
+			}
+			b.getInt(); // minor and major version
+			int poolCount = b.getShort() & 0xFFFF;
+			// The offset of every constant pool entry, after its tag
+			int[] offsets = new int[poolCount];
+			for (int i = 1; i < poolCount; i++) {
+				byte tag = b.get();
+				offsets[i] = b.position();
+				switch (tag) {
+				case 1: // Utf8
+					skip(b, b.getShort() & 0xFFFF);
+					break;
+				case 7: case 8: case 16: case 19: case 20:
+					skip(b, 2);
+					break;
+				case 15:
+					skip(b, 3);
+					break;
+				case 3: case 4: case 9: case 10: case 11: case 12:
+				case 17: case 18:
+					skip(b, 4);
+					break;
+				case 5: case 6:
+					// Long and Double take 2 entries
+					skip(b, 8);
+					i++;
+					break;
+				default:
+					throw new IllegalArgumentException(
+							"invalid constant pool tag " + tag);
+				}
+			}
+			int accessFlags = b.getShort() & 0xFFFF;
+			String name = className(b, offsets, b.getShort() & 0xFFFF);
+			int superIndex = b.getShort() & 0xFFFF;
+			String superName = superIndex == 0 ? null
+					: className(b, offsets, superIndex);
+			String[] interfaces = new String[b.getShort() & 0xFFFF];
+			for (int i = 0; i < interfaces.length; i++) {
+				interfaces[i] = className(b, offsets, b.getShort() & 0xFFFF);
+			}
+			// Fields, then methods
+			for (int k = 0; k < 2; k++) {
+				int count = b.getShort() & 0xFFFF;
+				for (int i = 0; i < count; i++) {
+					skip(b, 6);
+					skipAttributes(b);
+				}
+			}
+			List<String> annotations = new ArrayList<String>();
+			int attributes = b.getShort() & 0xFFFF;
+			for (int i = 0; i < attributes; i++) {
+				String attribute = utf8(b, offsets[b.getShort() & 0xFFFF]);
+				int length = b.getInt();
+				int end = b.position() + length;
+				if (attribute.equals("RuntimeVisibleAnnotations")) {
+					int count = b.getShort() & 0xFFFF;
+					for (int j = 0; j < count; j++) {
+						String descriptor = utf8(b,
+								offsets[b.getShort() & 0xFFFF]);
+						annotations.add(descriptorToName(descriptor));
+						skipElementValuePairs(b);
+					}
+				}
+				b.position(end);
+			}
+			return new ClassFileInfo(name, accessFlags, superName,
+					interfaces, annotations.toArray(new String[0]));
+		} catch (RuntimeException e) {
+			if (e instanceof IllegalArgumentException) {
+				throw e;
+			}
+			throw new IllegalArgumentException("malformed class file", e);
+		}
+	}
+	
+	protected static void skip(ByteBuffer b, int n) {
+		b.position(b.position() + n);
+	}
+	
+	protected static void skipAttributes(ByteBuffer b) {
+		int count = b.getShort() & 0xFFFF;
+		for (int i = 0; i < count; i++) {
+			skip(b, 2);
+			skip(b, b.getInt());
+		}
+	}
+	
+	protected static void skipElementValuePairs(ByteBuffer b) {
+		int pairs = b.getShort() & 0xFFFF;
+		for (int i = 0; i < pairs; i++) {
+			skip(b, 2);
+			skipElementValue(b);
+		}
+	}
+	
+	protected static void skipElementValue(ByteBuffer b) {
+		char tag = (char) b.get();
+		switch (tag) {
+		case 'e':
+			skip(b, 4);
+			break;
+		case '@':
+			skip(b, 2);
+			skipElementValuePairs(b);
+			break;
+		case '[':
+			int count = b.getShort() & 0xFFFF;
+			for (int i = 0; i < count; i++) {
+				skipElementValue(b);
+			}
+			break;
+		default:
+			// B C D F I J S Z s c
+			skip(b, 2);
+			break;
+		}
+	}
+	
+	/**
+	 * The name of a CONSTANT_Class entry
+	 */
+	protected static String className(ByteBuffer b, int[] offsets,
+			int index) {
+		int nameIndex = b.getShort(offsets[index]) & 0xFFFF;
+		return utf8(b, offsets[nameIndex]).replace('/', '.');
+	}
+	
+	/**
+	 * Decode the modified UTF-8 of a CONSTANT_Utf8 entry at an absolute 
+	 * offset
+	 */
+	protected static String utf8(ByteBuffer b, int offset) {
+		int length = b.getShort(offset) & 0xFFFF;
+		char[] chars = new char[length];
+		int n = 0;
+		int end = offset + 2 + length;
+		for (int i = offset + 2; i < end; ) {
+			int c = b.get(i++) & 0xFF;
+			if (c < 0x80) {
+				chars[n++] = (char) c;
+			} else if ((c & 0xE0) == 0xC0) {
+				chars[n++] = (char) ((c & 0x1F) << 6 | (b.get(i++) & 0x3F));
+			} else {
+				chars[n++] = (char) ((c & 0x0F) << 12
+						| (b.get(i++) & 0x3F) << 6 | (b.get(i++) & 0x3F));
+			}
+		}
+		return new String(chars, 0, n);
+	}
+	
+	/**
+	 * Convert a field descriptor such as "Ljava/lang/Deprecated;" to a 
+	 * class name
+	 */
+	protected static String descriptorToName(String descriptor) {
+		if (descriptor.startsWith("L") && descriptor.endsWith(";")) {
+			return descriptor.substring(1, descriptor.length() - 1)
+					.replace('/', '.');
+		}
+		return descriptor;
+	}
+
+}
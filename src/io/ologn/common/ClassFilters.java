@@ -0,0 +1,163 @@
+package io.ologn.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Predicates on {@link ClassFileInfo} for filtering classes by their 
+ * bytecode headers before loading them, to be used with 
+ * {@link ClassFinder#getClasses(String, Predicate)}.<br>
+ * The hierarchy filters ({@link #implementing(Class, ClassLoader)} and 
+ * {@link #subclassOf(Class, ClassLoader)}) resolve supertypes by parsing 
+ * their class files from the class loader, so supertypes are not loaded 
+ * either. Resolved headers are cached by each predicate.<br>
+ * For example, to find all the concrete classes implementing Runnable: 
+ * {@code concrete().and(implementing(Runnable.class, loader))}
+ * @author lisq199
+ */
+public class ClassFilters {
+	
+	/**
+	 * Classes that are neither interfaces nor abstract
+	 * @return
+	 */
+	public static Predicate<ClassFileInfo> concrete() {
+		return c -> !c.isInterface() && !c.isAbstract();
+	}
+	
+	/**
+	 * Public classes
+	 * @return
+	 */
+	public static Predicate<ClassFileInfo> publicClass() {
+		return ClassFileInfo::isPublic;
+	}
+	
+	/**
+	 * Classes directly annotated with a runtime-visible annotation. 
+	 * Annotations inherited through @Inherited are not considered.
+	 * @param annotation
+	 * @return
+	 */
+	public static Predicate<ClassFileInfo> annotatedWith(
+			Class<? extends Annotation> annotation) {
+		return annotatedWith(annotation.getName());
+	}
+	
+	public static Predicate<ClassFileInfo> annotatedWith(
+			String annotationName) {
+		return c -> c.hasAnnotation(annotationName);
+	}
+	
+	/**
+	 * Classes that declare an interface in their implements clause
+	 * @param interfaceName
+	 * @return
+	 */
+	public static Predicate<ClassFileInfo> directlyImplementing(
+			String interfaceName) {
+		return c -> c.hasInterface(interfaceName);
+	}
+	
+	/**
+	 * Classes that implement an interface directly or through their 
+	 * superclasses and superinterfaces. The interface itself does not 
+	 * match.
+	 * @param type
+	 * @param classLoader the loader to read the supertypes from
+	 * @return
+	 */
+	public static Predicate<ClassFileInfo> implementing(Class<?> type,
+			ClassLoader classLoader) {
+		return implementing(type.getName(), classLoader);
+	}
+	
+	public static Predicate<ClassFileInfo> implementing(String interfaceName,
+			ClassLoader classLoader) {
+		HeaderResolver resolver = new HeaderResolver(classLoader);
+		return c -> resolver.isSubtype(c, interfaceName, true);
+	}
+	
+	/**
+	 * Classes that extend a class directly or indirectly. The class 
+	 * itself does not match.
+	 * @param type
+	 * @param classLoader the loader to read the superclasses from
+	 * @return
+	 */
+	public static Predicate<ClassFileInfo> subclassOf(Class<?> type,
+			ClassLoader classLoader) {
+		return subclassOf(type.getName(), classLoader);
+	}
+	
+	public static Predicate<ClassFileInfo> subclassOf(String className,
+			ClassLoader classLoader) {
+		HeaderResolver resolver = new HeaderResolver(classLoader);
+		return c -> resolver.isSubtype(c, className, false);
+	}
+	
+	/**
+	 * Parses and caches the headers of supertypes
+	 */
+	protected static class HeaderResolver {
+		
+		/**
+		 * Placeholder for classes whose class file cannot be found
+		 */
+		protected static final ClassFileInfo MISSING = new ClassFileInfo(
+				"", 0, null, new String[0], new String[0]);
+		
+		protected final ClassLoader classLoader;
+		protected final Map<String, ClassFileInfo> cache =
+				new ConcurrentHashMap<String, ClassFileInfo>();
+		
+		protected HeaderResolver(ClassLoader classLoader) {
+			this.classLoader = classLoader;
+		}
+		
+		/**
+		 * Check if c extends or implements target, not counting c itself
+		 */
+		protected boolean isSubtype(ClassFileInfo c, String target,
+				boolean interfaces) {
+			String superName = c.getSuperName();
+			if (superName != null && (superName.equals(target)
+					|| isSubtype(resolve(superName), target, interfaces))) {
+				return true;
+			}
+			if (interfaces) {
+				for (String i : c.interfaces) {
+					if (i.equals(target)
+							|| isSubtype(resolve(i), target, true)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+		
+		protected ClassFileInfo resolve(String name) {
+			ClassFileInfo info = cache.get(name);
+			if (info == null) {
+				info = read(name);
+				cache.put(name, info);
+			}
+			return info;
+		}
+		
+		protected ClassFileInfo read(String name) {
+			String path = name.replace('.', '/') + ClassFinder.CLASS_SUFFIX;
+			try (InputStream in = classLoader.getResourceAsStream(path)) {
+				return in == null ? MISSING : ClassFileInfo.parse(in);
+			} catch (IOException | IllegalArgumentException e) {
+				return MISSING;
+			}
+		}
+		
+	}
+
+}
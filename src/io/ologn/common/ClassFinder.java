@@ -1,22 +1,66 @@
 package io.ologn.common;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 /**
  * Find all the classes under a package name.<br>
  * Credit: <a href="http://www.dzone.com/snippets/get-all-classes-within-package">
  * link</a><br>
  * This class was created in an attempt to make it able to 
- * automatically run all the test classes within a package.
+ * automatically run all the test classes within a package.<br>
+ * Both directories and JAR files on the classpath are scanned. Classes 
+ * are loaded without being initialized, so no static initializers are 
+ * run. To avoid loading them at all, use {@link #getClassNames(String)}.
+ * <br>
+ * For large classpaths, the parallel methods scan every classpath root and 
+ * every directory subtree as a separate fork-join task. Their results are 
+ * sorted by class name within each root, and the roots are in classpath 
+ * order, so the output is the same on every run.<br>
+ * When the same classpath is scanned on every start, the indexed methods 
+ * keep a {@link ClassIndex} of every classpath root in a cache directory, 
+ * so unchanged JARs and directories are not scanned again.<br>
+ * To find only some of the classes, such as the ones implementing an 
+ * interface, use {@link #getClasses(String, Predicate)} with 
+ * {@link ClassFilters}. Only the headers of the class files are parsed, 
+ * and only the matching classes are loaded.<br>
+ * Libraries compiled with {@link ClassIndexProcessor} contain an index 
+ * of their classes, which the index first methods read instead of 
+ * scanning.
  * @author lisq199
  */
 public class ClassFinder {
 	
+	protected static final String CLASS_SUFFIX = ".class";
+	protected static final byte[] CLASS_SUFFIX_BYTES =
+			CLASS_SUFFIX.getBytes(StandardCharsets.UTF_8);
+	
 	/**
 	 * Scans all classes accessible from the context class loader which 
 	 * belong to the given package and sub packages.
@@ -31,23 +75,503 @@ public class ClassFinder {
 		ClassLoader classLoader = Thread.currentThread()
 				.getContextClassLoader();
 		assert classLoader != null;
+		List<String> names = getClassNames(packageName, classLoader);
+		Class<?>[] classes = new Class<?>[names.size()];
+		for (int i = 0; i < classes.length; i++) {
+			classes[i] = Class.forName(names.get(i), false, classLoader);
+		}
+		return classes;
+	}
+	
+	/**
+	 * Get the names of all classes accessible from the context class 
+	 * loader which belong to the given package and sub packages, without 
+	 * loading them.
+	 * @param packageName The base package
+	 * @return The fully qualified class names
+	 * @throws IOException
+	 */
+	public static List<String> getClassNames(String packageName)
+			throws IOException {
+		return getClassNames(packageName,
+				Thread.currentThread().getContextClassLoader());
+	}
+	
+	/**
+	 * Get the names of all classes accessible from a class loader which 
+	 * belong to the given package and sub packages, without loading them.
+	 * @param packageName The base package
+	 * @param classLoader
+	 * @return The fully qualified class names
+	 * @throws IOException
+	 */
+	public static List<String> getClassNames(String packageName,
+			ClassLoader classLoader) throws IOException {
+		List<String> names = new ArrayList<String>();
+		forEachLocation(packageName, classLoader,
+				withJar(jar -> names.addAll(findClassNames(jar, packageName))),
+				directory -> names.addAll(findClassNames(directory,
+						packageName)));
+		return names;
+	}
+
+	/**
+	 * Scans all classes accessible from the context class loader which 
+	 * belong to the given package and sub packages, reading the index 
+	 * generated by {@link ClassIndexProcessor} first. See 
+	 * {@link #getClassNamesIndexFirst(String, ClassLoader)}.
+	 * @param packageName The base package
+	 * @return The classes, not initialized
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public static Class<?>[] getClassesIndexFirst(String packageName)
+			throws ClassNotFoundException, IOException {
+		ClassLoader classLoader = Thread.currentThread()
+				.getContextClassLoader();
+		List<String> names = getClassNamesIndexFirst(packageName,
+				classLoader);
+		Class<?>[] classes = new Class<?>[names.size()];
+		for (int i = 0; i < classes.length; i++) {
+			classes[i] = Class.forName(names.get(i), false, classLoader);
+		}
+		return classes;
+	}
+	
+	/**
+	 * Get the names of all classes accessible from a class loader which 
+	 * belong to the given package and sub packages. The classpath roots 
+	 * (JARs and directories) that contain an index generated by 
+	 * {@link ClassIndexProcessor} are not scanned: only their index files 
+	 * for the matching packages are read. The other roots are scanned 
+	 * like {@link #getClassNames(String, ClassLoader)}.<br>
+	 * Unlike scanning, the index does not contain local and anonymous 
+	 * classes.
+	 * @param packageName The base package
+	 * @param classLoader
+	 * @return The fully qualified class names
+	 * @throws IOException
+	 */
+	public static List<String> getClassNamesIndexFirst(String packageName,
+			ClassLoader classLoader) throws IOException {
+		List<String> names = new ArrayList<String>();
+		Set<String> indexedRoots = new HashSet<String>();
+		Enumeration<URL> indexes = classLoader.getResources(
+				ClassIndexProcessor.PACKAGES_FILE);
+		while (indexes.hasMoreElements()) {
+			URL index = indexes.nextElement();
+			String root = getRoot(index, ClassIndexProcessor.PACKAGES_FILE);
+			if (root == null || !indexedRoots.add(root)) {
+				continue;
+			}
+			for (String p : readIndexLines(index)) {
+				if (p.equals(packageName) || packageName.isEmpty()
+						|| p.startsWith(packageName + '.')) {
+					names.addAll(readIndexLines(new URL(root
+							+ ClassIndexProcessor.getClassesFile(p))));
+				}
+			}
+		}
 		String path = packageName.replace('.', '/');
-		Enumeration<URL> resources = classLoader.getResources(path);
-		List<File> dirs = new ArrayList<File>();
-		while (resources.hasMoreElements()) {
-			URL resource = resources.nextElement();
-			dirs.add(new File(resource.getFile()));
+		forEachLocation(packageName, classLoader,
+				resource -> !indexedRoots.contains(getRoot(resource, path)),
+				withJar(jar -> names.addAll(findClassNames(jar, packageName))),
+				directory -> names.addAll(findClassNames(directory,
+						packageName)));
+		return names;
+	}
+	
+	/**
+	 * Scans all classes accessible from the context class loader which 
+	 * belong to the given package and sub packages, and only loads the 
+	 * ones whose class file headers match a filter. See 
+	 * {@link ClassFilters} for common filters.
+	 * @param packageName The base package
+	 * @param filter
+	 * @return The matching classes, not initialized
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public static Class<?>[] getClasses(String packageName,
+			Predicate<? super ClassFileInfo> filter)
+			throws ClassNotFoundException, IOException {
+		ClassLoader classLoader = Thread.currentThread()
+				.getContextClassLoader();
+		List<ClassFileInfo> matches = new ArrayList<ClassFileInfo>();
+		for (ClassFileInfo info : getClassInfos(packageName, classLoader)) {
+			if (filter.test(info)) {
+				matches.add(info);
+			}
 		}
-		ArrayList<Class<?>> classes = new ArrayList<Class<?>>();
-		for (File directory : dirs) {
-			classes.addAll(findClasses(directory, packageName));
+		return loadClasses(matches, classLoader);
+	}
+	
+	/**
+	 * Get the class file headers of all classes accessible from a class 
+	 * loader which belong to the given package and sub packages, without 
+	 * loading them.
+	 * @param packageName The base package
+	 * @param classLoader
+	 * @return
+	 * @throws IOException
+	 */
+	public static List<ClassFileInfo> getClassInfos(String packageName,
+			ClassLoader classLoader) throws IOException {
+		List<ClassFileInfo> infos = new ArrayList<ClassFileInfo>();
+		byte[] prefix = toPrefix(packageName);
+		forEachLocation(packageName, classLoader, withJar(jar -> {
+			for (int i = 0; i < jar.size(); i++) {
+				if (isClassEntry(jar, i, prefix)) {
+					infos.add(ClassFileInfo.parse(jar.read(i)));
+				}
+			}
+		}), directory -> {
+			for (String name : findClassNames(directory, packageName)) {
+				File file = new File(directory, name
+						.substring(packageName.length() + 1)
+						.replace('.', File.separatorChar) + CLASS_SUFFIX);
+				try (InputStream in = new FileInputStream(file)) {
+					infos.add(ClassFileInfo.parse(in));
+				}
+			}
+		});
+		return infos;
+	}
+	
+	/**
+	 * Load the classes of some class file headers, without initializing 
+	 * them
+	 * @param infos
+	 * @param classLoader
+	 * @return
+	 * @throws ClassNotFoundException
+	 */
+	public static Class<?>[] loadClasses(List<ClassFileInfo> infos,
+			ClassLoader classLoader) throws ClassNotFoundException {
+		Class<?>[] classes = new Class<?>[infos.size()];
+		for (int i = 0; i < classes.length; i++) {
+			classes[i] = Class.forName(infos.get(i).getName(), false,
+					classLoader);
 		}
-		return classes.toArray(new Class[classes.size()]);
+		return classes;
 	}
-
+	
+	/**
+	 * Parallel version of {@link #getClasses(String)} that scans and loads 
+	 * the classes on the common ForkJoinPool.
+	 * @param packageName The base package
+	 * @return The classes, in a deterministic order
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public static Class<?>[] getClassesParallel(String packageName)
+			throws ClassNotFoundException, IOException {
+		return getClassesParallel(packageName,
+				Thread.currentThread().getContextClassLoader(),
+				ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Parallel version of {@link #getClasses(String)} that scans and loads 
+	 * the classes on a specified ForkJoinPool.
+	 * @param packageName The base package
+	 * @param classLoader
+	 * @param pool
+	 * @return The classes, in a deterministic order
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public static Class<?>[] getClassesParallel(String packageName,
+			ClassLoader classLoader, ForkJoinPool pool)
+			throws ClassNotFoundException, IOException {
+		List<String> names = getClassNamesParallel(packageName, classLoader,
+				pool);
+		Class<?>[] classes = new Class<?>[names.size()];
+		// The first failure is kept rather than thrown through the pool,
+		// which would wrap it in layers of other exceptions
+		AtomicReference<ClassNotFoundException> failure =
+				new AtomicReference<ClassNotFoundException>();
+		ForkJoinTask<?> task = pool.submit(() -> IntStream
+				.range(0, classes.length)
+				.parallel()
+				.forEach(i -> {
+					try {
+						classes[i] = Class.forName(names.get(i), false,
+								classLoader);
+					} catch (ClassNotFoundException e) {
+						failure.compareAndSet(null, e);
+					}
+				}));
+		try {
+			task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			// Such as a LinkageError of a class that fails to load
+			Throwable cause = e.getCause();
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+		return classes;
+	}
+	
+	/**
+	 * Parallel version of {@link #getClassNames(String)} on the common 
+	 * ForkJoinPool.
+	 * @param packageName The base package
+	 * @return The fully qualified class names, in a deterministic order
+	 * @throws IOException
+	 */
+	public static List<String> getClassNamesParallel(String packageName)
+			throws IOException {
+		return getClassNamesParallel(packageName,
+				Thread.currentThread().getContextClassLoader(),
+				ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Parallel version of {@link #getClassNames(String, ClassLoader)}. 
+	 * Every classpath root and every directory subtree is scanned as a 
+	 * separate task.
+	 * @param packageName The base package
+	 * @param classLoader
+	 * @param pool
+	 * @return The fully qualified class names, in a deterministic order
+	 * @throws IOException
+	 */
+	public static List<String> getClassNamesParallel(String packageName,
+			ClassLoader classLoader, ForkJoinPool pool) throws IOException {
+		List<RecursiveTask<List<String>>> tasks =
+				new ArrayList<RecursiveTask<List<String>>>();
+		// The JARs are opened by the tasks, so they are opened in parallel
+		forEachLocation(packageName, classLoader,
+				resource -> tasks.add(new JarScanTask(resource, packageName)),
+				directory -> tasks.add(new DirectoryScanTask(directory,
+						packageName)));
+		try {
+			return pool.invoke(new RecursiveTask<List<String>>() {
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				protected List<String> compute() {
+					return joinAll(tasks, null);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	/**
+	 * Scans a directory, forking a subtask for every sub directory. Class 
+	 * names are sorted within every directory, and sub directories are 
+	 * joined in name order.
+	 */
+	protected static class DirectoryScanTask
+			extends RecursiveTask<List<String>> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		protected final File directory;
+		protected final String packageName;
+		
+		protected DirectoryScanTask(File directory, String packageName) {
+			this.directory = directory;
+			this.packageName = packageName;
+		}
+		
+		@Override
+		protected List<String> compute() {
+			List<String> names = new ArrayList<String>();
+			File[] files = directory.listFiles();
+			if (files == null) {
+				return names;
+			}
+			Arrays.sort(files);
+			List<RecursiveTask<List<String>>> subtasks =
+					new ArrayList<RecursiveTask<List<String>>>();
+			for (File file : files) {
+				if (file.isDirectory()) {
+					subtasks.add(new DirectoryScanTask(file, packageName
+							+ "." + file.getName()));
+				} else if (isClassFile(file.getName())) {
+					names.add(packageName + '.' + file.getName().substring(0,
+							file.getName().length() - CLASS_SUFFIX.length()));
+				}
+			}
+			return joinAll(subtasks, names);
+		}
+		
+	}
+	
+	/**
+	 * Scans the entries of a JAR file and sorts the class names.
+	 */
+	protected static class JarScanTask extends RecursiveTask<List<String>> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		protected final URL resource;
+		protected final String packageName;
+		
+		protected JarScanTask(URL resource, String packageName) {
+			this.resource = resource;
+			this.packageName = packageName;
+		}
+		
+		@Override
+		protected List<String> compute() {
+			try (ZipDirectory jar = getJarFile(resource)) {
+				List<String> names = findClassNames(jar, packageName);
+				Collections.sort(names);
+				return names;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Fork all the tasks, then join them in order and append their results 
+	 * to the specified list.
+	 * @param tasks
+	 * @param result the list to append to, or null for a new list
+	 * @return result
+	 */
+	protected static List<String> joinAll(
+			List<RecursiveTask<List<String>>> tasks, List<String> result) {
+		List<String> names = result == null ? new ArrayList<String>()
+				: result;
+		ForkJoinTask.invokeAll(tasks);
+		for (RecursiveTask<List<String>> task : tasks) {
+			names.addAll(task.join());
+		}
+		return names;
+	}
+	
+	/**
+	 * Get the names of all classes on the classpath of the context class 
+	 * loader which belong to the given package and sub packages, using 
+	 * the cached {@link ClassIndex} of every classpath root.
+	 * @param packageName The base package
+	 * @param cacheDir the directory of the cached indexes
+	 * @return The fully qualified class names, sorted within every root
+	 * @throws IOException
+	 */
+	public static List<String> getIndexedClassNames(String packageName,
+			Path cacheDir) throws IOException {
+		List<String> names = new ArrayList<String>();
+		for (ClassFileInfo info : getIndexedClassInfos(packageName,
+				Thread.currentThread().getContextClassLoader(), cacheDir)) {
+			names.add(info.getName());
+		}
+		return names;
+	}
+	
+	/**
+	 * Get the headers of all classes on the classpath of a class loader 
+	 * which belong to the given package and sub packages, using the 
+	 * cached {@link ClassIndex} of every classpath root. Nothing is 
+	 * loaded, and unchanged roots are not opened.
+	 * @param packageName The base package
+	 * @param classLoader
+	 * @param cacheDir the directory of the cached indexes
+	 * @return The class headers, sorted within every root
+	 * @throws IOException
+	 */
+	public static List<ClassFileInfo> getIndexedClassInfos(
+			String packageName, ClassLoader classLoader, Path cacheDir)
+			throws IOException {
+		List<ClassFileInfo> infos = new ArrayList<ClassFileInfo>();
+		for (File root : getClasspathRoots(classLoader)) {
+			infos.addAll(ClassIndex.load(root, cacheDir)
+					.getClasses(packageName));
+		}
+		return infos;
+	}
+	
+	/**
+	 * Indexed version of {@link #getClasses(String, Predicate)}. The 
+	 * filter is applied to the cached headers, so only the matching 
+	 * classes are loaded and unchanged roots are not opened.
+	 * @param packageName The base package
+	 * @param filter
+	 * @param cacheDir the directory of the cached indexes
+	 * @return The matching classes, not initialized
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 */
+	public static Class<?>[] getIndexedClasses(String packageName,
+			Predicate<? super ClassFileInfo> filter, Path cacheDir)
+			throws ClassNotFoundException, IOException {
+		ClassLoader classLoader = Thread.currentThread()
+				.getContextClassLoader();
+		List<ClassFileInfo> matches = new ArrayList<ClassFileInfo>();
+		for (ClassFileInfo info : getIndexedClassInfos(packageName,
+				classLoader, cacheDir)) {
+			if (filter.test(info)) {
+				matches.add(info);
+			}
+		}
+		return loadClasses(matches, classLoader);
+	}
+	
+	/**
+	 * Get the classpath roots (directories and JAR files) of a class 
+	 * loader and its parents, parents first. URLClassLoaders report their 
+	 * own URLs. If no URLClassLoader is found, which is the case for the 
+	 * application class loader since Java 9, the java.class.path system 
+	 * property is used.
+	 * @param classLoader
+	 * @return
+	 * @throws IOException
+	 */
+	public static List<File> getClasspathRoots(ClassLoader classLoader)
+			throws IOException {
+		List<ClassLoader> loaders = new ArrayList<ClassLoader>();
+		for (ClassLoader l = classLoader; l != null; l = l.getParent()) {
+			loaders.add(0, l);
+		}
+		Set<File> roots = new LinkedHashSet<File>();
+		for (ClassLoader l : loaders) {
+			if (l instanceof URLClassLoader) {
+				for (URL url : ((URLClassLoader) l).getURLs()) {
+					if ("file".equals(url.getProtocol())) {
+						roots.add(toFile(url));
+					}
+				}
+			}
+		}
+		if (roots.isEmpty()) {
+			for (String entry : System.getProperty("java.class.path", "")
+					.split(File.pathSeparator)) {
+				if (!entry.isEmpty()) {
+					roots.add(new File(entry).getAbsoluteFile());
+				}
+			}
+		}
+		List<File> existing = new ArrayList<File>();
+		for (File root : roots) {
+			if (root.exists()) {
+				existing.add(root);
+			}
+		}
+		return existing;
+	}
+	
 	/**
 	 * Recursive method used to find all classes in a given directory and 
-	 * sub directories.
+	 * sub directories. The classes are loaded with the context class 
+	 * loader, but not initialized.
 	 * @param directory   The base directory
 	 * @param packageName The package name for classes found inside the 
 	 * base directory
@@ -56,23 +580,261 @@ public class ClassFinder {
 	 */
 	public static List<Class<?>> findClasses(File directory,
 			String packageName) throws ClassNotFoundException {
+		ClassLoader classLoader = Thread.currentThread()
+				.getContextClassLoader();
 		List<Class<?>> classes = new ArrayList<Class<?>>();
-		if (!directory.exists()) {
-			return classes;
+		for (String name : findClassNames(directory, packageName)) {
+			classes.add(Class.forName(name, false, classLoader));
 		}
+		return classes;
+	}
+	
+	/**
+	 * Recursive method used to find the names of all classes in a given 
+	 * directory and sub directories.
+	 * @param directory   The base directory
+	 * @param packageName The package name for classes found inside the 
+	 * base directory
+	 * @return The fully qualified class names
+	 */
+	public static List<String> findClassNames(File directory,
+			String packageName) {
+		List<String> names = new ArrayList<String>();
 		File[] files = directory.listFiles();
+		if (files == null) {
+			return names;
+		}
 		for (File file : files) {
 			if (file.isDirectory()) {
 				assert !file.getName().contains(".");
-				classes.addAll(findClasses(file, packageName + "."
+				names.addAll(findClassNames(file, packageName + "."
 						+ file.getName()));
-			} else if (file.getName().endsWith(".class")) {
-				classes.add(Class.forName(packageName + '.'
-						+ file.getName().substring(
-								0, file.getName().length() - 6)));
+			} else if (isClassFile(file.getName())) {
+				names.add(packageName + '.' + file.getName().substring(
+						0, file.getName().length() - CLASS_SUFFIX.length()));
 			}
 		}
-		return classes;
+		return names;
+	}
+	
+	/**
+	 * Find the names of all classes in a JAR file which belong to the 
+	 * given package and sub packages. Only the central directory of the 
+	 * JAR is read, and names are only decoded for the matching entries. 
+	 * The ZipDirectory is not closed.
+	 * @param jar
+	 * @param packageName
+	 * @return The fully qualified class names
+	 */
+	public static List<String> findClassNames(ZipDirectory jar,
+			String packageName) {
+		byte[] prefix = toPrefix(packageName);
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < jar.size(); i++) {
+			if (isClassEntry(jar, i, prefix)) {
+				names.add(toClassName(jar.getName(i)));
+			}
+		}
+		return names;
+	}
+	
+	/**
+	 * Check if a JAR entry is a class file under a path prefix, without 
+	 * decoding its name. See {@link #isClassFile(String)}.
+	 * @param jar
+	 * @param i
+	 * @param prefix
+	 * @return
+	 */
+	protected static boolean isClassEntry(ZipDirectory jar, int i,
+			byte[] prefix) {
+		return jar.nameStartsWith(i, prefix)
+				&& jar.nameEndsWith(i, CLASS_SUFFIX_BYTES)
+				&& !jar.nameContains(i, (byte) '-');
+	}
+	
+	/**
+	 * Convert a package name such as "a.b" to the UTF-8 bytes of the path 
+	 * prefix of its JAR entries, such as "a/b/"
+	 * @param packageName
+	 * @return
+	 */
+	protected static byte[] toPrefix(String packageName) {
+		return (packageName.isEmpty() ? ""
+				: packageName.replace('.', '/') + '/')
+				.getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Get the URL of the classpath root of a resource, such as 
+	 * "jar:file:/a.jar!/" for "jar:file:/a.jar!/b/c"
+	 * @param resource
+	 * @param path the path of the resource in the root
+	 * @return the root URL ending with '/', or null if the resource URL 
+	 * does not end with the path
+	 */
+	protected static String getRoot(URL resource, String path) {
+		String url = resource.toString();
+		if (url.endsWith("/")) {
+			url = url.substring(0, url.length() - 1);
+		}
+		return url.endsWith(path)
+				? url.substring(0, url.length() - path.length()) : null;
+	}
+	
+	/**
+	 * Read the lines of an index file, skipping blank lines and comments 
+	 * starting with '#'
+	 * @param index
+	 * @return
+	 * @throws IOException
+	 */
+	protected static List<String> readIndexLines(URL index)
+			throws IOException {
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(index.openStream(),
+						StandardCharsets.UTF_8))) {
+			return readIndexLines(reader);
+		}
+	}
+	
+	protected static List<String> readIndexLines(BufferedReader reader)
+			throws IOException {
+		List<String> lines = new ArrayList<String>();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			line = line.trim();
+			if (!line.isEmpty() && line.charAt(0) != '#') {
+				lines.add(line);
+			}
+		}
+		return lines;
+	}
+	
+	/**
+	 * Check if a file name is a class file that can be loaded. 
+	 * package-info and module-info are excluded.
+	 * @param fileName
+	 * @return
+	 */
+	protected static boolean isClassFile(String fileName) {
+		return fileName.endsWith(CLASS_SUFFIX) && !fileName.contains("-");
+	}
+	
+	/**
+	 * Convert a path such as "a/b/C.class" to a class name such as "a.b.C"
+	 * @param path
+	 * @return
+	 */
+	protected static String toClassName(String path) {
+		return path.substring(0, path.length() - CLASS_SUFFIX.length())
+				.replace('/', '.');
+	}
+	
+	/**
+	 * Handles one location of a package, see 
+	 * {@link #forEachLocation(URL, LocationHandler, LocationHandler)}
+	 * @param <T>
+	 */
+	@FunctionalInterface
+	protected interface LocationHandler<T> {
+		
+		void handle(T location) throws IOException;
+		
+	}
+	
+	/**
+	 * Call jarHandler for a "jar:" resource, or dirHandler with the 
+	 * directory of a "file:" resource. Resources with other protocols are 
+	 * skipped.
+	 * @param resource
+	 * @param jarHandler gets the "jar:" URL, see 
+	 * {@link #withJar(LocationHandler)}
+	 * @param dirHandler
+	 * @throws IOException
+	 */
+	protected static void forEachLocation(URL resource,
+			LocationHandler<URL> jarHandler, LocationHandler<File> dirHandler)
+			throws IOException {
+		if ("jar".equals(resource.getProtocol())) {
+			jarHandler.handle(resource);
+		} else if ("file".equals(resource.getProtocol())) {
+			dirHandler.handle(toFile(resource));
+		}
+	}
+	
+	/**
+	 * Call {@link #forEachLocation(URL, LocationHandler, LocationHandler)} 
+	 * for every resource of a package in a class loader, in class loader 
+	 * order
+	 */
+	protected static void forEachLocation(String packageName,
+			ClassLoader classLoader, LocationHandler<URL> jarHandler,
+			LocationHandler<File> dirHandler) throws IOException {
+		forEachLocation(packageName, classLoader, resource -> true,
+				jarHandler, dirHandler);
+	}
+	
+	/**
+	 * Call {@link #forEachLocation(URL, LocationHandler, LocationHandler)} 
+	 * for every resource of a package in a class loader that matches a 
+	 * filter, in class loader order
+	 */
+	protected static void forEachLocation(String packageName,
+			ClassLoader classLoader, Predicate<URL> filter,
+			LocationHandler<URL> jarHandler, LocationHandler<File> dirHandler)
+			throws IOException {
+		Enumeration<URL> resources = classLoader.getResources(
+				packageName.replace('.', '/'));
+		while (resources.hasMoreElements()) {
+			URL resource = resources.nextElement();
+			if (filter.test(resource)) {
+				forEachLocation(resource, jarHandler, dirHandler);
+			}
+		}
+	}
+	
+	/**
+	 * A jar handler that opens the JAR of the "jar:" URL, and closes it 
+	 * after the handler is done with it
+	 * @param handler
+	 * @return
+	 */
+	protected static LocationHandler<URL> withJar(
+			LocationHandler<ZipDirectory> handler) {
+		return resource -> {
+			try (ZipDirectory jar = getJarFile(resource)) {
+				handler.handle(jar);
+			}
+		};
+	}
+	
+	/**
+	 * Open the JAR file of a "jar:" URL
+	 * @param resource
+	 * @return
+	 * @throws IOException
+	 */
+	protected static ZipDirectory getJarFile(URL resource)
+			throws IOException {
+		URL jarUrl = ((JarURLConnection) resource.openConnection())
+				.getJarFileURL();
+		return ZipDirectory.open(toFile(jarUrl).toPath());
+	}
+	
+	/**
+	 * Convert a "file:" URL to a File, decoding escaped characters such 
+	 * as spaces
+	 * @param url
+	 * @return
+	 * @throws IOException
+	 */
+	protected static File toFile(URL url) throws IOException {
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			throw new IOException("invalid URL " + url, e);
+		}
 	}
 
 }
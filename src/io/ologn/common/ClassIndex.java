@@ -0,0 +1,408 @@
+package io.ologn.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An index of all the classes in a classpath root (a directory or a JAR 
+ * file), with the header of every class: superclass, interfaces and 
+ * annotations. See {@link ClassFileInfo}.<br>
+ * Indexes can be cached on disk with {@link #load(File, Path)}. A cached 
+ * index is keyed by the path of the root and a fingerprint: the size and 
+ * last modified time for a JAR, or the names, sizes and last modified 
+ * times of all the class files for a directory. If the fingerprint still 
+ * matches, the index is read from the cache file, without opening the 
+ * JAR or reading any class file. A cache file that cannot be read is 
+ * rebuilt.<br>
+ * The cache file is a compact binary format: a string table followed by 
+ * one record of string indices per class.
+ * @author lisq199
+ */
+public class ClassIndex {
+	
+	/**
+	 * "OCIX"
+	 */
+	protected static final int MAGIC = 0x4F434958;
+	protected static final int VERSION = 1;
+	protected static final String INDEX_SUFFIX = ".classindex";
+	
+	protected final String rootPath;
+	protected final long fingerprint;
+	
+	/**
+	 * Sorted by name
+	 */
+	protected final ClassFileInfo[] classes;
+	
+	protected ClassIndex(String rootPath, long fingerprint,
+			ClassFileInfo[] classes) {
+		this.rootPath = rootPath;
+		this.fingerprint = fingerprint;
+		this.classes = classes;
+		Arrays.sort(this.classes,
+				Comparator.comparing(ClassFileInfo::getName));
+	}
+	
+	/**
+	 * Get the absolute path of the indexed root
+	 * @return
+	 */
+	public String getRootPath() {
+		return rootPath;
+	}
+	
+	public long getFingerprint() {
+		return fingerprint;
+	}
+	
+	/**
+	 * Get the number of indexed classes
+	 * @return
+	 */
+	public int size() {
+		return classes.length;
+	}
+	
+	/**
+	 * Get all the classes in a package and its sub packages, sorted by 
+	 * name. Since the classes are sorted, this is a binary search plus 
+	 * the size of the result.
+	 * @param packageName the package, or "" for all classes
+	 * @return
+	 */
+	public List<ClassFileInfo> getClasses(String packageName) {
+		String prefix = packageName.isEmpty() ? "" : packageName + ".";
+		int low = 0;
+		int high = classes.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (classes[mid].getName().compareTo(prefix) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		List<ClassFileInfo> result = new ArrayList<ClassFileInfo>();
+		for (int i = low; i < classes.length
+				&& classes[i].getName().startsWith(prefix); i++) {
+			result.add(classes[i]);
+		}
+		return result;
+	}
+	
+	/**
+	 * Get the names of all the classes in a package and its sub packages, 
+	 * sorted.
+	 * @param packageName the package, or "" for all classes
+	 * @return
+	 */
+	public List<String> getClassNames(String packageName) {
+		return getClasses(packageName).stream()
+				.map(ClassFileInfo::getName)
+				.collect(Collectors.toList());
+	}
+	
+	/**
+	 * Write the index to a file. The file is written to a temporary file 
+	 * first and then moved, so readers never see a partial index.
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeTo(Path file) throws IOException {
+		Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+		for (ClassFileInfo c : classes) {
+			intern(strings, c.getName());
+			intern(strings, c.getSuperName());
+			for (String s : c.interfaces) {
+				intern(strings, s);
+			}
+			for (String s : c.annotations) {
+				intern(strings, s);
+			}
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(fingerprint);
+		writeString(out, rootPath);
+		out.writeInt(strings.size());
+		for (String s : strings.keySet()) {
+			writeString(out, s);
+		}
+		out.writeInt(classes.length);
+		for (ClassFileInfo c : classes) {
+			out.writeInt(strings.get(c.getName()));
+			out.writeShort(c.getAccessFlags());
+			out.writeInt(c.getSuperName() == null ? -1
+					: strings.get(c.getSuperName()));
+			out.writeShort(c.interfaces.length);
+			for (String s : c.interfaces) {
+				out.writeInt(strings.get(s));
+			}
+			out.writeShort(c.annotations.length);
+			for (String s : c.annotations) {
+				out.writeInt(strings.get(s));
+			}
+		}
+		out.flush();
+		Path parent = file.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path temp = Files.createTempFile(parent, "index", ".tmp");
+		try {
+			Files.write(temp, bytes.toByteArray());
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return "ClassIndex[root: " + rootPath + ", classes: "
+				+ classes.length + "]";
+	}
+	
+	/**
+	 * Build the index of a directory or a JAR file by parsing every 
+	 * class file in it. Class files that cannot be parsed, or whose 
+	 * class name does not match their path, are skipped.
+	 * @param root
+	 * @return
+	 * @throws IOException
+	 */
+	public static ClassIndex build(File root) throws IOException {
+		List<ClassFileInfo> classes = new ArrayList<ClassFileInfo>();
+		if (root.isDirectory()) {
+			Path base = root.toPath();
+			for (Path p : listClassFiles(base)) {
+				addParsed(classes, Files.readAllBytes(p),
+						ClassFinder.toClassName(base.relativize(p).toString()
+								.replace(File.separatorChar, '/')));
+			}
+		} else {
+			try (ZipDirectory jar = ZipDirectory.open(root.toPath())) {
+				for (int i = 0; i < jar.size(); i++) {
+					if (jar.nameEndsWith(i, ClassFinder.CLASS_SUFFIX_BYTES)) {
+						String name = jar.getName(i);
+						if (isIndexedEntry(name)) {
+							addParsed(classes, jar.read(i),
+									ClassFinder.toClassName(name));
+						}
+					}
+				}
+			}
+		}
+		return new ClassIndex(root.getAbsolutePath(), fingerprint(root),
+				classes.toArray(new ClassFileInfo[0]));
+	}
+	
+	/**
+	 * Read an index written by {@link #writeTo(Path)}. Every string is 
+	 * decoded anyway, so the file is read in one go rather than mapped. 
+	 * Counts, lengths and string indices are checked against the file, so 
+	 * a corrupted file only fails with an IOException.
+	 * @param file
+	 * @return
+	 * @throws IOException if the file is not a valid index
+	 */
+	public static ClassIndex readFrom(Path file) throws IOException {
+		ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(file));
+		if (b.remaining() < 8 || b.getInt() != MAGIC
+				|| b.getInt() != VERSION) {
+			throw new IOException("not a class index: " + file);
+		}
+		try {
+			long fingerprint = b.getLong();
+			String rootPath = readString(b);
+			// A string takes at least its 4-byte length
+			String[] strings = new String[readCount(b, b.getInt(), 4)];
+			for (int i = 0; i < strings.length; i++) {
+				strings[i] = readString(b);
+			}
+			// A class takes at least 14 bytes
+			ClassFileInfo[] classes = new ClassFileInfo[readCount(b,
+					b.getInt(), 14)];
+			for (int i = 0; i < classes.length; i++) {
+				String name = readString(b, strings);
+				int access = b.getShort() & 0xFFFF;
+				int superIndex = b.getInt();
+				String superName = superIndex == -1 ? null
+						: stringAt(strings, superIndex);
+				String[] interfaces = new String[readCount(b,
+						b.getShort() & 0xFFFF, 4)];
+				for (int j = 0; j < interfaces.length; j++) {
+					interfaces[j] = readString(b, strings);
+				}
+				String[] annotations = new String[readCount(b,
+						b.getShort() & 0xFFFF, 4)];
+				for (int j = 0; j < annotations.length; j++) {
+					annotations[j] = readString(b, strings);
+				}
+				classes[i] = new ClassFileInfo(name, access, superName,
+						interfaces, annotations);
+			}
+			return new ClassIndex(rootPath, fingerprint, classes);
+		} catch (IOException | BufferUnderflowException e) {
+			throw new IOException("corrupted class index: " + file, e);
+		}
+	}
+	
+	/**
+	 * Get the index of a root from the cache directory if it is still up 
+	 * to date, or build it and store it in the cache directory otherwise.
+	 * @param root a directory or a JAR file
+	 * @param cacheDir
+	 * @return
+	 * @throws IOException
+	 */
+	public static ClassIndex load(File root, Path cacheDir)
+			throws IOException {
+		String rootPath = root.getAbsolutePath();
+		Path file = cacheDir.resolve(Long.toHexString(
+				XxHash64.hash(rootPath)) + INDEX_SUFFIX);
+		if (Files.isRegularFile(file)) {
+			try {
+				ClassIndex cached = readFrom(file);
+				if (cached.rootPath.equals(rootPath)
+						&& cached.fingerprint == fingerprint(root)) {
+					return cached;
+				}
+			} catch (IOException e) {
+				// Rebuild a corrupted index
+			}
+		}
+		ClassIndex index = build(root);
+		index.writeTo(file);
+		return index;
+	}
+	
+	/**
+	 * Compute the fingerprint of a root without reading any class file
+	 * @param root
+	 * @return
+	 * @throws IOException
+	 */
+	public static long fingerprint(File root) throws IOException {
+		XxHash64 h = XxHash64.init();
+		if (root.isDirectory()) {
+			Path base = root.toPath();
+			for (Path p : listClassFiles(base)) {
+				h.addChars(base.relativize(p).toString())
+						.addLong(Files.size(p))
+						.addLong(Files.getLastModifiedTime(p).toMillis());
+			}
+		} else {
+			h.addLong(root.length()).addLong(root.lastModified());
+		}
+		return h.get();
+	}
+	
+	/**
+	 * Check if a JAR entry should be indexed. Entries under META-INF, 
+	 * such as multi-release versions, are skipped.
+	 * @param name
+	 * @return
+	 */
+	protected static boolean isIndexedEntry(String name) {
+		return !name.startsWith("META-INF/")
+				&& ClassFinder.isClassFile(name);
+	}
+	
+	protected static List<Path> listClassFiles(Path base)
+			throws IOException {
+		try (Stream<Path> paths = Files.walk(base)) {
+			return paths
+					.filter(p -> ClassFinder.isClassFile(
+							p.getFileName().toString())
+							&& Files.isRegularFile(p))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+	
+	protected static void addParsed(List<ClassFileInfo> classes,
+			byte[] classFile, String expectedName) {
+		try {
+			ClassFileInfo info = ClassFileInfo.parse(classFile);
+			if (info.getName().equals(expectedName)) {
+				classes.add(info);
+			}
+		} catch (IllegalArgumentException e) {
+			// Not a valid class file
+		}
+	}
+	
+	protected static void intern(Map<String, Integer> strings, String s) {
+		if (s != null && !strings.containsKey(s)) {
+			strings.put(s, strings.size());
+		}
+	}
+	
+	protected static void writeString(DataOutputStream out, String s)
+			throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	protected static String readString(ByteBuffer b) throws IOException {
+		byte[] bytes = new byte[readCount(b, b.getInt(), 1)];
+		b.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Read an index into the string table
+	 */
+	protected static String readString(ByteBuffer b, String[] strings)
+			throws IOException {
+		return stringAt(strings, b.getInt());
+	}
+	
+	protected static String stringAt(String[] strings, int i)
+			throws IOException {
+		if (i < 0 || i >= strings.length) {
+			throw new IOException("string index " + i + " out of [0, "
+					+ strings.length + ")");
+		}
+		return strings[i];
+	}
+	
+	/**
+	 * Check a count read from a buffer against the bytes left
+	 * @param b
+	 * @param count
+	 * @param minSize the minimum size of one item in bytes
+	 * @return count
+	 * @throws IOException if the count is negative or the items cannot 
+	 * fit in the rest of the buffer
+	 */
+	protected static int readCount(ByteBuffer b, int count, int minSize)
+			throws IOException {
+		if (count < 0 || count > b.remaining() / minSize) {
+			throw new IOException("count " + count + " does not fit in "
+					+ b.remaining() + " bytes");
+		}
+		return count;
+	}
+
+}
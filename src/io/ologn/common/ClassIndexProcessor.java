@@ -0,0 +1,165 @@
+package io.ologn.common;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * An annotation processor that writes an index of the compiled classes 
+ * into META-INF at compile time, so that 
+ * {@link ClassFinder#getClassNamesIndexFirst(String, ClassLoader)} can 
+ * list the classes of a JAR or directory without scanning it.<br>
+ * For every package, the binary names of its top level and member classes 
+ * are written to META-INF/ologn/classindex/&lt;package&gt;.classes, one 
+ * per line, and the packages are listed in 
+ * META-INF/ologn/classindex/packages.list. Local and anonymous classes 
+ * and the default package are not indexed.<br>
+ * The processor is registered through META-INF/services, so it runs 
+ * whenever this library is on the annotation processor path. The entries 
+ * of an existing index in the output directory are kept, so incremental 
+ * compilation does not lose classes, but the classes that were deleted 
+ * are only removed by a clean build.
+ * @author lisq199
+ */
+@SupportedAnnotationTypes("*")
+public class ClassIndexProcessor extends AbstractProcessor {
+	
+	protected static final String INDEX_DIRECTORY =
+			"META-INF/ologn/classindex/";
+	protected static final String PACKAGES_FILE =
+			INDEX_DIRECTORY + "packages.list";
+	protected static final String CLASSES_SUFFIX = ".classes";
+	
+	/**
+	 * Class names by package, accumulated over all rounds
+	 */
+	protected final Map<String, SortedSet<String>> packages =
+			new TreeMap<String, SortedSet<String>>();
+	
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+	
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations,
+			RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			if (!packages.isEmpty()) {
+				writeIndex();
+			}
+		} else {
+			for (TypeElement type : ElementFilter.typesIn(
+					roundEnv.getRootElements())) {
+				addType(type);
+			}
+		}
+		// Never claim the annotations, so other processors still see them
+		return false;
+	}
+	
+	/**
+	 * Add a type and its member types
+	 * @param type
+	 */
+	protected void addType(TypeElement type) {
+		PackageElement p = processingEnv.getElementUtils()
+				.getPackageOf(type);
+		if (p.isUnnamed()) {
+			return;
+		}
+		String packageName = p.getQualifiedName().toString();
+		SortedSet<String> names = packages.get(packageName);
+		if (names == null) {
+			names = new TreeSet<String>();
+			packages.put(packageName, names);
+		}
+		names.add(processingEnv.getElementUtils().getBinaryName(type)
+				.toString());
+		for (TypeElement member : ElementFilter.typesIn(
+				type.getEnclosedElements())) {
+			addType(member);
+		}
+	}
+	
+	protected void writeIndex() {
+		try {
+			SortedSet<String> packageNames = readExisting(PACKAGES_FILE);
+			for (Map.Entry<String, SortedSet<String>> e :
+					packages.entrySet()) {
+				String file = getClassesFile(e.getKey());
+				SortedSet<String> names = readExisting(file);
+				names.addAll(e.getValue());
+				write(file, names);
+				packageNames.add(e.getKey());
+			}
+			write(PACKAGES_FILE, packageNames);
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"could not write the class index: " + e);
+		}
+	}
+	
+	/**
+	 * Read the lines of an index file left by a previous compilation
+	 * @param file
+	 * @return the lines, or an empty set if the file does not exist
+	 */
+	protected SortedSet<String> readExisting(String file) {
+		SortedSet<String> lines = new TreeSet<String>();
+		try {
+			FileObject resource = processingEnv.getFiler().getResource(
+					StandardLocation.CLASS_OUTPUT, "", file);
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(resource.openInputStream(),
+							StandardCharsets.UTF_8))) {
+				lines.addAll(ClassFinder.readIndexLines(reader));
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			// No previous index
+		}
+		return lines;
+	}
+	
+	protected void write(String file, SortedSet<String> lines)
+			throws IOException {
+		FileObject resource = processingEnv.getFiler().createResource(
+				StandardLocation.CLASS_OUTPUT, "", file);
+		try (Writer writer = new OutputStreamWriter(
+				resource.openOutputStream(), StandardCharsets.UTF_8)) {
+			for (String line : lines) {
+				writer.write(line);
+				writer.write('\n');
+			}
+		}
+	}
+	
+	/**
+	 * Get the index file that lists the classes of a package
+	 * @param packageName
+	 * @return
+	 */
+	protected static String getClassesFile(String packageName) {
+		return INDEX_DIRECTORY + packageName + CLASSES_SUFFIX;
+	}
+
+}
@@ -0,0 +1,380 @@
+package io.ologn.common;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+/**
+ * Runs the test or job methods of the classes found by 
+ * {@link ClassFinder}, which is what ClassFinder was written for.<br>
+ * Every class is run as one task on an executor, so classes run 
+ * concurrently and the methods of a class run one after another on the 
+ * same thread. Any executor can be used, such as a virtual thread per 
+ * task executor on a recent JDK. By default, the public methods with no 
+ * parameters whose names start with "test" are run, and instance methods 
+ * get a new instance of their class, created with its no-arg constructor, 
+ * for every method.<br>
+ * A method that throws, or a class that cannot be initialized or 
+ * instantiated, is recorded as a failure and does not affect the other 
+ * methods and classes. The wall time and the CPU time of the runner 
+ * thread are recorded for every method and every class.
+ * @author lisq199
+ */
+public class ClassRunner {
+	
+	/**
+	 * Public methods with no parameters whose names start with "test"
+	 */
+	public static final Predicate<Method> TEST_METHODS = m ->
+			Modifier.isPublic(m.getModifiers())
+			&& m.getParameterCount() == 0
+			&& m.getName().startsWith("test")
+			&& m.getDeclaringClass() != Object.class;
+	
+	protected static final ThreadMXBean THREADS =
+			ManagementFactory.getThreadMXBean();
+	
+	/**
+	 * The executor, or null to use a new fixed thread pool for every run
+	 */
+	protected final ExecutorService executor;
+	protected final Predicate<Method> methodFilter;
+	
+	protected ClassRunner(ExecutorService executor,
+			Predicate<Method> methodFilter) {
+		this.executor = executor;
+		this.methodFilter = methodFilter;
+	}
+	
+	/**
+	 * Run the classes under a package name and sub packages, found with 
+	 * the context class loader
+	 * @param packageName
+	 * @return the results of the classes that have methods to run, in the
+	 * order of {@link ClassFinder#getClasses(String)}
+	 * @throws ClassNotFoundException
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public List<ClassResult> run(String packageName)
+			throws ClassNotFoundException, IOException, InterruptedException {
+		return run(ClassFinder.getClasses(packageName));
+	}
+	
+	/**
+	 * Run some classes
+	 * @param classes
+	 * @return the results of the classes that have methods to run, in the
+	 * same order
+	 * @throws InterruptedException
+	 */
+	public List<ClassResult> run(Class<?>... classes)
+			throws InterruptedException {
+		ExecutorService e = executor != null ? executor
+				: Executors.newFixedThreadPool(
+						Runtime.getRuntime().availableProcessors());
+		try {
+			List<Future<ClassResult>> futures =
+					new ArrayList<Future<ClassResult>>();
+			for (Class<?> c : classes) {
+				List<Method> methods = getMethods(c);
+				if (!methods.isEmpty()) {
+					futures.add(e.submit(() -> runClass(c, methods)));
+				}
+			}
+			List<ClassResult> results = new ArrayList<ClassResult>();
+			for (Future<ClassResult> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException ex) {
+					// runClass catches everything thrown by the methods
+					throw new IllegalStateException(ex.getCause());
+				}
+			}
+			return results;
+		} finally {
+			if (executor == null) {
+				e.shutdown();
+			}
+		}
+	}
+	
+	/**
+	 * Get the methods of a class to run, sorted by name
+	 * @param c
+	 * @return
+	 */
+	protected List<Method> getMethods(Class<?> c) {
+		List<Method> methods = new ArrayList<Method>();
+		if (c.isInterface() || c.isAnnotation()) {
+			return methods;
+		}
+		try {
+			for (Method m : c.getMethods()) {
+				if (methodFilter.test(m) && (Modifier.isStatic(
+						m.getModifiers()) || !Modifier.isAbstract(
+								c.getModifiers()))) {
+					methods.add(m);
+				}
+			}
+		} catch (LinkageError e) {
+			// The class cannot be linked, so it is not runnable
+		}
+		methods.sort(Comparator.comparing(Method::getName));
+		return methods;
+	}
+	
+	protected ClassResult runClass(Class<?> c, List<Method> methods) {
+		long wall = System.nanoTime();
+		long cpu = cpuTime();
+		List<MethodResult> results = new ArrayList<MethodResult>();
+		for (Method m : methods) {
+			results.add(runMethod(c, m));
+		}
+		return new ClassResult(c, results, System.nanoTime() - wall,
+				cpuTime() - cpu);
+	}
+	
+	protected MethodResult runMethod(Class<?> c, Method m) {
+		long wall = System.nanoTime();
+		long cpu = cpuTime();
+		Throwable failure = null;
+		try {
+			Object instance = null;
+			if (!Modifier.isStatic(m.getModifiers())) {
+				Constructor<?> constructor = c.getDeclaredConstructor();
+				constructor.setAccessible(true);
+				instance = constructor.newInstance();
+			}
+			m.setAccessible(true);
+			m.invoke(instance);
+		} catch (InvocationTargetException e) {
+			failure = e.getCause();
+		} catch (Throwable e) {
+			failure = e;
+		}
+		return new MethodResult(m, failure, System.nanoTime() - wall,
+				cpuTime() - cpu);
+	}
+	
+	/**
+	 * Print a summary of some results: one line per class, slowest first, 
+	 * then the failures with their stack traces
+	 * @param out
+	 * @param results
+	 */
+	public static void report(PrintStream out, List<ClassResult> results) {
+		List<ClassResult> sorted = new ArrayList<ClassResult>(results);
+		sorted.sort(Comparator.comparingLong(
+				ClassResult::getWallNanos).reversed());
+		int methods = 0;
+		int failures = 0;
+		for (ClassResult r : sorted) {
+			methods += r.getMethodResults().size();
+			failures += r.getFailures().size();
+			out.printf("%-60s %4d run %4d failed %10.3f ms wall "
+					+ "%10.3f ms cpu%n", r.getType().getName(),
+					r.getMethodResults().size(), r.getFailures().size(),
+					r.getWallNanos() / 1e6,
+					r.getCpuNanos() / 1e6);
+		}
+		for (ClassResult r : results) {
+			for (MethodResult m : r.getFailures()) {
+				out.println();
+				out.println("FAILED " + r.getType().getName() + "."
+						+ m.getMethod().getName());
+				m.getFailure().printStackTrace(out);
+			}
+		}
+		out.println();
+		out.printf("%d classes, %d methods, %d failed%n", results.size(),
+				methods, failures);
+	}
+	
+	/**
+	 * Get the CPU time of the current thread
+	 * @return the CPU time in nanoseconds, or 0 if not supported
+	 */
+	protected static long cpuTime() {
+		return THREADS.isCurrentThreadCpuTimeSupported()
+				? Math.max(THREADS.getCurrentThreadCpuTime(), 0) : 0;
+	}
+	
+	/**
+	 * Run the test methods on a fixed thread pool with one thread per 
+	 * processor
+	 * @return
+	 */
+	public static ClassRunner init() {
+		return new ClassRunner(null, TEST_METHODS);
+	}
+	
+	/**
+	 * Run the test methods on an executor. The executor is not shut down.
+	 * @param executor
+	 * @return
+	 */
+	public static ClassRunner init(ExecutorService executor) {
+		return new ClassRunner(executor, TEST_METHODS);
+	}
+	
+	/**
+	 * Run the methods that match a filter on an executor. The executor is 
+	 * not shut down.
+	 * @param executor the executor, or null for a fixed thread pool with
+	 * one thread per processor for every run
+	 * @param methodFilter
+	 * @return
+	 */
+	public static ClassRunner init(ExecutorService executor,
+			Predicate<Method> methodFilter) {
+		return new ClassRunner(executor, methodFilter);
+	}
+	
+	/**
+	 * Run the test methods of the classes under the given packages, 
+	 * print a report and exit with status 1 if anything failed
+	 * @param args package names
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		List<ClassResult> results = new ArrayList<ClassResult>();
+		ClassRunner runner = init();
+		for (String packageName : args) {
+			results.addAll(runner.run(packageName));
+		}
+		report(System.out, results);
+		for (ClassResult r : results) {
+			if (!r.isSuccess()) {
+				System.exit(1);
+			}
+		}
+	}
+	
+	/**
+	 * The result of running the methods of a class
+	 */
+	public static class ClassResult {
+		
+		protected final Class<?> type;
+		protected final List<MethodResult> methodResults;
+		protected final long wallNanos;
+		protected final long cpuNanos;
+		
+		protected ClassResult(Class<?> type, List<MethodResult> methodResults,
+				long wallNanos, long cpuNanos) {
+			this.type = type;
+			this.methodResults = Collections.unmodifiableList(methodResults);
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+		}
+		
+		public Class<?> getType() {
+			return type;
+		}
+		
+		public List<MethodResult> getMethodResults() {
+			return methodResults;
+		}
+		
+		public List<MethodResult> getFailures() {
+			List<MethodResult> failures = new ArrayList<MethodResult>();
+			for (MethodResult m : methodResults) {
+				if (!m.isSuccess()) {
+					failures.add(m);
+				}
+			}
+			return failures;
+		}
+		
+		public boolean isSuccess() {
+			return methodResults.stream().allMatch(MethodResult::isSuccess);
+		}
+		
+		public long getWallNanos() {
+			return wallNanos;
+		}
+		
+		/**
+		 * Get the CPU time of the runner thread, which does not include 
+		 * the threads started by the methods
+		 * @return
+		 */
+		public long getCpuNanos() {
+			return cpuNanos;
+		}
+		
+		@Override
+		public String toString() {
+			return type.getName() + Arrays.toString(
+					methodResults.toArray());
+		}
+	
+	}
+	
+	/**
+	 * The result of running a method
+	 */
+	public static class MethodResult {
+		
+		protected final Method method;
+		protected final Throwable failure;
+		protected final long wallNanos;
+		protected final long cpuNanos;
+		
+		protected MethodResult(Method method, Throwable failure,
+				long wallNanos, long cpuNanos) {
+			this.method = method;
+			this.failure = failure;
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+		}
+		
+		public Method getMethod() {
+			return method;
+		}
+		
+		/**
+		 * Get what the method threw
+		 * @return the failure, or null if the method succeeded
+		 */
+		public Throwable getFailure() {
+			return failure;
+		}
+		
+		public boolean isSuccess() {
+			return failure == null;
+		}
+		
+		public long getWallNanos() {
+			return wallNanos;
+		}
+		
+		public long getCpuNanos() {
+			return cpuNanos;
+		}
+		
+		@Override
+		public String toString() {
+			return method.getName() + (failure == null ? ": ok"
+					: ": " + failure);
+		}
+	
+	}
+
+}
@@ -0,0 +1,521 @@
+package io.ologn.common;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps the set of classes under a package name up to date, for tools 
+ * like hot-reload servers that would otherwise call 
+ * {@link ClassFinder#getClassNames(String)} again and again.<br>
+ * The package directories of the classpath are scanned once and 
+ * registered with a {@link WatchService}, and the class set is then 
+ * maintained incrementally from the create, delete and modify events on 
+ * a daemon thread. JAR files are scanned once and not watched. If events 
+ * are lost, the directories are scanned again and the differences are 
+ * reported as usual.<br>
+ * The package directory of every classpath directory is a root, even if 
+ * it does not exist yet. The nearest existing parent of every root, up to 
+ * the classpath directory, is watched as well, so a root that is deleted 
+ * and created again by a clean build, or created after the watcher, is 
+ * registered again with a rescan.<br>
+ * Listeners are called on the watcher thread with the classes that were 
+ * added, removed and modified by a batch of events. An exception thrown 
+ * by a listener goes to the uncaught exception handler of the thread and 
+ * does not stop the watcher.
+ * @author lisq199
+ */
+public class ClassWatcher implements Closeable {
+	
+	/**
+	 * Receives the changes of the class set
+	 */
+	@FunctionalInterface
+	public interface Listener {
+		
+		/**
+		 * Called after a batch of events, on the watcher thread. The sets 
+		 * are sorted and not empty at the same time.
+		 * @param watcher
+		 * @param added
+		 * @param removed
+		 * @param modified
+		 */
+		void classesChanged(ClassWatcher watcher, Set<String> added,
+				Set<String> removed, Set<String> modified);
+	
+	}
+	
+	protected final String packageName;
+	protected final ClassLoader classLoader;
+	protected final WatchService watchService;
+	protected final List<Listener> listeners =
+			new CopyOnWriteArrayList<Listener>();
+	protected final Thread thread;
+	
+	/**
+	 * The package directories of the classpath directories, which may not 
+	 * exist
+	 */
+	protected final List<Path> roots;
+	
+	/**
+	 * The nearest existing parent of roots, by watch key. See 
+	 * {@link #watchParent(Path)}.
+	 */
+	protected final Map<WatchKey, Path> parents =
+			new HashMap<WatchKey, Path>();
+	
+	/**
+	 * The package of every registered directory, by watch key
+	 */
+	protected final Map<WatchKey, Path> directories =
+			new HashMap<WatchKey, Path>();
+	protected final Map<Path, String> packages = new HashMap<Path, String>();
+	
+	/**
+	 * The class name of every class file in the watched directories
+	 */
+	protected final Map<Path, String> files = new HashMap<Path, String>();
+	
+	/**
+	 * How many times every class name was found, since the same class can 
+	 * be in more than one root
+	 */
+	protected final TreeMap<String, Integer> counts =
+			new TreeMap<String, Integer>();
+	
+	/**
+	 * The changes since the last notification
+	 */
+	protected SortedSet<String> added = new TreeSet<String>();
+	protected SortedSet<String> removed = new TreeSet<String>();
+	protected SortedSet<String> modified = new TreeSet<String>();
+	
+	protected ClassWatcher(String packageName, ClassLoader classLoader,
+			WatchService watchService, List<Path> roots,
+			List<String> jarClassNames) {
+		this.packageName = packageName;
+		this.classLoader = classLoader;
+		this.watchService = watchService;
+		this.roots = roots;
+		for (String name : jarClassNames) {
+			increment(name);
+		}
+		this.thread = new Thread(this::run, "ClassWatcher-" + packageName);
+		this.thread.setDaemon(true);
+	}
+	
+	public String getPackageName() {
+		return packageName;
+	}
+	
+	/**
+	 * Get a snapshot of the names of the classes
+	 * @return
+	 */
+	public synchronized SortedSet<String> getClassNames() {
+		return Collections.unmodifiableSortedSet(
+				new TreeSet<String>(counts.keySet()));
+	}
+	
+	/**
+	 * Load a snapshot of the classes, without initializing them
+	 * @return
+	 * @throws ClassNotFoundException
+	 */
+	public Class<?>[] getClasses() throws ClassNotFoundException {
+		SortedSet<String> names = getClassNames();
+		Class<?>[] classes = new Class<?>[names.size()];
+		int i = 0;
+		for (String name : names) {
+			classes[i++] = Class.forName(name, false, classLoader);
+		}
+		return classes;
+	}
+	
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+	
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * Stop watching. The snapshot is not updated after this.
+	 */
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+		thread.interrupt();
+	}
+	
+	protected void run() {
+		while (true) {
+			WatchKey key;
+			try {
+				key = watchService.take();
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+			SortedSet<String> added, removed, modified;
+			synchronized (this) {
+				try {
+					if (!processEvents(key)) {
+						rescan();
+					}
+				} catch (IOException e) {
+					// The directory is being changed, try again from scratch
+					try {
+						rescan();
+					} catch (IOException e2) {
+						// Keep the current set until the next event
+					}
+				}
+				added = this.added;
+				removed = this.removed;
+				modified = this.modified;
+				modified.removeAll(added);
+				modified.removeAll(removed);
+				clearChanges();
+			}
+			if (!added.isEmpty() || !removed.isEmpty()
+					|| !modified.isEmpty()) {
+				notifyListeners(Collections.unmodifiableSortedSet(added),
+						Collections.unmodifiableSortedSet(removed),
+						Collections.unmodifiableSortedSet(modified));
+			}
+		}
+	}
+	
+	/**
+	 * Apply the events of a key
+	 * @param key
+	 * @return false if events were lost and everything must be scanned
+	 * again
+	 * @throws IOException
+	 */
+	protected boolean processEvents(WatchKey key) throws IOException {
+		Path directory = directories.get(key);
+		Path parent = parents.get(key);
+		List<WatchEvent<?>> events = key.pollEvents();
+		if (!key.reset()) {
+			directories.remove(key);
+			parents.remove(key);
+			if (parent != null || roots.contains(directory)) {
+				// A root or the parent of a root is gone
+				return false;
+			}
+		}
+		if (parent != null) {
+			for (WatchEvent<?> event : events) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					return false;
+				}
+				if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY
+						&& isOnRootPath(parent.resolve(
+								(Path) event.context()))) {
+					// A root, or a directory on the way to it, was created 
+					// or deleted
+					return false;
+				}
+			}
+		}
+		if (directory == null) {
+			return true;
+		}
+		String directoryPackage = packages.get(directory);
+		for (WatchEvent<?> event : events) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				return false;
+			}
+			Path file = directory.resolve((Path) event.context());
+			String fileName = file.getFileName().toString();
+			if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+				if (Files.isDirectory(file)) {
+					register(file, directoryPackage + '.' + fileName);
+				} else {
+					addFile(file, directoryPackage);
+				}
+			} else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+				removeAll(file);
+			} else if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+				String name = files.get(file);
+				if (name != null) {
+					modified.add(name);
+				} else if (!Files.isDirectory(file)) {
+					addFile(file, directoryPackage);
+				}
+			}
+		}
+		return true;
+	}
+	
+	protected void notifyListeners(Set<String> added, Set<String> removed,
+			Set<String> modified) {
+		for (Listener listener : listeners) {
+			try {
+				listener.classesChanged(this, added, removed, modified);
+			} catch (RuntimeException e) {
+				thread.getUncaughtExceptionHandler()
+						.uncaughtException(thread, e);
+			}
+		}
+	}
+	
+	/**
+	 * Register a directory and its sub directories, and add their class 
+	 * files
+	 * @param directory
+	 * @param directoryPackage
+	 * @throws IOException
+	 */
+	protected void register(Path directory, String directoryPackage)
+			throws IOException {
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir,
+					BasicFileAttributes attrs) throws IOException {
+				String p = directoryPackage;
+				for (Path part : directory.relativize(dir)) {
+					if (!part.toString().isEmpty()) {
+						p += "." + part;
+					}
+				}
+				packages.put(dir, p);
+				directories.put(dir.register(watchService,
+						StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_DELETE,
+						StandardWatchEventKinds.ENTRY_MODIFY), dir);
+				return FileVisitResult.CONTINUE;
+			}
+			
+			@Override
+			public FileVisitResult visitFile(Path file,
+					BasicFileAttributes attrs) {
+				addFile(file, packages.get(file.getParent()));
+				return FileVisitResult.CONTINUE;
+			}
+		
+		});
+	}
+	
+	/**
+	 * Forget all the watched directories and scan the roots again. The 
+	 * classes that are still there are not reported as modified.
+	 * @throws IOException
+	 */
+	protected void rescan() throws IOException {
+		SortedSet<String> wasModified = new TreeSet<String>(modified);
+		for (WatchKey key : directories.keySet()) {
+			key.cancel();
+		}
+		for (WatchKey key : parents.keySet()) {
+			key.cancel();
+		}
+		directories.clear();
+		parents.clear();
+		packages.clear();
+		for (String name : files.values()) {
+			decrement(name);
+		}
+		files.clear();
+		for (Path root : roots) {
+			// The parent is watched first, so a root created in between 
+			// causes another rescan
+			watchParent(root);
+			if (Files.isDirectory(root)) {
+				register(root, packageName);
+			}
+		}
+		modified = wasModified;
+	}
+	
+	/**
+	 * Watch the nearest existing parent of a root, but not above the 
+	 * classpath directory of the root
+	 * @param root
+	 * @throws IOException
+	 */
+	protected void watchParent(Path root) throws IOException {
+		Path entry = root;
+		for (int i = packageName.isEmpty() ? 0
+				: packageName.split("\\.").length; i > 0; i--) {
+			entry = entry.getParent();
+		}
+		for (Path p = root.getParent(); p != null && p.startsWith(entry);
+				p = p.getParent()) {
+			if (Files.isDirectory(p)) {
+				parents.put(p.register(watchService,
+						StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_DELETE,
+						StandardWatchEventKinds.ENTRY_MODIFY), p);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Check if a path is a root or a parent of a root
+	 * @param path
+	 * @return
+	 */
+	protected boolean isOnRootPath(Path path) {
+		for (Path root : roots) {
+			if (root.startsWith(path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	protected void addFile(Path file, String filePackage) {
+		String fileName = file.getFileName().toString();
+		if (filePackage != null && ClassFinder.isClassFile(fileName)
+				&& !files.containsKey(file)) {
+			String name = filePackage + '.' + fileName.substring(0,
+					fileName.length() - ClassFinder.CLASS_SUFFIX.length());
+			files.put(file, name);
+			increment(name);
+		}
+	}
+	
+	/**
+	 * Remove a class file, or everything under a directory
+	 * @param path
+	 */
+	protected void removeAll(Path path) {
+		for (Iterator<Map.Entry<Path, String>> it =
+				files.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Path, String> e = it.next();
+			if (e.getKey().startsWith(path)) {
+				decrement(e.getValue());
+				it.remove();
+			}
+		}
+		for (Iterator<Map.Entry<WatchKey, Path>> it =
+				directories.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<WatchKey, Path> e = it.next();
+			if (e.getValue().startsWith(path)) {
+				e.getKey().cancel();
+				packages.remove(e.getValue());
+				it.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Count a class file of a class, and record the class as added if it 
+	 * is new
+	 * @param name
+	 */
+	protected void increment(String name) {
+		if (counts.merge(name, 1, Integer::sum) == 1) {
+			if (removed.remove(name)) {
+				// Deleted and created again in the same batch
+				modified.add(name);
+			} else {
+				added.add(name);
+			}
+		}
+	}
+	
+	/**
+	 * Uncount a class file of a class, and record the class as removed if 
+	 * it was the last one
+	 * @param name
+	 */
+	protected void decrement(String name) {
+		if (counts.computeIfPresent(name,
+				(k, v) -> v == 1 ? null : v - 1) == null
+				&& !added.remove(name)) {
+			removed.add(name);
+		}
+	}
+	
+	protected void clearChanges() {
+		added = new TreeSet<String>();
+		removed = new TreeSet<String>();
+		modified = new TreeSet<String>();
+	}
+	
+	/**
+	 * Scan and start watching the classes accessible from the context 
+	 * class loader which belong to the given package and sub packages
+	 * @param packageName The base package
+	 * @return
+	 * @throws IOException
+	 */
+	public static ClassWatcher init(String packageName) throws IOException {
+		return init(packageName,
+				Thread.currentThread().getContextClassLoader());
+	}
+	
+	/**
+	 * Scan and start watching the classes accessible from a class loader 
+	 * which belong to the given package and sub packages
+	 * @param packageName The base package
+	 * @param classLoader
+	 * @return
+	 * @throws IOException
+	 */
+	public static ClassWatcher init(String packageName,
+			ClassLoader classLoader) throws IOException {
+		Set<Path> roots = new LinkedHashSet<Path>();
+		List<String> jarClassNames = new ArrayList<String>();
+		ClassFinder.forEachLocation(packageName, classLoader,
+				ClassFinder.withJar(jar -> jarClassNames.addAll(
+						ClassFinder.findClassNames(jar, packageName))),
+				directory -> roots.add(directory.toPath().toAbsolutePath()
+						.normalize()));
+		// Also the package directories that do not exist yet
+		String path = packageName.replace('.', File.separatorChar);
+		for (File entry : ClassFinder.getClasspathRoots(classLoader)) {
+			if (entry.isDirectory()) {
+				roots.add(new File(entry, path).toPath().toAbsolutePath()
+						.normalize());
+			}
+		}
+		WatchService watchService = FileSystems.getDefault()
+				.newWatchService();
+		ClassWatcher watcher = new ClassWatcher(packageName, classLoader,
+				watchService, new ArrayList<Path>(roots), jarClassNames);
+		try {
+			synchronized (watcher) {
+				watcher.rescan();
+				watcher.clearChanges();
+			}
+		} catch (IOException e) {
+			watchService.close();
+			throw e;
+		}
+		watcher.thread.start();
+		return watcher;
+	}
+
+}
@@ -0,0 +1,188 @@
+package io.ologn.common;
+
+/**
+ * Assigning keys to shards (buckets or nodes) so that changing the number 
+ * of shards moves as few keys as possible. With 
+ * {@code hash % n}, going from n to n + 1 shards moves almost every key, 
+ * but with these methods only about 1 / (n + 1) of the keys move.<br>
+ * 1. Jump consistent hash: for shards numbered 0 to n - 1, where shards 
+ * are only added or removed at the end. No memory needed.<br>
+ * Source of algorithm: <a href="https://arxiv.org/abs/1406.2294">link</a>
+ * <br>
+ * 2. Rendezvous (highest random weight) hashing: for shards with 
+ * arbitrary ids and optional weights, where any shard can be removed. 
+ * O(number of shards) per key.<br>
+ * The batch methods work on primitive arrays and do not allocate.
+ * @author lisq199
+ */
+public class ConsistentHash {
+	
+	/**
+	 * Jump consistent hash of a key that is already a good 64-bit hash.
+	 * @param hash
+	 * @param buckets the number of buckets
+	 * @return the bucket, in [0, buckets)
+	 */
+	public static int jumpHash(long hash, int buckets) {
+		if (buckets <= 0) {
+			throw new IllegalArgumentException("buckets must be positive");
+		}
+		long b = -1;
+		long j = 0;
+		while (j < buckets) {
+			b = j;
+			hash = hash * 2862933555777941757L + 1;
+			j = (long) ((b + 1) * ((double) (1L << 31)
+					/ (double) ((hash >>> 33) + 1)));
+		}
+		return (int) b;
+	}
+	
+	/**
+	 * Jump consistent hash of a key. The key is hashed with 
+	 * {@link XxHash64} first, so sequential ids are fine.
+	 * @param key
+	 * @param buckets the number of buckets
+	 * @return the bucket, in [0, buckets)
+	 */
+	public static int jump(long key, int buckets) {
+		return jumpHash(XxHash64.hashLong(key), buckets);
+	}
+	
+	public static int jump(CharSequence key, int buckets) {
+		return jumpHash(XxHash64.hash(key), buckets);
+	}
+	
+	/**
+	 * Batch version of {@link #jump(long, int)}
+	 * @param keys
+	 * @param buckets the number of buckets
+	 * @param result the array to store the buckets in, at least as long 
+	 * as keys
+	 * @return result
+	 */
+	public static int[] jump(long[] keys, int buckets, int[] result) {
+		checkResult(keys, result);
+		for (int i = 0; i < keys.length; i++) {
+			result[i] = jumpHash(XxHash64.hashLong(keys[i]), buckets);
+		}
+		return result;
+	}
+	
+	/**
+	 * Rendezvous hashing with equal weights.
+	 * @param key
+	 * @param nodes the ids of the nodes. Node ids must be unique and 
+	 * stable, but their order does not matter.
+	 * @return the index of the chosen node in nodes
+	 */
+	public static int rendezvous(long key, long[] nodes) {
+		if (nodes.length == 0) {
+			throw new IllegalArgumentException("no nodes");
+		}
+		int best = 0;
+		long bestScore = Long.MIN_VALUE;
+		for (int i = 0; i < nodes.length; i++) {
+			// Compare as unsigned so every score is possible
+			long score = XxHash64.hashLong(key, nodes[i]) ^ Long.MIN_VALUE;
+			if (score > bestScore || i == 0) {
+				best = i;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * Weighted rendezvous hashing. The probability of a node being chosen 
+	 * is proportional to its weight.<br>
+	 * Source of algorithm: <a href="https://www.snia.org/sites/default/files/SDC15_presentations/dist_sys/Jason_Resch_New_Consistent_Hashings_Rev.pdf">
+	 * link</a>
+	 * @param key
+	 * @param nodes the ids of the nodes. Node ids must be unique and 
+	 * stable, but their order does not matter.
+	 * @param weights the positive and finite weights of the nodes
+	 * @return the index of the chosen node in nodes
+	 */
+	public static int rendezvous(long key, long[] nodes, double[] weights) {
+		if (nodes.length == 0 || nodes.length != weights.length) {
+			throw new IllegalArgumentException(
+					"nodes and weights must have the same non-zero length");
+		}
+		checkWeights(weights);
+		int best = 0;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < nodes.length; i++) {
+			double score = weightedScore(
+					XxHash64.hashLong(key, nodes[i]), weights[i]);
+			if (score > bestScore) {
+				best = i;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * Batch version of {@link #rendezvous(long, long[])}
+	 * @param keys
+	 * @param nodes
+	 * @param result the array to store the node indices in, at least as 
+	 * long as keys
+	 * @return result
+	 */
+	public static int[] rendezvous(long[] keys, long[] nodes, int[] result) {
+		checkResult(keys, result);
+		for (int i = 0; i < keys.length; i++) {
+			result[i] = rendezvous(keys[i], nodes);
+		}
+		return result;
+	}
+	
+	/**
+	 * Batch version of {@link #rendezvous(long, long[], double[])}
+	 * @param keys
+	 * @param nodes
+	 * @param weights
+	 * @param result the array to store the node indices in, at least as 
+	 * long as keys
+	 * @return result
+	 */
+	public static int[] rendezvous(long[] keys, long[] nodes,
+			double[] weights, int[] result) {
+		checkResult(keys, result);
+		for (int i = 0; i < keys.length; i++) {
+			result[i] = rendezvous(keys[i], nodes, weights);
+		}
+		return result;
+	}
+	
+	/**
+	 * -weight / ln(u), where u is the hash mapped to (0, 1)
+	 */
+	protected static double weightedScore(long hash, double weight) {
+		double u = ((hash >>> 11) + 0.5) * 0x1.0p-53;
+		return -weight / Math.log(u);
+	}
+	
+	/**
+	 * A weight of 0 or less, infinity or NaN gives every key the same 
+	 * score on that node, so the choice would depend on the order of the 
+	 * nodes
+	 */
+	protected static void checkWeights(double[] weights) {
+		for (double w : weights) {
+			if (!(w > 0 && w < Double.POSITIVE_INFINITY)) {
+				throw new IllegalArgumentException(
+						"weights must be positive and finite: " + w);
+			}
+		}
+	}
+	
+	protected static void checkResult(long[] keys, int[] result) {
+		if (result.length < keys.length) {
+			throw new IllegalArgumentException("result array too short");
+		}
+	}
+
+}
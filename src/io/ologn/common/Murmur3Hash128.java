@@ -0,0 +1,184 @@
+package io.ologn.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * 128-bit MurmurHash3 (the x64 variant).<br>
+ * Source of algorithm: <a href="https://github.com/aappleby/smhasher/blob/master/src/MurmurHash3.cpp">link</a>
+ * <br>
+ * Typical usage: {@code Murmur3Hash128.init().addInt(a).addArray(b).get();}
+ * <br>
+ * The result is returned as 2 longs, {h1, h2}, which are the low and high 
+ * 64 bits of the 128-bit hash.
+ * @author lisq199
+ */
+public class Murmur3Hash128 extends StreamingHash<Murmur3Hash128> {
+	
+	protected static final long C1 = 0x87C37B91114253D5L;
+	protected static final long C2 = 0x4CF5AD432745937FL;
+	
+	protected final long seed;
+	protected long h1;
+	protected long h2;
+	
+	protected Murmur3Hash128(long seed) {
+		super(16);
+		this.seed = seed;
+		this.h1 = seed;
+		this.h2 = seed;
+	}
+	
+	@Override
+	protected void processBlock(ByteBuffer b, int index) {
+		h1 ^= mixK1(b.getLong(index));
+		h1 = Long.rotateLeft(h1, 27);
+		h1 += h2;
+		h1 = h1 * 5 + 0x52DCE729;
+		h2 ^= mixK2(b.getLong(index + 8));
+		h2 = Long.rotateLeft(h2, 31);
+		h2 += h1;
+		h2 = h2 * 5 + 0x38495AB5;
+	}
+	
+	/**
+	 * Get the final result
+	 * @return an array of length 2 containing the low and high 64 bits
+	 */
+	public long[] get() {
+		long r1 = h1;
+		long r2 = h2;
+		int n = buffer.position();
+		if (n > 8) {
+			r2 ^= mixK2(tail(8, n));
+		}
+		if (n > 0) {
+			r1 ^= mixK1(tail(0, Math.min(n, 8)));
+		}
+		r1 ^= length;
+		r2 ^= length;
+		r1 += r2;
+		r2 += r1;
+		r1 = fmix64(r1);
+		r2 = fmix64(r2);
+		r1 += r2;
+		r2 += r1;
+		return new long[] {r1, r2};
+	}
+	
+	/**
+	 * Get the low 64 bits of the final result
+	 * @return
+	 */
+	public long getLow() {
+		return get()[0];
+	}
+	
+	@Override
+	public String toString() {
+		return "Murmur3Hash128[seed: " + seed + ", length: " + length + "]";
+	}
+	
+	/**
+	 * Read the pending bytes in [from, to) as a little-endian long
+	 */
+	protected long tail(int from, int to) {
+		long k = 0;
+		for (int i = to - 1; i >= from; i--) {
+			k = (k << 8) | (buffer.get(i) & 0xFFL);
+		}
+		return k;
+	}
+	
+	protected static long mixK1(long k1) {
+		k1 *= C1;
+		k1 = Long.rotateLeft(k1, 31);
+		return k1 * C2;
+	}
+	
+	protected static long mixK2(long k2) {
+		k2 *= C2;
+		k2 = Long.rotateLeft(k2, 33);
+		return k2 * C1;
+	}
+	
+	protected static long fmix64(long k) {
+		k ^= k >>> 33;
+		k *= 0xFF51AFD7ED558CCDL;
+		k ^= k >>> 33;
+		k *= 0xC4CEB9FE1A85EC53L;
+		k ^= k >>> 33;
+		return k;
+	}
+	
+	/**
+	 * Initialize with seed 0
+	 * @return
+	 */
+	public static Murmur3Hash128 init() {
+		return init(0);
+	}
+	
+	/**
+	 * Initialize with a specified seed. Like the reference implementation, 
+	 * only the low 32 bits of the seed are used.
+	 * @param seed
+	 * @return
+	 */
+	public static Murmur3Hash128 init(int seed) {
+		return new Murmur3Hash128(seed & 0xFFFFFFFFL);
+	}
+	
+	public static long[] hash(byte[] f) {
+		return init().addArray(f).get();
+	}
+	
+	public static long[] hash(char[] f) {
+		return init().addArray(f).get();
+	}
+	
+	public static long[] hash(int[] f) {
+		return init().addArray(f).get();
+	}
+	
+	public static long[] hash(long[] f) {
+		return init().addArray(f).get();
+	}
+	
+	public static long[] hash(CharSequence f) {
+		return init().addChars(f).get();
+	}
+	
+	/**
+	 * Hash the remaining bytes of a ByteBuffer. The position of the 
+	 * buffer is moved to its limit.
+	 * @param f
+	 * @return
+	 */
+	public static long[] hash(ByteBuffer f) {
+		return init().addBuffer(f).get();
+	}
+	
+	/**
+	 * Hash everything from an InputStream. The stream is not closed.
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static long[] hash(InputStream in) throws IOException {
+		return init().addStream(in).get();
+	}
+	
+	/**
+	 * Hash the content of a file through memory mapping
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static long[] hash(Path path) throws IOException {
+		return init().addFile(path).get();
+	}
+
+}
@@ -9,6 +9,12 @@ import java.util.function.BiFunction;
  * <br>
  * The methods are pretty self-explanatory.<br>
  * Typical usage: {@code OlognHashCode.init().addInt(a).addArray(b).get();}
+ * <br>
+ * For hot paths, the static {@code hash} methods produce the same results 
+ * as the default builder without allocating anything:<br>
+ * {@code OlognHashCode.hash(a, OlognHashCode.hashOf(b));}<br>
+ * For better distributed 64-bit and 128-bit hashes, use {@link XxHash64} 
+ * and {@link Murmur3Hash128}.
  * @author lisq199
  */
 public class OlognHashCode {
@@ -39,7 +45,7 @@ public class OlognHashCode {
 	}
 	
 	public OlognHashCode addBoolean(boolean f) {
-		return addHash(f ? 1 : 0);
+		return addHash(hashOf(f));
 	}
 	
 	public OlognHashCode addByte(byte f) {
@@ -59,11 +65,11 @@ public class OlognHashCode {
 	}
 	
 	public OlognHashCode addLong(long f) {
-		return addHash((int) (f ^ (f >>> 32)));
+		return addHash(hashOf(f));
 	}
 	
 	public OlognHashCode addFloat(float f) {
-		return addHash(Float.floatToIntBits(f));
+		return addHash(hashOf(f));
 	}
 	
 	public OlognHashCode addDouble(double f) {
@@ -117,7 +123,7 @@ public class OlognHashCode {
 	}
 	
 	public OlognHashCode addObject(Object f) {
-		return addHash(f == null ? 0 : f.hashCode());
+		return addHash(hashOf(f));
 	}
 	
 	/**
@@ -133,10 +139,7 @@ public class OlognHashCode {
 	
 	@Override
 	public int hashCode() {
-		return init()
-				.addInt(result)
-				.addInt(prime)
-				.get();
+		return hash(result, prime);
 	}
 	
 	@Override
@@ -169,6 +172,165 @@ public class OlognHashCode {
 		return new OlognHashCode(start, prime);
 	}
 	
+	/**
+	 * Add a hash to an intermediate result with the default prime. This is 
+	 * the static equivalent of {@link #addHash(int)}.
+	 * @param result
+	 * @param hash
+	 * @return
+	 */
+	public static int combine(int result, int hash) {
+		return DEFAULT_PRIME * result + hash;
+	}
+	
+	/**
+	 * Same as {@code init().addHash(h1).get()}, without allocation.
+	 * @param h1
+	 * @return
+	 */
+	public static int hash(int h1) {
+		return combine(DEFAULT_START, h1);
+	}
+	
+	/**
+	 * Same as {@code init().addHash(h1).addHash(h2).get()}, without 
+	 * allocation.
+	 * @return
+	 */
+	public static int hash(int h1, int h2) {
+		return combine(hash(h1), h2);
+	}
+	
+	/**
+	 * Same as adding all the hashes in order to {@code init()}, without 
+	 * allocation.
+	 * @return
+	 */
+	public static int hash(int h1, int h2, int h3) {
+		return combine(hash(h1, h2), h3);
+	}
+	
+	/**
+	 * Same as adding all the hashes in order to {@code init()}, without 
+	 * allocation.
+	 * @return
+	 */
+	public static int hash(int h1, int h2, int h3, int h4) {
+		return combine(hash(h1, h2, h3), h4);
+	}
+	
+	/**
+	 * Same as adding all the hashes in order to {@code init()}, without 
+	 * allocation.
+	 * @return
+	 */
+	public static int hash(int h1, int h2, int h3, int h4, int h5) {
+		return combine(hash(h1, h2, h3, h4), h5);
+	}
+	
+	/**
+	 * Same as adding all the hashes in order to {@code init()}, without 
+	 * allocation.
+	 * @return
+	 */
+	public static int hash(int h1, int h2, int h3, int h4, int h5,
+			int h6) {
+		return combine(hash(h1, h2, h3, h4, h5), h6);
+	}
+	
+	/**
+	 * Same as adding all the hashes in order to {@code init()}, without 
+	 * allocation.
+	 * @return
+	 */
+	public static int hash(int h1, int h2, int h3, int h4, int h5,
+			int h6, int h7) {
+		return combine(hash(h1, h2, h3, h4, h5, h6), h7);
+	}
+	
+	/**
+	 * Same as adding all the hashes in order to {@code init()}, without 
+	 * allocation.
+	 * @return
+	 */
+	public static int hash(int h1, int h2, int h3, int h4, int h5,
+			int h6, int h7, int h8) {
+		return combine(hash(h1, h2, h3, h4, h5, h6, h7), h8);
+	}
+	
+	/**
+	 * Same as adding all the hashes in order to {@code init()}. Use the 
+	 * fixed-arity overloads when possible, because varargs allocate an 
+	 * array.
+	 * @param hashes
+	 * @return
+	 */
+	public static int hash(int... hashes) {
+		int result = DEFAULT_START;
+		for (int h : hashes) {
+			result = combine(result, h);
+		}
+		return result;
+	}
+	
+	/**
+	 * The hash {@link #addBoolean(boolean)} adds
+	 * @param f
+	 * @return
+	 */
+	public static int hashOf(boolean f) {
+		return f ? 1 : 0;
+	}
+	
+	/**
+	 * The hash {@link #addInt(int)} adds, which is the value itself like 
+	 * {@link Integer#hashCode(int)}. Bytes, chars and shorts also use 
+	 * this overload, as {@link #addByte(byte)}, {@link #addChar(char)} 
+	 * and {@link #addShort(short)} do. Without it, they would widen to 
+	 * {@link #hashOf(long)}, which differs for negative values.
+	 * @param f
+	 * @return
+	 */
+	public static int hashOf(int f) {
+		return f;
+	}
+	
+	/**
+	 * The hash {@link #addLong(long)} adds
+	 * @param f
+	 * @return
+	 */
+	public static int hashOf(long f) {
+		return (int) (f ^ (f >>> 32));
+	}
+	
+	/**
+	 * The hash {@link #addFloat(float)} adds
+	 * @param f
+	 * @return
+	 */
+	public static int hashOf(float f) {
+		return Float.floatToIntBits(f);
+	}
+	
+	/**
+	 * The hash {@link #addDouble(double)} adds
+	 * @param f
+	 * @return
+	 */
+	public static int hashOf(double f) {
+		return hashOf(Double.doubleToLongBits(f));
+	}
+	
+	/**
+	 * The hash {@link #addObject(Object)} adds
+	 * @param f
+	 * @return
+	 */
+	public static int hashOf(Object f) {
+		return f == null ? 0 : f.hashCode();
+	}
+	
 	/**
 	 * Default implementation of equals method.
 	 * @param t the original object. Most of the time, it will be "this".
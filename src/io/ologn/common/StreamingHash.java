@@ -0,0 +1,332 @@
+package io.ologn.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Base class of the block-based hash functions, namely {@link XxHash64} 
+ * and {@link Murmur3Hash128}.<br>
+ * Everything added is treated as little-endian bytes, so for example 
+ * {@code addInt(x)} gives the same result as adding the 4 bytes of x in 
+ * little-endian order, and {@code addArray(long[])} gives the same result 
+ * as adding the little-endian bytes of the whole array. Arrays are not 
+ * length-prefixed. Complete blocks are read 8 bytes at a time.<br>
+ * Calling get() does not modify the state, so more values can be added 
+ * afterwards.<br>
+ * Large inputs can be hashed incrementally: pass chunks to 
+ * {@link #addBuffer(ByteBuffer)}, or use {@link #addStream(InputStream)}, 
+ * {@link #addChannel(ReadableByteChannel)} and {@link #addFile(Path)}.
+ * @author lisq199
+ *
+ * @param <H> the type of the subclass, so the methods can be chained
+ */
+public abstract class StreamingHash<H extends StreamingHash<H>> {
+	
+	/**
+	 * The size of the chunks read by addStream() and addChannel()
+	 */
+	protected static final int READ_CHUNK_SIZE = 1 << 16;
+	
+	/**
+	 * The size of the windows mapped by addFile()
+	 */
+	protected static final long MAP_WINDOW_SIZE = 1L << 28;
+	
+	/**
+	 * The bytes of the current incomplete block
+	 */
+	protected final ByteBuffer buffer;
+	
+	/**
+	 * The total number of bytes added
+	 */
+	protected long length;
+	
+	protected StreamingHash(int blockSize) {
+		this.buffer = ByteBuffer.allocate(blockSize)
+				.order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * Process one complete block.
+	 * @param b a little-endian buffer
+	 * @param index the absolute index of the block in b
+	 */
+	protected abstract void processBlock(ByteBuffer b, int index);
+	
+	@SuppressWarnings("unchecked")
+	protected H self() {
+		return (H) this;
+	}
+	
+	/**
+	 * Get the total number of bytes added so far
+	 * @return
+	 */
+	public long length() {
+		return length;
+	}
+	
+	public H addBoolean(boolean f) {
+		return addBits(f ? 1 : 0, 1);
+	}
+	
+	public H addByte(byte f) {
+		return addBits(f, 1);
+	}
+	
+	public H addChar(char f) {
+		return addBits(f, 2);
+	}
+	
+	public H addShort(short f) {
+		return addBits(f, 2);
+	}
+	
+	public H addInt(int f) {
+		return addBits(f, 4);
+	}
+	
+	public H addLong(long f) {
+		return addBits(f, 8);
+	}
+	
+	public H addFloat(float f) {
+		return addInt(Float.floatToIntBits(f));
+	}
+	
+	public H addDouble(double f) {
+		return addLong(Double.doubleToLongBits(f));
+	}
+	
+	public H addArray(byte[] f) {
+		return addArray(f, 0, f.length);
+	}
+	
+	public H addArray(byte[] f, int offset, int length) {
+		return addBuffer(ByteBuffer.wrap(f, offset, length));
+	}
+	
+	public H addArray(char[] f) {
+		int i = 0;
+		for (; i + 4 <= f.length; i += 4) {
+			addLong(f[i] | (long) f[i + 1] << 16
+					| (long) f[i + 2] << 32 | (long) f[i + 3] << 48);
+		}
+		for (; i < f.length; i++) {
+			addChar(f[i]);
+		}
+		return self();
+	}
+	
+	public H addArray(short[] f) {
+		int i = 0;
+		for (; i + 4 <= f.length; i += 4) {
+			addLong((f[i] & 0xFFFFL) | (f[i + 1] & 0xFFFFL) << 16
+					| (f[i + 2] & 0xFFFFL) << 32 | (long) f[i + 3] << 48);
+		}
+		for (; i < f.length; i++) {
+			addShort(f[i]);
+		}
+		return self();
+	}
+	
+	public H addArray(int[] f) {
+		int i = 0;
+		for (; i + 2 <= f.length; i += 2) {
+			addLong((f[i] & 0xFFFFFFFFL) | (long) f[i + 1] << 32);
+		}
+		if (i < f.length) {
+			addInt(f[i]);
+		}
+		return self();
+	}
+	
+	public H addArray(long[] f) {
+		for (long l : f) {
+			addLong(l);
+		}
+		return self();
+	}
+	
+	public H addArray(float[] f) {
+		for (float x : f) {
+			addFloat(x);
+		}
+		return self();
+	}
+	
+	public H addArray(double[] f) {
+		for (double x : f) {
+			addDouble(x);
+		}
+		return self();
+	}
+	
+	/**
+	 * Add the UTF-16 chars of a CharSequence without creating a copy
+	 * @param f
+	 * @return
+	 */
+	public H addChars(CharSequence f) {
+		int n = f.length();
+		int i = 0;
+		for (; i + 4 <= n; i += 4) {
+			addLong(f.charAt(i) | (long) f.charAt(i + 1) << 16
+					| (long) f.charAt(i + 2) << 32
+					| (long) f.charAt(i + 3) << 48);
+		}
+		for (; i < n; i++) {
+			addChar(f.charAt(i));
+		}
+		return self();
+	}
+	
+	/**
+	 * Add the remaining bytes of a ByteBuffer. The byte order of the 
+	 * buffer does not matter. Works with heap, direct and mapped buffers 
+	 * without copying them. The position of the buffer is moved to its 
+	 * limit, like a channel write would do.
+	 * @param f
+	 * @return
+	 */
+	public H addBuffer(ByteBuffer f) {
+		ByteBuffer b = f.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int pos = b.position();
+		int limit = b.limit();
+		length += limit - pos;
+		// Complete the pending block first
+		while (buffer.position() != 0 && pos < limit) {
+			buffer.put(b.get(pos++));
+			flushIfFull();
+		}
+		int blockSize = buffer.capacity();
+		for (; limit - pos >= blockSize; pos += blockSize) {
+			processBlock(b, pos);
+		}
+		while (pos < limit) {
+			buffer.put(b.get(pos++));
+		}
+		f.position(limit);
+		return self();
+	}
+	
+	/**
+	 * Add everything from an InputStream until the end of the stream. 
+	 * The stream is not closed.
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public H addStream(InputStream in) throws IOException {
+		byte[] chunk = new byte[READ_CHUNK_SIZE];
+		int n;
+		while ((n = in.read(chunk)) != -1) {
+			addArray(chunk, 0, n);
+		}
+		return self();
+	}
+	
+	/**
+	 * Add everything from a channel until the end of the stream. The 
+	 * channel is not closed. For files, {@link #addFile(FileChannel, long, 
+	 * long)} is faster because it does not copy anything.
+	 * @param channel
+	 * @return
+	 * @throws IOException
+	 */
+	public H addChannel(ReadableByteChannel channel) throws IOException {
+		ByteBuffer chunk = ByteBuffer.allocateDirect(READ_CHUNK_SIZE);
+		while (channel.read(chunk) != -1) {
+			chunk.flip();
+			addBuffer(chunk);
+			chunk.clear();
+		}
+		return self();
+	}
+	
+	/**
+	 * Add the content of a file. The file is memory-mapped in large 
+	 * windows, so it is never copied to the heap.
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public H addFile(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ)) {
+			return addFile(channel, 0, channel.size());
+		}
+	}
+	
+	/**
+	 * Add a region of a file. The region is memory-mapped in large 
+	 * windows, so it is never copied to the heap. The position of the 
+	 * channel is not changed.<br>
+	 * Note: Java cannot unmap a buffer explicitly, so the windows are 
+	 * released when they are garbage collected.
+	 * @param channel
+	 * @param position the start of the region
+	 * @param size the size of the region in bytes
+	 * @return
+	 * @throws IOException
+	 */
+	public H addFile(FileChannel channel, long position, long size)
+			throws IOException {
+		long end = position + size;
+		for (long pos = position; pos < end; pos += MAP_WINDOW_SIZE) {
+			addBuffer(channel.map(MapMode.READ_ONLY, pos,
+					Math.min(MAP_WINDOW_SIZE, end - pos)));
+		}
+		return self();
+	}
+	
+	/**
+	 * Add the lowest n bytes of bits in little-endian order
+	 * @param bits
+	 * @param n 1, 2, 4 or 8
+	 * @return
+	 */
+	protected H addBits(long bits, int n) {
+		length += n;
+		if (buffer.remaining() >= n) {
+			switch (n) {
+			case 8:
+				buffer.putLong(bits);
+				break;
+			case 4:
+				buffer.putInt((int) bits);
+				break;
+			case 2:
+				buffer.putShort((short) bits);
+				break;
+			default:
+				buffer.put((byte) bits);
+				break;
+			}
+			flushIfFull();
+		} else {
+			// The value crosses the block boundary
+			for (int i = 0; i < n; i++) {
+				buffer.put((byte) (bits >>> (i * 8)));
+				flushIfFull();
+			}
+		}
+		return self();
+	}
+	
+	protected void flushIfFull() {
+		if (!buffer.hasRemaining()) {
+			processBlock(buffer, 0);
+			buffer.clear();
+		}
+	}
+
+}
@@ -0,0 +1,263 @@
+package io.ologn.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel tree hashing of very large arrays, buffers and files based on 
+ * {@link XxHash64}.<br>
+ * The input is split into chunks of {@link #CHUNK_SIZE} bytes. Each chunk 
+ * is hashed with XxHash64, and the result is the XxHash64 of all the chunk 
+ * hashes in order, followed by the total length in bytes. An input that 
+ * fits in one chunk is hashed directly, so the result is the same as 
+ * {@link XxHash64#hash(byte[])}.<br>
+ * Chunks are hashed in parallel with a ForkJoinPool (the common pool 
+ * unless one is specified), but the result only depends on the input, not 
+ * on the number of threads. Inputs with few chunks are hashed sequentially.
+ * <br>
+ * Like {@link StreamingHash}, arrays are treated as little-endian bytes, so 
+ * for example hashing a long[] gives the same result as hashing a file 
+ * containing its little-endian bytes.
+ * @author lisq199
+ */
+public class TreeHash {
+	
+	/**
+	 * The chunk size in bytes
+	 */
+	public static final int CHUNK_SIZE = 1 << 20;
+	
+	/**
+	 * Inputs with no more chunks than this are hashed sequentially
+	 */
+	protected static final int SEQUENTIAL_THRESHOLD = 4;
+	
+	/**
+	 * The number of chunks mapped at once when hashing a file
+	 */
+	protected static final int CHUNKS_PER_WINDOW = 256;
+	
+	/**
+	 * Hashes one chunk of the input
+	 */
+	@FunctionalInterface
+	protected interface ChunkHasher {
+		long hash(int chunk);
+	}
+	
+	/**
+	 * Hashes the chunks in [from, to), splitting the range until only 
+	 * one chunk is left.
+	 */
+	protected static class ChunkTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		protected final long[] digests;
+		protected final int offset;
+		protected final ChunkHasher hasher;
+		protected final int from;
+		protected final int to;
+		
+		protected ChunkTask(long[] digests, int offset, ChunkHasher hasher,
+				int from, int to) {
+			this.digests = digests;
+			this.offset = offset;
+			this.hasher = hasher;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				digests[offset + from] = hasher.hash(from);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new ChunkTask(digests, offset, hasher, from, mid),
+					new ChunkTask(digests, offset, hasher, mid, to));
+		}
+		
+	}
+	
+	public static long hash(byte[] f) {
+		return hash(f, ForkJoinPool.commonPool());
+	}
+	
+	public static long hash(byte[] f, ForkJoinPool pool) {
+		return hash(f.length, pool, chunk -> {
+			int from = chunk * CHUNK_SIZE;
+			return XxHash64.init().addArray(f, from,
+					Math.min(CHUNK_SIZE, f.length - from)).get();
+		});
+	}
+	
+	public static long hash(int[] f) {
+		return hash(f, ForkJoinPool.commonPool());
+	}
+	
+	public static long hash(int[] f, ForkJoinPool pool) {
+		final int perChunk = CHUNK_SIZE / Integer.BYTES;
+		return hash((long) f.length * Integer.BYTES, pool, chunk -> {
+			XxHash64 h = XxHash64.init();
+			int from = chunk * perChunk;
+			int to = from + Math.min(perChunk, f.length - from);
+			int i = from;
+			for (; i + 2 <= to; i += 2) {
+				h.addLong((f[i] & 0xFFFFFFFFL) | (long) f[i + 1] << 32);
+			}
+			if (i < to) {
+				h.addInt(f[i]);
+			}
+			return h.get();
+		});
+	}
+	
+	public static long hash(long[] f) {
+		return hash(f, ForkJoinPool.commonPool());
+	}
+	
+	public static long hash(long[] f, ForkJoinPool pool) {
+		final int perChunk = CHUNK_SIZE / Long.BYTES;
+		return hash((long) f.length * Long.BYTES, pool, chunk -> {
+			XxHash64 h = XxHash64.init();
+			int from = chunk * perChunk;
+			int to = from + Math.min(perChunk, f.length - from);
+			for (int i = from; i < to; i++) {
+				h.addLong(f[i]);
+			}
+			return h.get();
+		});
+	}
+	
+	public static long hash(double[] f) {
+		return hash(f, ForkJoinPool.commonPool());
+	}
+	
+	public static long hash(double[] f, ForkJoinPool pool) {
+		final int perChunk = CHUNK_SIZE / Double.BYTES;
+		return hash((long) f.length * Double.BYTES, pool, chunk -> {
+			XxHash64 h = XxHash64.init();
+			int from = chunk * perChunk;
+			int to = from + Math.min(perChunk, f.length - from);
+			for (int i = from; i < to; i++) {
+				h.addDouble(f[i]);
+			}
+			return h.get();
+		});
+	}
+	
+	/**
+	 * Hash the remaining bytes of a ByteBuffer, such as a mapped buffer. 
+	 * Unlike {@link XxHash64#hash(ByteBuffer)}, the position of the buffer 
+	 * is not changed.
+	 * @param f
+	 * @return
+	 */
+	public static long hash(ByteBuffer f) {
+		return hash(f, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Hash the remaining bytes of a ByteBuffer, such as a mapped buffer. 
+	 * Unlike {@link XxHash64#hash(ByteBuffer)}, the position of the buffer 
+	 * is not changed.
+	 * @param f
+	 * @param pool
+	 * @return
+	 */
+	public static long hash(ByteBuffer f, ForkJoinPool pool) {
+		return hash(f.remaining(), pool, chunk -> hashChunk(f, chunk));
+	}
+	
+	/**
+	 * Hash the content of a file. The file is memory-mapped in windows of 
+	 * {@link #CHUNK_SIZE} * 256 bytes, and the chunks of each window are 
+	 * hashed in parallel.
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static long hash(Path path) throws IOException {
+		return hash(path, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Hash the content of a file. The file is memory-mapped in windows of 
+	 * {@link #CHUNK_SIZE} * 256 bytes, and the chunks of each window are 
+	 * hashed in parallel.
+	 * @param path
+	 * @param pool
+	 * @return
+	 * @throws IOException
+	 */
+	public static long hash(Path path, ForkJoinPool pool)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size <= CHUNK_SIZE) {
+				return XxHash64.init().addFile(channel, 0, size).get();
+			}
+			long windowSize = (long) CHUNK_SIZE * CHUNKS_PER_WINDOW;
+			long[] digests = new long[chunkCount(size)];
+			for (long pos = 0; pos < size; pos += windowSize) {
+				ByteBuffer window = channel.map(MapMode.READ_ONLY, pos,
+						Math.min(windowSize, size - pos));
+				hashChunks(digests, (int) (pos / CHUNK_SIZE),
+						chunkCount(window.remaining()),
+						chunk -> hashChunk(window, chunk), pool);
+			}
+			return combine(digests, size);
+		}
+	}
+	
+	/**
+	 * Hash the nth chunk of the remaining bytes of a buffer
+	 */
+	protected static long hashChunk(ByteBuffer f, int chunk) {
+		ByteBuffer b = f.duplicate();
+		int from = b.position() + chunk * CHUNK_SIZE;
+		b.position(from);
+		// from + CHUNK_SIZE can overflow near Integer.MAX_VALUE
+		b.limit(from + Math.min(CHUNK_SIZE, b.limit() - from));
+		return XxHash64.init().addBuffer(b).get();
+	}
+	
+	protected static long hash(long length, ForkJoinPool pool,
+			ChunkHasher hasher) {
+		if (length <= CHUNK_SIZE) {
+			return hasher.hash(0);
+		}
+		long[] digests = new long[chunkCount(length)];
+		hashChunks(digests, 0, digests.length, hasher, pool);
+		return combine(digests, length);
+	}
+	
+	protected static void hashChunks(long[] digests, int offset, int chunks,
+			ChunkHasher hasher, ForkJoinPool pool) {
+		if (chunks <= SEQUENTIAL_THRESHOLD) {
+			for (int i = 0; i < chunks; i++) {
+				digests[offset + i] = hasher.hash(i);
+			}
+		} else {
+			pool.invoke(new ChunkTask(digests, offset, hasher, 0, chunks));
+		}
+	}
+	
+	protected static long combine(long[] digests, long length) {
+		return XxHash64.init().addArray(digests).addLong(length).get();
+	}
+	
+	protected static int chunkCount(long length) {
+		return (int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+	}
+
+}
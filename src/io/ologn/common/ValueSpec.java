@@ -0,0 +1,437 @@
+package io.ologn.common;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A declarative specification of the fields that make up the value of a 
+ * class, from which equals, hashCode and toString are generated.<br>
+ * The fields (or no-arg getters) are resolved once, and compiled with 
+ * MethodHandles into a single specialized handle for each of equals and 
+ * hashCode, so there is no boxing and no lambda dispatch per field.<br>
+ * The hash codes are the same as adding every field in order to 
+ * {@link OlognHashCode#init()}. Floats and doubles are compared by their 
+ * bits like {@link Double#equals(Object)}, and arrays are compared and 
+ * hashed by content.<br>
+ * The JIT only inlines a method handle that it can see as a constant, 
+ * such as one read from a static final field. The handles of a spec are 
+ * in instance fields, so {@link #hashCode(Object)} and 
+ * {@link #equals(Object, Object)} call them without inlining, which is 
+ * several times slower than hand-written code. Keeping the handles in 
+ * static final fields of the class and calling them with 
+ * {@link #invokeHashCode(MethodHandle, Object)} and 
+ * {@link #invokeEquals(MethodHandle, Object, Object)} lets the JIT inline 
+ * them. With that, hashCode is as fast as hand-written code, but equals 
+ * is still about 2 times slower for primitive fields and 10% slower for 
+ * objects and arrays (see ValueSpecBenchmark). Prefer hand-written 
+ * equals for classes where it is hot.<br>
+ * Typical usage:<br>
+ * {@code private static final ValueSpec<Foo> SPEC = 
+ * ValueSpec.of(Foo.class, "a", "getB");}<br>
+ * {@code private static final MethodHandle HASH_CODE = 
+ * SPEC.getHashCodeHandle();}<br>
+ * {@code private static final MethodHandle EQUALS = 
+ * SPEC.getEqualsHandle();}<br>
+ * {@code public int hashCode() { return ValueSpec.invokeHashCode(HASH_CODE, this); }}<br>
+ * {@code public boolean equals(Object obj) { return ValueSpec.invokeEquals(EQUALS, this, obj); }}<br>
+ * {@code public String toString() { return SPEC.toString(this); }}
+ * @author lisq199
+ *
+ * @param <T>
+ */
+public class ValueSpec<T> {
+	
+	protected static final MethodHandles.Lookup LOOKUP =
+			MethodHandles.lookup();
+	
+	protected static final MethodHandle COMBINE = findStatic(
+			OlognHashCode.class, "combine",
+			MethodType.methodType(int.class, int.class, int.class));
+	
+	/**
+	 * Specs of all the instance fields of a class, created on demand.
+	 */
+	protected static final ClassValue<ValueSpec<?>> ALL_FIELDS =
+			new ClassValue<ValueSpec<?>>() {
+		@Override
+		protected ValueSpec<?> computeValue(Class<?> type) {
+			return new ValueSpec<>(type, instanceFields(type));
+		}
+	};
+	
+	protected final Class<T> type;
+	protected final String[] names;
+	
+	/**
+	 * (Object)Object getters, used by toString
+	 */
+	protected final MethodHandle[] getters;
+	
+	/**
+	 * (Object)int
+	 */
+	protected final MethodHandle hashCode;
+	
+	/**
+	 * (Object, Object)boolean
+	 */
+	protected final MethodHandle equals;
+	
+	protected ValueSpec(Class<T> type, AccessibleObject[] members) {
+		this.type = type;
+		this.names = new String[members.length];
+		this.getters = new MethodHandle[members.length];
+		// The handles take the type itself, and are cast from Object only
+		// once at the end, instead of once per field
+		MethodHandle hash = MethodHandles.dropArguments(
+				MethodHandles.constant(int.class,
+						OlognHashCode.DEFAULT_START), 0, type);
+		MethodHandle[] fieldEquals = new MethodHandle[members.length];
+		for (int i = 0; i < members.length; i++) {
+			MethodHandle getter = unreflect(members[i]);
+			Class<?> fieldType = getter.type().returnType();
+			getter = getter.asType(
+					MethodType.methodType(fieldType, type));
+			names[i] = members[i] instanceof Field
+					? ((Field) members[i]).getName()
+					: ((Method) members[i]).getName();
+			getters[i] = getter.asType(
+					MethodType.methodType(Object.class, Object.class));
+			// hash = combine(hash(obj), fieldHash(getter(obj)))
+			MethodHandle fieldHash = MethodHandles.filterReturnValue(
+					getter, hasher(fieldType));
+			hash = MethodHandles.permuteArguments(
+					MethodHandles.filterArguments(COMBINE, 0, hash,
+							fieldHash),
+					MethodType.methodType(int.class, type), 0, 0);
+			fieldEquals[i] = MethodHandles.filterArguments(
+					comparator(fieldType), 0, getter, getter);
+		}
+		MethodHandle eq = MethodHandles.dropArguments(
+				MethodHandles.constant(boolean.class, true), 0, type, type);
+		MethodHandle notEq = MethodHandles.dropArguments(
+				MethodHandles.constant(boolean.class, false), 0, type,
+				type);
+		for (int i = members.length - 1; i >= 0; i--) {
+			eq = MethodHandles.guardWithTest(fieldEquals[i], eq, notEq);
+		}
+		this.hashCode = hash.asType(
+				MethodType.methodType(int.class, Object.class));
+		this.equals = eq.asType(MethodType.methodType(boolean.class,
+				Object.class, Object.class));
+	}
+	
+	/**
+	 * Get the names of the fields and getters in this spec
+	 * @return
+	 */
+	public String[] getNames() {
+		return names.clone();
+	}
+	
+	/**
+	 * Get the (Object)int hashCode handle, to be stored in a static final 
+	 * field and called with {@link #invokeHashCode(MethodHandle, Object)}
+	 * @return
+	 */
+	public MethodHandle getHashCodeHandle() {
+		return hashCode;
+	}
+	
+	/**
+	 * Get the (Object, Object)boolean handle that compares the fields, to 
+	 * be stored in a static final field and called with 
+	 * {@link #invokeEquals(MethodHandle, Object, Object)}
+	 * @return
+	 */
+	public MethodHandle getEqualsHandle() {
+		return equals;
+	}
+	
+	/**
+	 * Generated hashCode. The handle is not inlined, see the class 
+	 * documentation.
+	 * @param t
+	 * @return
+	 */
+	public int hashCode(T t) {
+		return invokeHashCode(hashCode, t);
+	}
+	
+	/**
+	 * Generated equals. Same contract as 
+	 * {@link OlognHashCode#equals(Object, Object, java.util.function.BiFunction)}. 
+	 * The handle is not inlined, see the class documentation.
+	 * @param t the original object. Most of the time, it will be "this".
+	 * @param obj the object that will be compared against
+	 * @return
+	 */
+	public boolean equals(T t, Object obj) {
+		return invokeEquals(equals, t, obj);
+	}
+	
+	/**
+	 * Generated toString in the form of {@code Foo[a: 1, b: [2, 3]]}
+	 * @param t
+	 * @return
+	 */
+	public String toString(T t) {
+		StringBuilder builder = new StringBuilder(type.getSimpleName())
+				.append('[');
+		try {
+			for (int i = 0; i < getters.length; i++) {
+				if (i > 0) {
+					builder.append(", ");
+				}
+				Object value = (Object) getters[i].invokeExact((Object) t);
+				builder.append(names[i]).append(": ")
+						.append(valueToString(value));
+			}
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+		return builder.append(']').toString();
+	}
+	
+	@Override
+	public String toString() {
+		return "ValueSpec[" + type.getName() + ": "
+				+ Arrays.toString(names) + "]";
+	}
+	
+	/**
+	 * Create a spec from the names of fields or no-arg getters of a 
+	 * class or its superclasses. Fields and getters can be of any 
+	 * visibility. Store the result in a static final field so it is only 
+	 * compiled once.
+	 * @param type
+	 * @param names the names of fields or no-arg methods, in the order
+	 * they are hashed and compared
+	 * @return
+	 */
+	public static <T> ValueSpec<T> of(Class<T> type, String... names) {
+		AccessibleObject[] members = new AccessibleObject[names.length];
+		for (int i = 0; i < names.length; i++) {
+			members[i] = findMember(type, names[i]);
+		}
+		return new ValueSpec<>(type, members);
+	}
+	
+	/**
+	 * Get the spec of all non-static, non-transient fields of a class 
+	 * and its superclasses, superclass fields first. The spec is 
+	 * compiled once per class and cached.
+	 * @param type
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ValueSpec<T> forClass(Class<T> type) {
+		return (ValueSpec<T>) ALL_FIELDS.get(type);
+	}
+	
+	/**
+	 * Call a hashCode handle of a spec. The handle is inlined when it is 
+	 * read from a static final field.
+	 * @param hashCode from {@link #getHashCodeHandle()}
+	 * @param t
+	 * @return
+	 */
+	public static int invokeHashCode(MethodHandle hashCode, Object t) {
+		try {
+			return (int) hashCode.invokeExact(t);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+	
+	/**
+	 * Call an equals handle of a spec, with the same contract as 
+	 * {@link OlognHashCode#equals(Object, Object, java.util.function.BiFunction)}. 
+	 * The handle is inlined when it is read from a static final field.
+	 * @param equals from {@link #getEqualsHandle()}
+	 * @param t the original object. Most of the time, it will be "this".
+	 * @param obj the object that will be compared against
+	 * @return
+	 */
+	public static boolean invokeEquals(MethodHandle equals, Object t,
+			Object obj) {
+		if (t == obj) {
+			return true;
+		}
+		if (obj == null || !t.getClass().isAssignableFrom(obj.getClass())) {
+			return false;
+		}
+		try {
+			return (boolean) equals.invokeExact(t, obj);
+		} catch (Throwable e) {
+			throw rethrow(e);
+		}
+	}
+	
+	protected static AccessibleObject findMember(Class<?> type,
+			String name) {
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			for (Method m : c.getDeclaredMethods()) {
+				if (m.getName().equals(name) && m.getParameterCount() == 0
+						&& m.getReturnType() != void.class
+						&& !Modifier.isStatic(m.getModifiers())) {
+					return m;
+				}
+			}
+			for (Field f : c.getDeclaredFields()) {
+				if (f.getName().equals(name)
+						&& !Modifier.isStatic(f.getModifiers())) {
+					return f;
+				}
+			}
+		}
+		throw new IllegalArgumentException("no field or getter named "
+				+ name + " in " + type.getName());
+	}
+	
+	protected static AccessibleObject[] instanceFields(Class<?> type) {
+		List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+		for (Class<?> c = type; c != null && c != Object.class;
+				c = c.getSuperclass()) {
+			hierarchy.add(0, c);
+		}
+		List<AccessibleObject> fields = new ArrayList<AccessibleObject>();
+		for (Class<?> c : hierarchy) {
+			for (Field f : c.getDeclaredFields()) {
+				int mod = f.getModifiers();
+				if (!Modifier.isStatic(mod) && !Modifier.isTransient(mod)
+						&& !f.isSynthetic()) {
+					fields.add(f);
+				}
+			}
+		}
+		return fields.toArray(new AccessibleObject[0]);
+	}
+	
+	protected static MethodHandle unreflect(AccessibleObject member) {
+		try {
+			member.setAccessible(true);
+			return member instanceof Field
+					? LOOKUP.unreflectGetter((Field) member)
+					: LOOKUP.unreflect((Method) member);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+	
+	/**
+	 * (fieldType)int, the same hash the OlognHashCode builder would add
+	 */
+	protected static MethodHandle hasher(Class<?> fieldType) {
+		if (fieldType == int.class || fieldType == short.class
+				|| fieldType == char.class || fieldType == byte.class) {
+			return findStatic(OlognHashCode.class, "hashOf",
+					MethodType.methodType(int.class, int.class))
+					.asType(MethodType.methodType(int.class, fieldType));
+		}
+		if (fieldType.isPrimitive()) {
+			return findStatic(OlognHashCode.class, "hashOf",
+					MethodType.methodType(int.class, fieldType));
+		}
+		if (fieldType.isArray()) {
+			return arrayMethod("hashCode", int.class, fieldType, 1);
+		}
+		return findStatic(OlognHashCode.class, "hashOf",
+				MethodType.methodType(int.class, Object.class))
+				.asType(MethodType.methodType(int.class, fieldType));
+	}
+	
+	/**
+	 * (fieldType, fieldType)boolean
+	 */
+	protected static MethodHandle comparator(Class<?> fieldType) {
+		MethodHandle mh;
+		if (fieldType == short.class || fieldType == char.class
+				|| fieldType == byte.class) {
+			mh = findStatic(ValueSpec.class, "eq", MethodType.methodType(
+					boolean.class, int.class, int.class));
+		} else if (fieldType.isPrimitive()) {
+			mh = findStatic(ValueSpec.class, "eq", MethodType.methodType(
+					boolean.class, fieldType, fieldType));
+		} else if (fieldType.isArray()) {
+			mh = arrayMethod("equals", boolean.class, fieldType, 2);
+		} else {
+			mh = findStatic(Objects.class, "equals", MethodType.methodType(
+					boolean.class, Object.class, Object.class));
+		}
+		return mh.asType(MethodType.methodType(boolean.class, fieldType,
+				fieldType));
+	}
+	
+	/**
+	 * Find the matching java.util.Arrays method for an array type
+	 */
+	protected static MethodHandle arrayMethod(String name,
+			Class<?> returnType, Class<?> arrayType, int arity) {
+		Class<?> paramType = arrayType.getComponentType().isPrimitive()
+				? arrayType : Object[].class;
+		Class<?>[] params = new Class<?>[arity];
+		Arrays.fill(params, paramType);
+		MethodHandle mh = findStatic(Arrays.class, name,
+				MethodType.methodType(returnType, params));
+		Arrays.fill(params, arrayType);
+		return mh.asType(MethodType.methodType(returnType, params));
+	}
+	
+	protected static MethodHandle findStatic(Class<?> c, String name,
+			MethodType type) {
+		try {
+			return LOOKUP.findStatic(c, name, type);
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	protected static RuntimeException rethrow(Throwable e) {
+		if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		}
+		if (e instanceof Error) {
+			throw (Error) e;
+		}
+		throw new IllegalStateException(e);
+	}
+	
+	protected static String valueToString(Object value) {
+		if (value != null && value.getClass().isArray()) {
+			String s = Arrays.deepToString(new Object[] {value});
+			return s.substring(1, s.length() - 1);
+		}
+		return String.valueOf(value);
+	}
+	
+	private static boolean eq(boolean a, boolean b) {
+		return a == b;
+	}
+	
+	private static boolean eq(int a, int b) {
+		return a == b;
+	}
+	
+	private static boolean eq(long a, long b) {
+		return a == b;
+	}
+	
+	private static boolean eq(float a, float b) {
+		return Float.floatToIntBits(a) == Float.floatToIntBits(b);
+	}
+	
+	private static boolean eq(double a, double b) {
+		return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+	}
+
+}
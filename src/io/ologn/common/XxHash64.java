@@ -0,0 +1,199 @@
+package io.ologn.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * 64-bit xxHash (XXH64). Much better distributed than 
+ * {@link OlognHashCode}, and suitable for sharding and for keys with 
+ * sequential patterns.<br>
+ * Source of algorithm: <a href="https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md">link</a>
+ * <br>
+ * Typical usage: {@code XxHash64.init().addInt(a).addArray(b).get();}
+ * <br>
+ * The static hash methods are shortcuts for hashing a single value.
+ * @author lisq199
+ */
+public class XxHash64 extends StreamingHash<XxHash64> {
+	
+	protected static final long P1 = 0x9E3779B185EBCA87L;
+	protected static final long P2 = 0xC2B2AE3D27D4EB4FL;
+	protected static final long P3 = 0x165667B19E3779F9L;
+	protected static final long P4 = 0x85EBCA77C2B2AE63L;
+	protected static final long P5 = 0x27D4EB2F165667C5L;
+	
+	protected final long seed;
+	protected long v1;
+	protected long v2;
+	protected long v3;
+	protected long v4;
+	
+	protected XxHash64(long seed) {
+		super(32);
+		this.seed = seed;
+		this.v1 = seed + P1 + P2;
+		this.v2 = seed + P2;
+		this.v3 = seed;
+		this.v4 = seed - P1;
+	}
+	
+	@Override
+	protected void processBlock(ByteBuffer b, int index) {
+		v1 = round(v1, b.getLong(index));
+		v2 = round(v2, b.getLong(index + 8));
+		v3 = round(v3, b.getLong(index + 16));
+		v4 = round(v4, b.getLong(index + 24));
+	}
+	
+	/**
+	 * Get the final result
+	 * @return
+	 */
+	public long get() {
+		long h;
+		if (length >= 32) {
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+					+ Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = mergeRound(h, v1);
+			h = mergeRound(h, v2);
+			h = mergeRound(h, v3);
+			h = mergeRound(h, v4);
+		} else {
+			h = seed + P5;
+		}
+		h += length;
+		int n = buffer.position();
+		int i = 0;
+		for (; i + 8 <= n; i += 8) {
+			h ^= round(0, buffer.getLong(i));
+			h = Long.rotateLeft(h, 27) * P1 + P4;
+		}
+		if (i + 4 <= n) {
+			h ^= (buffer.getInt(i) & 0xFFFFFFFFL) * P1;
+			h = Long.rotateLeft(h, 23) * P2 + P3;
+			i += 4;
+		}
+		for (; i < n; i++) {
+			h ^= (buffer.get(i) & 0xFFL) * P5;
+			h = Long.rotateLeft(h, 11) * P1;
+		}
+		return avalanche(h);
+	}
+	
+	@Override
+	public String toString() {
+		return "XxHash64[seed: " + seed + ", length: " + length + "]";
+	}
+	
+	protected static long round(long acc, long input) {
+		acc += input * P2;
+		acc = Long.rotateLeft(acc, 31);
+		return acc * P1;
+	}
+	
+	protected static long mergeRound(long acc, long val) {
+		acc ^= round(0, val);
+		return acc * P1 + P4;
+	}
+	
+	protected static long avalanche(long h) {
+		h ^= h >>> 33;
+		h *= P2;
+		h ^= h >>> 29;
+		h *= P3;
+		h ^= h >>> 32;
+		return h;
+	}
+	
+	/**
+	 * Initialize with seed 0
+	 * @return
+	 */
+	public static XxHash64 init() {
+		return init(0);
+	}
+	
+	/**
+	 * Initialize with a specified seed
+	 * @param seed
+	 * @return
+	 */
+	public static XxHash64 init(long seed) {
+		return new XxHash64(seed);
+	}
+	
+	/**
+	 * Same as {@code init(seed).addLong(f).get()}, without allocation.
+	 * @param f
+	 * @param seed
+	 * @return
+	 */
+	public static long hashLong(long f, long seed) {
+		long h = seed + P5 + 8;
+		h ^= round(0, f);
+		h = Long.rotateLeft(h, 27) * P1 + P4;
+		return avalanche(h);
+	}
+	
+	/**
+	 * Same as {@code init().addLong(f).get()}, without allocation.
+	 * @param f
+	 * @return
+	 */
+	public static long hashLong(long f) {
+		return hashLong(f, 0);
+	}
+	
+	public static long hash(byte[] f) {
+		return init().addArray(f).get();
+	}
+	
+	public static long hash(char[] f) {
+		return init().addArray(f).get();
+	}
+	
+	public static long hash(int[] f) {
+		return init().addArray(f).get();
+	}
+	
+	public static long hash(long[] f) {
+		return init().addArray(f).get();
+	}
+	
+	public static long hash(CharSequence f) {
+		return init().addChars(f).get();
+	}
+	
+	/**
+	 * Hash the remaining bytes of a ByteBuffer. The position of the 
+	 * buffer is moved to its limit.
+	 * @param f
+	 * @return
+	 */
+	public static long hash(ByteBuffer f) {
+		return init().addBuffer(f).get();
+	}
+	
+	/**
+	 * Hash everything from an InputStream. The stream is not closed.
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static long hash(InputStream in) throws IOException {
+		return init().addStream(in).get();
+	}
+	
+	/**
+	 * Hash the content of a file through memory mapping
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static long hash(Path path) throws IOException {
+		return init().addFile(path).get();
+	}
+
+}
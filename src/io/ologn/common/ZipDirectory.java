@@ -0,0 +1,464 @@
+package io.ologn.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * A reader for the central directory of a ZIP or JAR file. Only the 
+ * central directory is memory mapped and parsed in place: the only heap 
+ * used per entry is the offset of its record, and entry names are 
+ * exposed as views of the mapped bytes, so scanning the names of a huge 
+ * JAR does not create a String or an entry object for every entry.<br>
+ * Entry data is read with positional reads from the file and inflated 
+ * with {@link Inflater}. Only stored and deflated entries are supported. 
+ * ZIP64 files are supported as long as the central directory itself is 
+ * smaller than 2GB. Data before the archive, such as the launcher script 
+ * of an executable JAR, is skipped the same way as java.util.zip does: 
+ * the offsets in the file are shifted by the difference between where 
+ * the central directory is and where the end record says it is.<br>
+ * Reading is thread-safe.
+ * @author lisq199
+ */
+public class ZipDirectory implements Closeable {
+	
+	protected static final int EOCD_SIGNATURE = 0x06054b50;
+	protected static final int EOCD_SIZE = 22;
+	protected static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	protected static final int ZIP64_LOCATOR_SIZE = 20;
+	protected static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+	protected static final int ZIP64_EOCD_SIZE = 56;
+	protected static final int CEN_SIGNATURE = 0x02014b50;
+	protected static final int CEN_SIZE = 46;
+	protected static final int LOC_SIGNATURE = 0x04034b50;
+	protected static final int LOC_SIZE = 30;
+	protected static final int ZIP64_EXTRA_ID = 0x0001;
+	protected static final int MAX_COMMENT_SIZE = 0xFFFF;
+	
+	protected static final int STORED = 0;
+	protected static final int DEFLATED = 8;
+	
+	protected final FileChannel channel;
+	
+	/**
+	 * The mapped central directory, little-endian
+	 */
+	protected final ByteBuffer directory;
+	
+	/**
+	 * The offset of the record of every entry in the central directory
+	 */
+	protected final int[] offsets;
+	
+	/**
+	 * The position of the archive in the file, which is added to the 
+	 * offsets recorded in the archive. Not 0 if there is data before it.
+	 */
+	protected final long base;
+	
+	protected ZipDirectory(FileChannel channel, ByteBuffer directory,
+			int[] offsets, long base) {
+		this.channel = channel;
+		this.directory = directory;
+		this.offsets = offsets;
+		this.base = base;
+	}
+	
+	/**
+	 * Get the number of entries, including directories
+	 * @return
+	 */
+	public int size() {
+		return offsets.length;
+	}
+	
+	/**
+	 * Get a read-only view of the UTF-8 bytes of the name of an entry. 
+	 * Nothing is copied.
+	 * @param i
+	 * @return
+	 */
+	public ByteBuffer getNameBytes(int i) {
+		int start = offsets[i] + CEN_SIZE;
+		ByteBuffer b = directory.duplicate();
+		b.limit(start + getNameLength(i)).position(start);
+		return b.slice().asReadOnlyBuffer();
+	}
+	
+	/**
+	 * Get the name of an entry. Unlike the other name methods, this 
+	 * creates a String.
+	 * @param i
+	 * @return
+	 */
+	public String getName(int i) {
+		byte[] bytes = new byte[getNameLength(i)];
+		ByteBuffer b = directory.duplicate();
+		b.position(offsets[i] + CEN_SIZE);
+		b.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Get the length of the name of an entry in bytes
+	 * @param i
+	 * @return
+	 */
+	public int getNameLength(int i) {
+		return u16(directory, offsets[i] + 28);
+	}
+	
+	/**
+	 * Check if the name of an entry starts with some bytes, without 
+	 * creating a String
+	 * @param i
+	 * @param prefix
+	 * @return
+	 */
+	public boolean nameStartsWith(int i, byte[] prefix) {
+		return getNameLength(i) >= prefix.length
+				&& regionMatches(offsets[i] + CEN_SIZE, prefix);
+	}
+	
+	/**
+	 * Check if the name of an entry ends with some bytes, without 
+	 * creating a String
+	 * @param i
+	 * @param suffix
+	 * @return
+	 */
+	public boolean nameEndsWith(int i, byte[] suffix) {
+		int length = getNameLength(i);
+		return length >= suffix.length && regionMatches(
+				offsets[i] + CEN_SIZE + length - suffix.length, suffix);
+	}
+	
+	/**
+	 * Check if the name of an entry contains a byte
+	 * @param i
+	 * @param b
+	 * @return
+	 */
+	public boolean nameContains(int i, byte b) {
+		int start = offsets[i] + CEN_SIZE;
+		int end = start + getNameLength(i);
+		for (int j = start; j < end; j++) {
+			if (directory.get(j) == b) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public boolean isDirectory(int i) {
+		int length = getNameLength(i);
+		return length > 0
+				&& directory.get(offsets[i] + CEN_SIZE + length - 1) == '/';
+	}
+	
+	/**
+	 * Get the compression method of an entry: 0 for stored, 8 for deflated
+	 * @param i
+	 * @return
+	 */
+	public int getMethod(int i) {
+		return u16(directory, offsets[i] + 10);
+	}
+	
+	public long getCrc(int i) {
+		return u32(directory, offsets[i] + 16);
+	}
+	
+	public long getCompressedSize(int i) throws ZipException {
+		return zip64Field(i, u32(directory, offsets[i] + 20), 1);
+	}
+	
+	public long getSize(int i) throws ZipException {
+		return zip64Field(i, u32(directory, offsets[i] + 24), 0);
+	}
+	
+	/**
+	 * Get the offset of the local header of an entry in the file, 
+	 * including any data before the archive
+	 * @param i
+	 * @return
+	 * @throws ZipException
+	 */
+	public long getLocalHeaderOffset(int i) throws ZipException {
+		return base + zip64Field(i, u32(directory, offsets[i] + 42), 2);
+	}
+	
+	/**
+	 * Find an entry by name. This is a linear search.
+	 * @param name
+	 * @return the index of the entry, or -1 if not found
+	 */
+	public int find(String name) {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		for (int i = 0; i < offsets.length; i++) {
+			if (getNameLength(i) == bytes.length
+					&& regionMatches(offsets[i] + CEN_SIZE, bytes)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Read and uncompress the data of an entry. The CRC is checked.
+	 * @param i
+	 * @return
+	 * @throws IOException
+	 */
+	public byte[] read(int i) throws IOException {
+		long size = getSize(i);
+		long compressedSize = getCompressedSize(i);
+		int method = getMethod(i);
+		if (size > Integer.MAX_VALUE - 8
+				|| compressedSize > Integer.MAX_VALUE - 8) {
+			throw new ZipException("entry too large: " + getName(i));
+		}
+		if (method != STORED && method != DEFLATED) {
+			throw new ZipException("unsupported compression method "
+					+ method + ": " + getName(i));
+		}
+		ByteBuffer local = ByteBuffer.allocate(LOC_SIZE)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		long localOffset = getLocalHeaderOffset(i);
+		readFully(local, localOffset);
+		if (local.getInt(0) != LOC_SIGNATURE) {
+			throw new ZipException("invalid local header: " + getName(i));
+		}
+		long dataOffset = localOffset + LOC_SIZE + u16(local, 26)
+				+ u16(local, 28);
+		byte[] data = new byte[(int) size];
+		if (method == STORED) {
+			readFully(ByteBuffer.wrap(data), dataOffset);
+		} else {
+			// nowrap mode may need an extra dummy byte after the data
+			byte[] compressed = new byte[(int) compressedSize + 1];
+			readFully(ByteBuffer.wrap(compressed, 0, (int) compressedSize),
+					dataOffset);
+			Inflater inflater = new Inflater(true);
+			try {
+				inflater.setInput(compressed);
+				int n = 0;
+				while (n < data.length) {
+					int k = inflater.inflate(data, n, data.length - n);
+					if (k == 0 && (inflater.finished()
+							|| inflater.needsInput()
+							|| inflater.needsDictionary())) {
+						break;
+					}
+					n += k;
+				}
+				if (n != data.length) {
+					throw new ZipException("truncated entry: " + getName(i));
+				}
+			} catch (DataFormatException e) {
+				throw new ZipException("invalid deflated data: "
+						+ getName(i) + ": " + e.getMessage());
+			} finally {
+				inflater.end();
+			}
+		}
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		if (crc.getValue() != getCrc(i)) {
+			throw new ZipException("CRC mismatch: " + getName(i));
+		}
+		return data;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	protected boolean regionMatches(int start, byte[] bytes) {
+		for (int j = 0; j < bytes.length; j++) {
+			if (directory.get(start + j) != bytes[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Get a field that may be stored in the ZIP64 extra field. The fields 
+	 * present in the extra field are the ones that are 0xFFFFFFFF in the 
+	 * record, in the order size, compressed size, local header offset.
+	 * @param i
+	 * @param value the value in the record
+	 * @param field 0 for size, 1 for compressed size, 2 for offset
+	 * @return
+	 * @throws ZipException if the ZIP64 extra field is missing
+	 */
+	protected long zip64Field(int i, long value, int field)
+			throws ZipException {
+		if (value != 0xFFFFFFFFL) {
+			return value;
+		}
+		int record = offsets[i];
+		int skip = 0;
+		if (field > 0 && u32(directory, record + 24) == 0xFFFFFFFFL) {
+			skip++;
+		}
+		if (field > 1 && u32(directory, record + 20) == 0xFFFFFFFFL) {
+			skip++;
+		}
+		int p = record + CEN_SIZE + getNameLength(i);
+		int end = p + u16(directory, record + 30);
+		while (p + 4 <= end) {
+			int id = u16(directory, p);
+			int length = u16(directory, p + 2);
+			if (id == ZIP64_EXTRA_ID && 4 + (skip + 1) * 8 <= length) {
+				return directory.getLong(p + 4 + skip * 8);
+			}
+			p += 4 + length;
+		}
+		throw new ZipException("missing ZIP64 field: "
+				+ getName(i));
+	}
+	
+	protected void readFully(ByteBuffer b, long position)
+			throws IOException {
+		while (b.hasRemaining()) {
+			if (channel.read(b, position + b.position()) < 0) {
+				throw new ZipException("unexpected end of file");
+			}
+		}
+	}
+	
+	/**
+	 * Open a ZIP or JAR file and map its central directory
+	 * @param path
+	 * @return
+	 * @throws IOException if the file is not a valid ZIP file
+	 */
+	public static ZipDirectory open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.READ);
+		try {
+			return open(channel, path);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	protected static ZipDirectory open(FileChannel channel, Path path)
+			throws IOException {
+		long fileSize = channel.size();
+		int tailSize = (int) Math.min(fileSize,
+				EOCD_SIZE + MAX_COMMENT_SIZE + ZIP64_LOCATOR_SIZE);
+		ByteBuffer tail = ByteBuffer.allocate(tailSize)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		long tailStart = fileSize - tailSize;
+		while (tail.hasRemaining()) {
+			if (channel.read(tail, tailStart + tail.position()) < 0) {
+				break;
+			}
+		}
+		// The last end record whose comment fits, as there may be 
+		// padding or other data after the comment
+		int eocd = -1;
+		for (int p = tailSize - EOCD_SIZE; p >= 0; p--) {
+			if (tail.getInt(p) == EOCD_SIGNATURE
+					&& p + EOCD_SIZE + u16(tail, p + 20) <= tailSize) {
+				eocd = p;
+				break;
+			}
+		}
+		if (eocd < 0) {
+			throw new ZipException("not a ZIP file: " + path);
+		}
+		long count = u16(tail, eocd + 10);
+		long cenSize = u32(tail, eocd + 12);
+		long cenOffset = u32(tail, eocd + 16);
+		// The central directory ends where the end record starts
+		long cenEnd = tailStart + eocd;
+		int locator = eocd - ZIP64_LOCATOR_SIZE;
+		if ((count == 0xFFFF || cenSize == 0xFFFFFFFFL
+				|| cenOffset == 0xFFFFFFFFL) && locator >= 0
+				&& tail.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+			ByteBuffer zip64 = ByteBuffer.allocate(ZIP64_EOCD_SIZE)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			long zip64Position = tail.getLong(locator + 8);
+			if (!readZip64End(channel, zip64, zip64Position)) {
+				// The recorded position does not include the data before 
+				// the archive, but the record is usually right before the 
+				// locator
+				zip64Position = tailStart + locator - ZIP64_EOCD_SIZE;
+				if (!readZip64End(channel, zip64, zip64Position)) {
+					throw new ZipException("invalid ZIP64 end record: "
+							+ path);
+				}
+			}
+			count = zip64.getLong(32);
+			cenSize = zip64.getLong(40);
+			cenOffset = zip64.getLong(48);
+			cenEnd = zip64Position;
+		}
+		long base = cenEnd - cenSize - cenOffset;
+		if (cenSize > Integer.MAX_VALUE || cenOffset < 0 || base < 0
+				|| count > cenSize / CEN_SIZE) {
+			throw new ZipException("invalid central directory: " + path);
+		}
+		ByteBuffer directory = channel.map(MapMode.READ_ONLY,
+				base + cenOffset, cenSize).order(ByteOrder.LITTLE_ENDIAN);
+		int[] offsets = new int[(int) count];
+		int p = 0;
+		for (int i = 0; i < offsets.length; i++) {
+			if (p + CEN_SIZE > cenSize
+					|| directory.getInt(p) != CEN_SIGNATURE) {
+				throw new ZipException("invalid central directory: "
+						+ path);
+			}
+			offsets[i] = p;
+			p += CEN_SIZE + u16(directory, p + 28) + u16(directory, p + 30)
+					+ u16(directory, p + 32);
+		}
+		if (p > cenSize) {
+			throw new ZipException("invalid central directory: " + path);
+		}
+		return new ZipDirectory(channel, directory, offsets, base);
+	}
+	
+	/**
+	 * Read a ZIP64 end record
+	 * @return whether there is a ZIP64 end record at the position
+	 */
+	protected static boolean readZip64End(FileChannel channel,
+			ByteBuffer b, long position) throws IOException {
+		if (position < 0 || position + ZIP64_EOCD_SIZE > channel.size()) {
+			return false;
+		}
+		b.clear();
+		while (b.hasRemaining()) {
+			if (channel.read(b, position + b.position()) < 0) {
+				return false;
+			}
+		}
+		return b.getInt(0) == ZIP64_EOCD_SIGNATURE;
+	}
+	
+	protected static int u16(ByteBuffer b, int index) {
+		return b.getShort(index) & 0xFFFF;
+	}
+	
+	protected static long u32(ByteBuffer b, int index) {
+		return b.getInt(index) & 0xFFFFFFFFL;
+	}
+
+}
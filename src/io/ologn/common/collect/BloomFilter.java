@@ -0,0 +1,346 @@
+package io.ologn.common.collect;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import io.ologn.common.XxHash64;
+
+/**
+ * A Bloom filter, for memory-compact membership pre-checks: 
+ * {@link #mightContain(long)} never returns false for a key that was put, 
+ * and returns true for other keys with a probability of about the false 
+ * positive probability given at creation.<br>
+ * Keys are hashed with {@link XxHash64}, and the bit positions are derived 
+ * from the key hash with double hashing. The bits are stored in a long 
+ * array, and {@link #put(long)} is lock-free, so the filter can be shared 
+ * by multiple threads.<br>
+ * Typical usage: {@code BloomFilter.init(1000000, 0.01).put(key);}
+ * @author lisq199
+ */
+public class BloomFilter {
+	
+	/**
+	 * "OBLF"
+	 */
+	protected static final int MAGIC = 0x4F424C46;
+	protected static final byte TYPE_STANDARD = 0;
+	protected static final byte TYPE_BLOCKED = 1;
+	protected static final int HEADER_SIZE = 13;
+	
+	/**
+	 * More than any filter from {@link #init(long, double)} uses, which 
+	 * is at most -log2(Double.MIN_VALUE) = 1075
+	 */
+	protected static final int MAX_HASHES = 2048;
+	
+	protected final AtomicLongArray bits;
+	protected final long bitCount;
+	protected final int numHashes;
+	
+	protected BloomFilter(int words, int numHashes) {
+		if (words <= 0 || numHashes <= 0) {
+			throw new IllegalArgumentException(
+					"parameters must be positive");
+		}
+		this.bits = new AtomicLongArray(words);
+		this.bitCount = (long) words * Long.SIZE;
+		this.numHashes = numHashes;
+	}
+	
+	/**
+	 * Get the number of bits
+	 * @return
+	 */
+	public long bitCount() {
+		return bitCount;
+	}
+	
+	/**
+	 * Get the number of bits set for each key
+	 * @return
+	 */
+	public int numHashes() {
+		return numHashes;
+	}
+	
+	/**
+	 * Put a key.
+	 * @param key
+	 * @return true if any bit changed, which means the key was definitely 
+	 * not in the filter before.
+	 */
+	public boolean put(long key) {
+		return putHash(XxHash64.hashLong(key));
+	}
+	
+	public boolean put(byte[] key) {
+		return putHash(XxHash64.hash(key));
+	}
+	
+	public boolean put(CharSequence key) {
+		return putHash(XxHash64.hash(key));
+	}
+	
+	/**
+	 * Check if a key might have been put.
+	 * @param key
+	 * @return false if the key was definitely not put
+	 */
+	public boolean mightContain(long key) {
+		return mightContainHash(XxHash64.hashLong(key));
+	}
+	
+	public boolean mightContain(byte[] key) {
+		return mightContainHash(XxHash64.hash(key));
+	}
+	
+	public boolean mightContain(CharSequence key) {
+		return mightContainHash(XxHash64.hash(key));
+	}
+	
+	/**
+	 * Put a key that is already hashed with a good 64-bit hash function, 
+	 * such as {@link XxHash64}.
+	 * @param hash
+	 * @return true if any bit changed
+	 */
+	public boolean putHash(long hash) {
+		long h2 = secondHash(hash);
+		boolean changed = false;
+		for (int i = 0; i < numHashes; i++) {
+			changed |= setBit(((hash + i * h2) & Long.MAX_VALUE) % bitCount);
+		}
+		return changed;
+	}
+	
+	/**
+	 * The counterpart of {@link #putHash(long)}
+	 * @param hash
+	 * @return
+	 */
+	public boolean mightContainHash(long hash) {
+		long h2 = secondHash(hash);
+		for (int i = 0; i < numHashes; i++) {
+			if (!getBit(((hash + i * h2) & Long.MAX_VALUE) % bitCount)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Get the probability of a false positive given the current number 
+	 * of bits set.
+	 * @return
+	 */
+	public double expectedFpp() {
+		long set = 0;
+		for (int i = 0; i < bits.length(); i++) {
+			set += Long.bitCount(bits.get(i));
+		}
+		return Math.pow((double) set / bitCount, numHashes);
+	}
+	
+	/**
+	 * Put all the keys of another filter into this one. The other filter 
+	 * must have been created with the same type and parameters. This 
+	 * method is lock-free as well.
+	 * @param other
+	 * @return this
+	 */
+	public BloomFilter merge(BloomFilter other) {
+		if (other.getClass() != getClass() || other.bitCount != bitCount
+				|| other.numHashes != numHashes) {
+			throw new IllegalArgumentException("incompatible filters");
+		}
+		for (int i = 0; i < bits.length(); i++) {
+			long word = other.bits.get(i);
+			if (word != 0) {
+				bits.accumulateAndGet(i, word, (a, b) -> a | b);
+			}
+		}
+		return this;
+	}
+	
+	/**
+	 * Write the filter to a channel, for example a FileChannel. The 
+	 * channel is not closed. Concurrent puts during the write may or may 
+	 * not be included.
+	 * @param channel
+	 * @throws IOException
+	 */
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		b.putInt(MAGIC).put(getType()).putInt(numHashes)
+				.putInt(bits.length()).flip();
+		writeFully(channel, b);
+		ByteBuffer chunk = ByteBuffer.allocateDirect(1 << 16)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < bits.length(); i++) {
+			chunk.putLong(bits.get(i));
+			if (!chunk.hasRemaining()) {
+				chunk.flip();
+				writeFully(channel, chunk);
+				chunk.clear();
+			}
+		}
+		chunk.flip();
+		writeFully(channel, chunk);
+	}
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[bits: " + bitCount
+				+ ", hashes: " + numHashes + "]";
+	}
+	
+	protected byte getType() {
+		return TYPE_STANDARD;
+	}
+	
+	protected long secondHash(long hash) {
+		return XxHash64.hashLong(hash);
+	}
+	
+	/**
+	 * Set a bit with a CAS loop.
+	 * @param index
+	 * @return true if the bit was not set before
+	 */
+	protected boolean setBit(long index) {
+		int i = (int) (index >>> 6);
+		long mask = 1L << index;
+		long old;
+		do {
+			old = bits.get(i);
+			if ((old & mask) != 0) {
+				return false;
+			}
+		} while (!bits.compareAndSet(i, old, old | mask));
+		return true;
+	}
+	
+	protected boolean getBit(long index) {
+		return (bits.get((int) (index >>> 6)) & (1L << index)) != 0;
+	}
+	
+	/**
+	 * Initialize a filter for an expected number of keys and a false 
+	 * positive probability.
+	 * @param expectedInsertions
+	 * @param fpp the false positive probability, in (0, 1)
+	 * @return
+	 */
+	public static BloomFilter init(long expectedInsertions, double fpp) {
+		long bits = optimalBits(expectedInsertions, fpp);
+		return new BloomFilter(words(bits, 1),
+				optimalHashes(expectedInsertions, bits));
+	}
+	
+	/**
+	 * Read a filter written by {@link #writeTo(WritableByteChannel)}. The 
+	 * type of the filter is restored as well. The header is checked 
+	 * before the bits are allocated, and against the size of the channel 
+	 * if it is a {@link SeekableByteChannel}, such as a FileChannel.
+	 * @param channel
+	 * @return
+	 * @throws IOException if the data is not a valid filter
+	 */
+	public static BloomFilter readFrom(ReadableByteChannel channel)
+			throws IOException {
+		ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, b);
+		b.flip();
+		if (b.getInt() != MAGIC) {
+			throw new IOException("not a BloomFilter");
+		}
+		byte type = b.get();
+		int numHashes = b.getInt();
+		int words = b.getInt();
+		if (type != TYPE_STANDARD && type != TYPE_BLOCKED) {
+			throw new IOException("unknown BloomFilter type " + type);
+		}
+		if (numHashes <= 0 || numHashes > MAX_HASHES) {
+			throw new IOException("invalid number of hashes " + numHashes);
+		}
+		if (words <= 0 || words > Integer.MAX_VALUE - 8
+				|| (type == TYPE_BLOCKED
+						&& words % BlockedBloomFilter.WORDS_PER_BLOCK != 0)) {
+			throw new IOException("invalid number of words " + words);
+		}
+		if (channel instanceof SeekableByteChannel) {
+			SeekableByteChannel seekable = (SeekableByteChannel) channel;
+			if (words * 8L > seekable.size() - seekable.position()) {
+				throw new IOException("truncated BloomFilter: " + words
+						+ " words");
+			}
+		}
+		BloomFilter filter = type == TYPE_STANDARD
+				? new BloomFilter(words, numHashes)
+				: new BlockedBloomFilter(words, numHashes);
+		ByteBuffer chunk = ByteBuffer.allocateDirect(1 << 16)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < words; ) {
+			chunk.clear();
+			chunk.limit((int) Math.min(chunk.capacity(), (words - i) * 8L));
+			readFully(channel, chunk);
+			chunk.flip();
+			while (chunk.hasRemaining()) {
+				filter.bits.set(i++, chunk.getLong());
+			}
+		}
+		return filter;
+	}
+	
+	protected static long optimalBits(long n, double fpp) {
+		if (n <= 0 || fpp <= 0 || fpp >= 1) {
+			throw new IllegalArgumentException("expectedInsertions must be "
+					+ "positive and fpp must be in (0, 1)");
+		}
+		return (long) Math.ceil(-n * Math.log(fpp)
+				/ (Math.log(2) * Math.log(2)));
+	}
+	
+	protected static int optimalHashes(long n, long bits) {
+		return Math.max(1, (int) Math.round((double) bits / n
+				* Math.log(2)));
+	}
+	
+	/**
+	 * The number of words for a number of bits, rounded up to a multiple 
+	 * of wordsPerBlock words
+	 */
+	protected static int words(long bits, int wordsPerBlock) {
+		long blockBits = (long) wordsPerBlock * Long.SIZE;
+		long words = (bits + blockBits - 1) / blockBits * wordsPerBlock;
+		if (words > Integer.MAX_VALUE - wordsPerBlock) {
+			throw new IllegalArgumentException("filter too large");
+		}
+		return (int) words;
+	}
+	
+	protected static void writeFully(WritableByteChannel channel,
+			ByteBuffer b) throws IOException {
+		while (b.hasRemaining()) {
+			channel.write(b);
+		}
+	}
+	
+	protected static void readFully(ReadableByteChannel channel,
+			ByteBuffer b) throws IOException {
+		while (b.hasRemaining()) {
+			if (channel.read(b) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
+}
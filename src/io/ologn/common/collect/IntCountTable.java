@@ -0,0 +1,166 @@
+package io.ologn.common.collect;
+
+/**
+ * An open-addressing hash table that counts occurrences of int keys 
+ * without boxing, for {@link OlognArrays#mode(int[])}. Keys are placed by 
+ * Fibonacci hashing with linear probing, and a count of 0 marks an empty 
+ * slot.
+ * @author lisq199
+ */
+class IntCountTable {
+	
+	protected static final int MIN_CAPACITY = 16;
+	protected static final int MAX_CAPACITY = 1 << 30;
+	
+	protected int[] keys;
+	protected int[] counts;
+	protected int size;
+	protected int shift;
+	protected int maxCount;
+	
+	/**
+	 * @param expectedKeys how many distinct keys are expected, which only 
+	 * affects the initial capacity
+	 */
+	IntCountTable(int expectedKeys) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < MAX_CAPACITY && capacity < expectedKeys * 2L) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+	
+	/**
+	 * Add 1 to the count of a key
+	 * @param key
+	 * @return the new count
+	 */
+	int increment(int key) {
+		return add(key, 1);
+	}
+	
+	/**
+	 * Add to the count of a key
+	 * @param key
+	 * @param delta a positive number
+	 * @return the new count
+	 */
+	int add(int key, int delta) {
+		int mask = keys.length - 1;
+		int i = index(key);
+		while (counts[i] != 0) {
+			if (keys[i] == key) {
+				int count = counts[i] += delta;
+				if (count > maxCount) {
+					maxCount = count;
+				}
+				return count;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		counts[i] = delta;
+		if (delta > maxCount) {
+			maxCount = delta;
+		}
+		if (++size > keys.length / 2) {
+			grow();
+		}
+		return delta;
+	}
+	
+	/**
+	 * Add all the counts of another table
+	 * @param other
+	 */
+	void addAll(IntCountTable other) {
+		for (int i = 0; i < other.keys.length; i++) {
+			if (other.counts[i] != 0) {
+				add(other.keys[i], other.counts[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Get the count of a key
+	 * @param key
+	 * @return the count, or 0 if the key was never added
+	 */
+	int get(int key) {
+		int mask = keys.length - 1;
+		for (int i = index(key); counts[i] != 0; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return counts[i];
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * Get the number of distinct keys
+	 * @return
+	 */
+	int size() {
+		return size;
+	}
+	
+	/**
+	 * Get the highest count
+	 * @return
+	 */
+	int getMaxCount() {
+		return maxCount;
+	}
+	
+	/**
+	 * Get the keys with the highest count, in no particular order
+	 * @return
+	 */
+	int[] getModes() {
+		int n = 0;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == maxCount && maxCount != 0) {
+				n++;
+			}
+		}
+		int[] modes = new int[n];
+		n = 0;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == maxCount && maxCount != 0) {
+				modes[n++] = keys[i];
+			}
+		}
+		return modes;
+	}
+	
+	protected int index(int key) {
+		return (key * 0x9E3779B9) >>> shift;
+	}
+	
+	protected void allocate(int capacity) {
+		keys = new int[capacity];
+		counts = new int[capacity];
+		shift = Integer.numberOfLeadingZeros(capacity) + 1;
+	}
+	
+	protected void grow() {
+		if (keys.length == MAX_CAPACITY) {
+			throw new IllegalStateException("too many keys: " + size);
+		}
+		int[] oldKeys = keys;
+		int[] oldCounts = counts;
+		allocate(keys.length << 1);
+		int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldCounts[j] != 0) {
+				int i = index(oldKeys[j]);
+				while (counts[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				counts[i] = oldCounts[j];
+			}
+		}
+	}
+	
+}
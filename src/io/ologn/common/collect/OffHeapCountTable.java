@@ -0,0 +1,144 @@
+package io.ologn.common.collect;
+
+/**
+ * An open-addressing hash table that counts occurrences of long keys 
+ * without boxing, for {@link OlognArrays#mode(OffHeapLongArray)} and 
+ * {@link OlognArrays#mode(OffHeapDoubleArray)}. Unlike 
+ * {@link LongCountTable}, the counts are longs, because an off-heap array 
+ * can hold a key more than 2^31 times. Keys are placed by Fibonacci 
+ * hashing with linear probing, and a count of 0 marks an empty slot.
+ * @author lisq199
+ */
+class OffHeapCountTable {
+	
+	protected static final int MIN_CAPACITY = 16;
+	protected static final int MAX_CAPACITY = 1 << 30;
+	
+	/**
+	 * The table is at most half full, so this is the most keys it holds
+	 */
+	protected static final int MAX_KEYS = MAX_CAPACITY / 2;
+	
+	protected long[] keys;
+	protected long[] counts;
+	protected int size;
+	protected int shift;
+	protected long maxCount;
+	
+	/**
+	 * @param expectedKeys how many distinct keys are expected, which only 
+	 * affects the initial capacity
+	 */
+	OffHeapCountTable(int expectedKeys) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < MAX_CAPACITY && capacity < expectedKeys * 2L) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+	
+	/**
+	 * Add 1 to the count of a key
+	 * @param key
+	 * @return the new count
+	 */
+	long increment(long key) {
+		int mask = keys.length - 1;
+		int i = index(key);
+		while (counts[i] != 0) {
+			if (keys[i] == key) {
+				long count = ++counts[i];
+				if (count > maxCount) {
+					maxCount = count;
+				}
+				return count;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		counts[i] = 1;
+		if (maxCount == 0) {
+			maxCount = 1;
+		}
+		if (++size > keys.length / 2) {
+			grow();
+		}
+		return 1;
+	}
+	
+	/**
+	 * Get the number of distinct keys
+	 * @return
+	 */
+	int size() {
+		return size;
+	}
+	
+	/**
+	 * Check if the table cannot take another distinct key
+	 * @return
+	 */
+	boolean isFull() {
+		return size == MAX_KEYS;
+	}
+	
+	/**
+	 * Get the highest count
+	 * @return
+	 */
+	long getMaxCount() {
+		return maxCount;
+	}
+	
+	/**
+	 * Get the keys with the highest count, in no particular order
+	 * @return
+	 */
+	long[] getModes() {
+		int n = 0;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == maxCount && maxCount != 0) {
+				n++;
+			}
+		}
+		long[] modes = new long[n];
+		n = 0;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == maxCount && maxCount != 0) {
+				modes[n++] = keys[i];
+			}
+		}
+		return modes;
+	}
+	
+	protected int index(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+	
+	protected void allocate(int capacity) {
+		keys = new long[capacity];
+		counts = new long[capacity];
+		shift = Long.numberOfLeadingZeros(capacity) + 1;
+	}
+	
+	protected void grow() {
+		if (keys.length == MAX_CAPACITY) {
+			throw new IllegalStateException("too many keys: " + size);
+		}
+		long[] oldKeys = keys;
+		long[] oldCounts = counts;
+		allocate(keys.length << 1);
+		int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldCounts[j] != 0) {
+				int i = index(oldKeys[j]);
+				while (counts[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				counts[i] = oldCounts[j];
+			}
+		}
+	}
+	
+}
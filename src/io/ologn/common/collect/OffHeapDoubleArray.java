@@ -0,0 +1,249 @@
+package io.ologn.common.collect;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+/**
+ * A double array outside the Java heap with long indices, for arrays that 
+ * are longer than 2^31 elements or too large for the garbage collector to 
+ * copy around.<br>
+ * The elements are stored in chunks of direct ByteBuffers in the native 
+ * byte order, because one ByteBuffer holds at most 2GB. The memory is 
+ * zeroed when allocated. It counts against -XX:MaxDirectMemorySize, not 
+ * the heap. It is freed by {@link #close()}, or when the array is garbage 
+ * collected, which may be long after it is unreachable since the array 
+ * itself takes almost no heap.<br>
+ * The statistics of {@link OlognArrays} work on this array without 
+ * copying it to the heap, such as 
+ * {@link OlognArrays#medianInPlace(OffHeapDoubleArray)}. Not thread-safe.
+ * @author lisq199
+ */
+public class OffHeapDoubleArray implements AutoCloseable {
+	
+	/**
+	 * 2^27 elements, which is 1GB, per chunk
+	 */
+	public static final int DEFAULT_CHUNK_SHIFT = 27;
+	
+	/**
+	 * The length, which becomes 0 when the array is closed
+	 */
+	protected long length;
+	protected final int chunkShift;
+	protected final long chunkMask;
+	protected DoubleBuffer[] chunks;
+	
+	/**
+	 * The direct buffers that the chunks are views of
+	 */
+	protected ByteBuffer[] buffers;
+	
+	protected OffHeapDoubleArray(long length, int chunkShift) {
+		if (length < 0) {
+			throw new IllegalArgumentException("negative length: " + length);
+		}
+		if (chunkShift < 0 || chunkShift > DEFAULT_CHUNK_SHIFT) {
+			throw new IllegalArgumentException("chunk shift must be in [0, "
+					+ DEFAULT_CHUNK_SHIFT + "]");
+		}
+		this.length = length;
+		this.chunkShift = chunkShift;
+		this.chunkMask = (1L << chunkShift) - 1;
+		long chunkLength = 1L << chunkShift;
+		int n = (int) ((length + chunkLength - 1) >>> chunkShift);
+		this.chunks = new DoubleBuffer[n];
+		this.buffers = new ByteBuffer[n];
+		for (int i = 0; i < n; i++) {
+			long size = Math.min(chunkLength, length - i * chunkLength);
+			buffers[i] = ByteBuffer.allocateDirect((int) size * 8)
+					.order(ByteOrder.nativeOrder());
+			chunks[i] = buffers[i].asDoubleBuffer();
+		}
+	}
+	
+	public long length() {
+		return length;
+	}
+	
+	/**
+	 * Get an element
+	 * @param i
+	 * @return
+	 * @throws IndexOutOfBoundsException if i is out of range
+	 */
+	public double get(long i) {
+		checkIndex(i);
+		return chunks[(int) (i >>> chunkShift)].get((int) (i & chunkMask));
+	}
+	
+	/**
+	 * Set an element
+	 * @param i
+	 * @param v
+	 * @throws IndexOutOfBoundsException if i is out of range
+	 */
+	public void set(long i, double v) {
+		checkIndex(i);
+		chunks[(int) (i >>> chunkShift)].put((int) (i & chunkMask), v);
+	}
+	
+	/**
+	 * Swap two elements
+	 * @param i
+	 * @param j
+	 * @throws IndexOutOfBoundsException if i or j is out of range
+	 */
+	public void swap(long i, long j) {
+		checkIndex(i);
+		checkIndex(j);
+		double v = get(i);
+		set(i, get(j));
+		set(j, v);
+	}
+	
+	public void fill(double v) {
+		for (DoubleBuffer chunk : chunks) {
+			for (int i = 0; i < chunk.capacity(); i++) {
+				chunk.put(i, v);
+			}
+		}
+	}
+	
+	/**
+	 * Copy elements from a heap array into this array
+	 * @param src
+	 * @param srcPos
+	 * @param destPos
+	 * @param n
+	 */
+	public void copyFrom(double[] src, int srcPos, long destPos, int n) {
+		checkRange(destPos, n);
+		while (n > 0) {
+			DoubleBuffer chunk = chunks[(int) (destPos >>> chunkShift)].duplicate();
+			chunk.position((int) (destPos & chunkMask));
+			int count = Math.min(n, chunk.remaining());
+			chunk.put(src, srcPos, count);
+			srcPos += count;
+			destPos += count;
+			n -= count;
+		}
+	}
+	
+	/**
+	 * Copy elements of this array into a heap array
+	 * @param srcPos
+	 * @param dest
+	 * @param destPos
+	 * @param n
+	 */
+	public void copyTo(long srcPos, double[] dest, int destPos, int n) {
+		checkRange(srcPos, n);
+		while (n > 0) {
+			DoubleBuffer chunk = chunks[(int) (srcPos >>> chunkShift)].duplicate();
+			chunk.position((int) (srcPos & chunkMask));
+			int count = Math.min(n, chunk.remaining());
+			chunk.get(dest, destPos, count);
+			srcPos += count;
+			destPos += count;
+			n -= count;
+		}
+	}
+	
+	/**
+	 * Copy this array into a new off-heap array with the same chunks
+	 * @return
+	 */
+	public OffHeapDoubleArray copy() {
+		OffHeapDoubleArray copy = new OffHeapDoubleArray(length, chunkShift);
+		for (int i = 0; i < chunks.length; i++) {
+			DoubleBuffer chunk = chunks[i].duplicate();
+			chunk.clear();
+			copy.chunks[i].duplicate().put(chunk);
+		}
+		return copy;
+	}
+	
+	/**
+	 * Copy this array into a new heap array
+	 * @return
+	 * @throws IllegalStateException if the array is too long for the heap
+	 */
+	public double[] toArray() {
+		if (length > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("too long for an array: "
+					+ length);
+		}
+		double[] m = new double[(int) length];
+		copyTo(0, m, 0, m.length);
+		return m;
+	}
+	
+	/**
+	 * Free the memory now, instead of when the array is garbage collected. 
+	 * After that, the length is 0, so every index is out of range. Closing 
+	 * again does nothing. Do not close an array while another thread 
+	 * uses it.
+	 */
+	@Override
+	public void close() {
+		ByteBuffer[] old = buffers;
+		length = 0;
+		chunks = new DoubleBuffer[0];
+		buffers = new ByteBuffer[0];
+		for (ByteBuffer buffer : old) {
+			OffHeapLongArray.free(buffer);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return "OffHeapDoubleArray[length: " + length + ", chunks: "
+				+ chunks.length + "]";
+	}
+	
+	protected void checkIndex(long i) {
+		if (i < 0 || i >= length) {
+			throw new IndexOutOfBoundsException("index " + i
+					+ " out of [0, " + length + ")");
+		}
+	}
+	
+	protected void checkRange(long from, int n) {
+		if (from < 0 || n < 0 || from + n > length) {
+			throw new IndexOutOfBoundsException("range [" + from + ", "
+					+ (from + n) + ") out of [0, " + length + ")");
+		}
+	}
+	
+	/**
+	 * Allocate an array of zeros
+	 * @param length
+	 * @return
+	 */
+	public static OffHeapDoubleArray init(long length) {
+		return new OffHeapDoubleArray(length, DEFAULT_CHUNK_SHIFT);
+	}
+	
+	/**
+	 * Allocate an array of zeros with 2^chunkShift elements per chunk
+	 * @param length
+	 * @param chunkShift in [0, 27]
+	 * @return
+	 */
+	public static OffHeapDoubleArray init(long length, int chunkShift) {
+		return new OffHeapDoubleArray(length, chunkShift);
+	}
+	
+	/**
+	 * Copy a heap array into a new off-heap array
+	 * @param m
+	 * @return
+	 */
+	public static OffHeapDoubleArray init(double[] m) {
+		OffHeapDoubleArray a = init(m.length);
+		a.copyFrom(m, 0, 0, m.length);
+		return a;
+	}
+	
+}
@@ -0,0 +1,308 @@
+package io.ologn.common.collect;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * A long array outside the Java heap with long indices, for arrays that 
+ * are longer than 2^31 elements or too large for the garbage collector to 
+ * copy around.<br>
+ * The elements are stored in chunks of direct ByteBuffers in the native 
+ * byte order, because one ByteBuffer holds at most 2GB. The memory is 
+ * zeroed when allocated. It counts against -XX:MaxDirectMemorySize, not 
+ * the heap. It is freed by {@link #close()}, or when the array is garbage 
+ * collected, which may be long after it is unreachable since the array 
+ * itself takes almost no heap.<br>
+ * The statistics of {@link OlognArrays} work on this array without 
+ * copying it to the heap, such as 
+ * {@link OlognArrays#medianInPlace(OffHeapLongArray)}. Not thread-safe.
+ * @author lisq199
+ */
+public class OffHeapLongArray implements AutoCloseable {
+	
+	/**
+	 * 2^27 elements, which is 1GB, per chunk
+	 */
+	public static final int DEFAULT_CHUNK_SHIFT = 27;
+	
+	/**
+	 * (ByteBuffer)void that frees a direct buffer, or null if this JVM 
+	 * has no known way to do it
+	 */
+	protected static final MethodHandle FREE = findFree();
+	
+	/**
+	 * The length, which becomes 0 when the array is closed
+	 */
+	protected long length;
+	protected final int chunkShift;
+	protected final long chunkMask;
+	protected LongBuffer[] chunks;
+	
+	/**
+	 * The direct buffers that the chunks are views of
+	 */
+	protected ByteBuffer[] buffers;
+	
+	protected OffHeapLongArray(long length, int chunkShift) {
+		if (length < 0) {
+			throw new IllegalArgumentException("negative length: " + length);
+		}
+		if (chunkShift < 0 || chunkShift > DEFAULT_CHUNK_SHIFT) {
+			throw new IllegalArgumentException("chunk shift must be in [0, "
+					+ DEFAULT_CHUNK_SHIFT + "]");
+		}
+		this.length = length;
+		this.chunkShift = chunkShift;
+		this.chunkMask = (1L << chunkShift) - 1;
+		long chunkLength = 1L << chunkShift;
+		int n = (int) ((length + chunkLength - 1) >>> chunkShift);
+		this.chunks = new LongBuffer[n];
+		this.buffers = new ByteBuffer[n];
+		for (int i = 0; i < n; i++) {
+			long size = Math.min(chunkLength, length - i * chunkLength);
+			buffers[i] = ByteBuffer.allocateDirect((int) size * 8)
+					.order(ByteOrder.nativeOrder());
+			chunks[i] = buffers[i].asLongBuffer();
+		}
+	}
+	
+	public long length() {
+		return length;
+	}
+	
+	/**
+	 * Get an element
+	 * @param i
+	 * @return
+	 * @throws IndexOutOfBoundsException if i is out of range
+	 */
+	public long get(long i) {
+		checkIndex(i);
+		return chunks[(int) (i >>> chunkShift)].get((int) (i & chunkMask));
+	}
+	
+	/**
+	 * Set an element
+	 * @param i
+	 * @param v
+	 * @throws IndexOutOfBoundsException if i is out of range
+	 */
+	public void set(long i, long v) {
+		checkIndex(i);
+		chunks[(int) (i >>> chunkShift)].put((int) (i & chunkMask), v);
+	}
+	
+	/**
+	 * Swap two elements
+	 * @param i
+	 * @param j
+	 * @throws IndexOutOfBoundsException if i or j is out of range
+	 */
+	public void swap(long i, long j) {
+		checkIndex(i);
+		checkIndex(j);
+		long v = get(i);
+		set(i, get(j));
+		set(j, v);
+	}
+	
+	public void fill(long v) {
+		for (LongBuffer chunk : chunks) {
+			for (int i = 0; i < chunk.capacity(); i++) {
+				chunk.put(i, v);
+			}
+		}
+	}
+	
+	/**
+	 * Copy elements from a heap array into this array
+	 * @param src
+	 * @param srcPos
+	 * @param destPos
+	 * @param n
+	 */
+	public void copyFrom(long[] src, int srcPos, long destPos, int n) {
+		checkRange(destPos, n);
+		while (n > 0) {
+			LongBuffer chunk = chunks[(int) (destPos >>> chunkShift)].duplicate();
+			chunk.position((int) (destPos & chunkMask));
+			int count = Math.min(n, chunk.remaining());
+			chunk.put(src, srcPos, count);
+			srcPos += count;
+			destPos += count;
+			n -= count;
+		}
+	}
+	
+	/**
+	 * Copy elements of this array into a heap array
+	 * @param srcPos
+	 * @param dest
+	 * @param destPos
+	 * @param n
+	 */
+	public void copyTo(long srcPos, long[] dest, int destPos, int n) {
+		checkRange(srcPos, n);
+		while (n > 0) {
+			LongBuffer chunk = chunks[(int) (srcPos >>> chunkShift)].duplicate();
+			chunk.position((int) (srcPos & chunkMask));
+			int count = Math.min(n, chunk.remaining());
+			chunk.get(dest, destPos, count);
+			srcPos += count;
+			destPos += count;
+			n -= count;
+		}
+	}
+	
+	/**
+	 * Copy this array into a new off-heap array with the same chunks
+	 * @return
+	 */
+	public OffHeapLongArray copy() {
+		OffHeapLongArray copy = new OffHeapLongArray(length, chunkShift);
+		for (int i = 0; i < chunks.length; i++) {
+			LongBuffer chunk = chunks[i].duplicate();
+			chunk.clear();
+			copy.chunks[i].duplicate().put(chunk);
+		}
+		return copy;
+	}
+	
+	/**
+	 * Copy this array into a new heap array
+	 * @return
+	 * @throws IllegalStateException if the array is too long for the heap
+	 */
+	public long[] toArray() {
+		if (length > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("too long for an array: "
+					+ length);
+		}
+		long[] m = new long[(int) length];
+		copyTo(0, m, 0, m.length);
+		return m;
+	}
+	
+	/**
+	 * Free the memory now, instead of when the array is garbage collected. 
+	 * After that, the length is 0, so every index is out of range. Closing 
+	 * again does nothing. Do not close an array while another thread 
+	 * uses it.
+	 */
+	@Override
+	public void close() {
+		ByteBuffer[] old = buffers;
+		length = 0;
+		chunks = new LongBuffer[0];
+		buffers = new ByteBuffer[0];
+		for (ByteBuffer buffer : old) {
+			OffHeapLongArray.free(buffer);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return "OffHeapLongArray[length: " + length + ", chunks: "
+				+ chunks.length + "]";
+	}
+	
+	protected void checkIndex(long i) {
+		if (i < 0 || i >= length) {
+			throw new IndexOutOfBoundsException("index " + i
+					+ " out of [0, " + length + ")");
+		}
+	}
+	
+	protected void checkRange(long from, int n) {
+		if (from < 0 || n < 0 || from + n > length) {
+			throw new IndexOutOfBoundsException("range [" + from + ", "
+					+ (from + n) + ") out of [0, " + length + ")");
+		}
+	}
+	
+	/**
+	 * Free a direct buffer now. Nothing may use the buffer or its views 
+	 * after that.
+	 * @param buffer
+	 * @return false if this JVM cannot free buffers explicitly, so it is 
+	 * left to the garbage collector
+	 */
+	protected static boolean free(ByteBuffer buffer) {
+		if (FREE == null) {
+			return false;
+		}
+		try {
+			FREE.invokeExact(buffer);
+			return true;
+		} catch (Throwable e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Java 9 and later: sun.misc.Unsafe.invokeCleaner(ByteBuffer). 
+	 * Java 8: ((sun.nio.ch.DirectBuffer) buffer).cleaner().clean().
+	 */
+	protected static MethodHandle findFree() {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodType type = MethodType.methodType(void.class,
+				ByteBuffer.class);
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			return lookup.findVirtual(unsafeClass, "invokeCleaner", type)
+					.bindTo(theUnsafe.get(null));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// Not Java 9 or later
+		}
+		try {
+			Method cleaner = Class.forName("sun.nio.ch.DirectBuffer")
+					.getMethod("cleaner");
+			Method clean = Class.forName("sun.misc.Cleaner")
+					.getMethod("clean");
+			return MethodHandles.filterReturnValue(lookup.unreflect(cleaner),
+					lookup.unreflect(clean)).asType(type);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Allocate an array of zeros
+	 * @param length
+	 * @return
+	 */
+	public static OffHeapLongArray init(long length) {
+		return new OffHeapLongArray(length, DEFAULT_CHUNK_SHIFT);
+	}
+	
+	/**
+	 * Allocate an array of zeros with 2^chunkShift elements per chunk
+	 * @param length
+	 * @param chunkShift in [0, 27]
+	 * @return
+	 */
+	public static OffHeapLongArray init(long length, int chunkShift) {
+		return new OffHeapLongArray(length, chunkShift);
+	}
+	
+	/**
+	 * Copy a heap array into a new off-heap array
+	 * @param m
+	 * @return
+	 */
+	public static OffHeapLongArray init(long[] m) {
+		OffHeapLongArray a = init(m.length);
+		a.copyFrom(m, 0, 0, m.length);
+		return a;
+	}
+	
+}
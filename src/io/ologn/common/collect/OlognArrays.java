@@ -9,11 +9,31 @@ import java.util.List;
 import java.util.Map;
 
 /**
- * Array related utilitis
+ * Array related utilitis.<br>
+ * The statistics of primitive arrays are plain loops that the JIT can 
+ * unroll and vectorize. Floating point sums use 4 independent 
+ * accumulators, because the JIT does not reorder floating point 
+ * additions by itself.
  * @author lisq199
  */
 public class OlognArrays {
 	
+	/**
+	 * Below this size, selection sorts the remaining range
+	 */
+	protected static final int INSERTION_SORT_THRESHOLD = 16;
+	
+	/**
+	 * From this size, the pivot is the median of the medians of 3
+	 */
+	protected static final int NINTHER_THRESHOLD = 128;
+	
+	/**
+	 * The initial capacity of the count tables of mode, which grow as 
+	 * needed, so that arrays with few distinct elements use little memory
+	 */
+	protected static final int INITIAL_COUNT_TABLE_KEYS = 1 << 12;
+	
 	/**
 	 * Get the max of an array with a specified Comparator
 	 * @param m
@@ -65,127 +85,2879 @@ public class OlognArrays {
 	}
 	
 	/**
-	 * Get the median of an array. This method does not modify the original 
-	 * array.
+	 * Get the min of an array
 	 * @param m
-	 * @param sorted whether the array is already sorted
 	 * @return
 	 */
-	public static int median(int[] m, boolean sorted) {
+	public static int min(int[] m) {
 		if (m.length == 0) {
-			throw new IllegalArgumentException("median of empty array");
+			throw new IllegalArgumentException("min of empty array");
 		}
-		int[] mm;
-		if (sorted) {
-			mm = m;
-		} else {
-			mm = m.clone();
-			Arrays.parallelSort(mm);
+		int min = m[0];
+		for (int i = 1; i < m.length; i++) {
+			min = Math.min(min, m[i]);
 		}
-		int mid = mm.length / 2;
-		if (mm.length % 2 == 1) {
-			return mm[mid];
-		} else {
-			return (mm[mid - 1] + mm[mid]) / 2;
+		return min;
+	}
+	
+	/**
+	 * Get the max of an array
+	 * @param m
+	 * @return
+	 */
+	public static int max(int[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("max of empty array");
 		}
+		int max = m[0];
+		for (int i = 1; i < m.length; i++) {
+			max = Math.max(max, m[i]);
+		}
+		return max;
 	}
 	
 	/**
-	 * Get the median of an array. This method does not modify the original 
-	 * array.
+	 * Get the min and the max of an array in one pass
+	 * @param m
+	 * @return {min, max}
+	 */
+	public static int[] minMax(int[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("minMax of empty array");
+		}
+		int min = m[0];
+		int max = m[0];
+		for (int i = 1; i < m.length; i++) {
+			min = Math.min(min, m[i]);
+			max = Math.max(max, m[i]);
+		}
+		return new int[] {min, max};
+	}
+	
+	/**
+	 * Get the sum of an array
 	 * @param m
-	 * @param sorted whether the array is already sorted
 	 * @return
 	 */
-	public static long median(long[] m, boolean sorted) {
+	public static long sum(int[] m) {
+		long sum = 0;
+		for (int v : m) {
+			sum += v;
+		}
+		return sum;
+	}
+	
+	/**
+	 * Get the arithmetic mean of an array
+	 * @param m
+	 * @return
+	 */
+	public static double mean(int[] m) {
 		if (m.length == 0) {
-			throw new IllegalArgumentException("median of empty array");
+			throw new IllegalArgumentException("mean of empty array");
 		}
-		long[] mm;
-		if (sorted) {
-			mm = m;
-		} else {
-			mm = m.clone();
-			Arrays.parallelSort(mm);
+		return (double) sum(m) / m.length;
+	}
+	
+	/**
+	 * Get the population variance of an array, the mean of the squared 
+	 * deviations from the mean. Multiply by n / (n - 1) for the sample 
+	 * variance. This is computed in two passes, with the rounding error of 
+	 * the mean corrected, so it does not suffer from the cancellation of 
+	 * the one pass formula.
+	 * @param m
+	 * @return
+	 */
+	public static double variance(int[] m) {
+		double mean = mean(m);
+		double s0 = 0;
+		double s1 = 0;
+		double s2 = 0;
+		double s3 = 0;
+		double c0 = 0;
+		double c1 = 0;
+		double c2 = 0;
+		double c3 = 0;
+		int i = 0;
+		for (int n = m.length & ~3; i < n; i += 4) {
+			double d0 = m[i] - mean;
+			double d1 = m[i + 1] - mean;
+			double d2 = m[i + 2] - mean;
+			double d3 = m[i + 3] - mean;
+			s0 += d0 * d0;
+			s1 += d1 * d1;
+			s2 += d2 * d2;
+			s3 += d3 * d3;
+			c0 += d0;
+			c1 += d1;
+			c2 += d2;
+			c3 += d3;
 		}
-		int mid = mm.length / 2;
-		if (mm.length % 2 == 1) {
-			return mm[mid];
-		} else {
-			return (mm[mid - 1] + mm[mid]) / 2;
+		for (; i < m.length; i++) {
+			double d = m[i] - mean;
+			s0 += d * d;
+			c0 += d;
 		}
+		double c = (c0 + c1) + (c2 + c3);
+		return ((s0 + s1) + (s2 + s3) - c * c / m.length) / m.length;
 	}
 	
 	/**
-	 * Get the median of an array. This method does not modify the original 
-	 * array.
+	 * Get the min of an array
 	 * @param m
-	 * @param sorted whether the array is already sorted
 	 * @return
 	 */
-	public static float median(float[] m, boolean sorted) {
+	public static long min(long[] m) {
 		if (m.length == 0) {
-			throw new IllegalArgumentException("median of empty array");
+			throw new IllegalArgumentException("min of empty array");
 		}
-		float[] mm;
-		if (sorted) {
-			mm = m;
-		} else {
-			mm = m.clone();
-			Arrays.parallelSort(mm);
+		long min = m[0];
+		for (int i = 1; i < m.length; i++) {
+			min = Math.min(min, m[i]);
 		}
-		int mid = mm.length / 2;
-		if (mm.length % 2 == 1) {
-			return mm[mid];
-		} else {
-			return (mm[mid - 1] + mm[mid]) / 2;
+		return min;
+	}
+	
+	/**
+	 * Get the max of an array
+	 * @param m
+	 * @return
+	 */
+	public static long max(long[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("max of empty array");
+		}
+		long max = m[0];
+		for (int i = 1; i < m.length; i++) {
+			max = Math.max(max, m[i]);
+		}
+		return max;
+	}
+	
+	/**
+	 * Get the min and the max of an array in one pass
+	 * @param m
+	 * @return {min, max}
+	 */
+	public static long[] minMax(long[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("minMax of empty array");
+		}
+		long min = m[0];
+		long max = m[0];
+		for (int i = 1; i < m.length; i++) {
+			min = Math.min(min, m[i]);
+			max = Math.max(max, m[i]);
+		}
+		return new long[] {min, max};
+	}
+	
+	/**
+	 * Get the sum of an array. The sum overflows like long arithmetic, see 
+	 * {@link #mean(long[])} for large values.
+	 * @param m
+	 * @return
+	 */
+	public static long sum(long[] m) {
+		long sum = 0;
+		for (long v : m) {
+			sum += v;
+		}
+		return sum;
+	}
+	
+	/**
+	 * Get the arithmetic mean of an array. The sum is accumulated in 
+	 * doubles, so it does not overflow.
+	 * @param m
+	 * @return
+	 */
+	public static double mean(long[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("mean of empty array");
+		}
+		double s0 = 0;
+		double s1 = 0;
+		double s2 = 0;
+		double s3 = 0;
+		int i = 0;
+		for (int n = m.length & ~3; i < n; i += 4) {
+			s0 += m[i];
+			s1 += m[i + 1];
+			s2 += m[i + 2];
+			s3 += m[i + 3];
+		}
+		for (; i < m.length; i++) {
+			s0 += m[i];
+		}
+		return ((s0 + s1) + (s2 + s3)) / m.length;
+	}
+	
+	/**
+	 * Get the population variance of an array, the mean of the squared 
+	 * deviations from the mean. Multiply by n / (n - 1) for the sample 
+	 * variance. This is computed in two passes, with the rounding error of 
+	 * the mean corrected, so it does not suffer from the cancellation of 
+	 * the one pass formula.
+	 * @param m
+	 * @return
+	 */
+	public static double variance(long[] m) {
+		double mean = mean(m);
+		double s0 = 0;
+		double s1 = 0;
+		double s2 = 0;
+		double s3 = 0;
+		double c0 = 0;
+		double c1 = 0;
+		double c2 = 0;
+		double c3 = 0;
+		int i = 0;
+		for (int n = m.length & ~3; i < n; i += 4) {
+			double d0 = m[i] - mean;
+			double d1 = m[i + 1] - mean;
+			double d2 = m[i + 2] - mean;
+			double d3 = m[i + 3] - mean;
+			s0 += d0 * d0;
+			s1 += d1 * d1;
+			s2 += d2 * d2;
+			s3 += d3 * d3;
+			c0 += d0;
+			c1 += d1;
+			c2 += d2;
+			c3 += d3;
+		}
+		for (; i < m.length; i++) {
+			double d = m[i] - mean;
+			s0 += d * d;
+			c0 += d;
+		}
+		double c = (c0 + c1) + (c2 + c3);
+		return ((s0 + s1) + (s2 + s3) - c * c / m.length) / m.length;
+	}
+	
+	/**
+	 * Get the min of an array. Like {@link Math#min(float, float)}, NaN 
+	 * is returned if any element is NaN, and -0.0 is less than 0.0.
+	 * @param m
+	 * @return
+	 */
+	public static float min(float[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("min of empty array");
+		}
+		float min = m[0];
+		for (int i = 1; i < m.length; i++) {
+			min = Math.min(min, m[i]);
+		}
+		return min;
+	}
+	
+	/**
+	 * Get the max of an array. Like {@link Math#max(float, float)}, NaN 
+	 * is returned if any element is NaN, and -0.0 is less than 0.0.
+	 * @param m
+	 * @return
+	 */
+	public static float max(float[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("max of empty array");
+		}
+		float max = m[0];
+		for (int i = 1; i < m.length; i++) {
+			max = Math.max(max, m[i]);
+		}
+		return max;
+	}
+	
+	/**
+	 * Get the min and the max of an array in one pass
+	 * @param m
+	 * @return {min, max}
+	 */
+	public static float[] minMax(float[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("minMax of empty array");
 		}
+		float min = m[0];
+		float max = m[0];
+		for (int i = 1; i < m.length; i++) {
+			min = Math.min(min, m[i]);
+			max = Math.max(max, m[i]);
+		}
+		return new float[] {min, max};
+	}
+	
+	/**
+	 * Get the sum of an array. The sum is accumulated in doubles, in 4 
+	 * interleaved partial sums, which run in parallel on the CPU and 
+	 * round a bit less than one running sum.
+	 * @param m
+	 * @return
+	 */
+	public static double sum(float[] m) {
+		double s0 = 0;
+		double s1 = 0;
+		double s2 = 0;
+		double s3 = 0;
+		int i = 0;
+		for (int n = m.length & ~3; i < n; i += 4) {
+			s0 += m[i];
+			s1 += m[i + 1];
+			s2 += m[i + 2];
+			s3 += m[i + 3];
+		}
+		for (; i < m.length; i++) {
+			s0 += m[i];
+		}
+		return (s0 + s1) + (s2 + s3);
+	}
+	
+	/**
+	 * Get the arithmetic mean of an array
+	 * @param m
+	 * @return
+	 */
+	public static double mean(float[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("mean of empty array");
+		}
+		return sum(m) / m.length;
+	}
+	
+	/**
+	 * Get the population variance of an array, the mean of the squared 
+	 * deviations from the mean. Multiply by n / (n - 1) for the sample 
+	 * variance. This is computed in two passes, with the rounding error of 
+	 * the mean corrected, so it does not suffer from the cancellation of 
+	 * the one pass formula.
+	 * @param m
+	 * @return
+	 */
+	public static double variance(float[] m) {
+		double mean = mean(m);
+		double s0 = 0;
+		double s1 = 0;
+		double s2 = 0;
+		double s3 = 0;
+		double c0 = 0;
+		double c1 = 0;
+		double c2 = 0;
+		double c3 = 0;
+		int i = 0;
+		for (int n = m.length & ~3; i < n; i += 4) {
+			double d0 = m[i] - mean;
+			double d1 = m[i + 1] - mean;
+			double d2 = m[i + 2] - mean;
+			double d3 = m[i + 3] - mean;
+			s0 += d0 * d0;
+			s1 += d1 * d1;
+			s2 += d2 * d2;
+			s3 += d3 * d3;
+			c0 += d0;
+			c1 += d1;
+			c2 += d2;
+			c3 += d3;
+		}
+		for (; i < m.length; i++) {
+			double d = m[i] - mean;
+			s0 += d * d;
+			c0 += d;
+		}
+		double c = (c0 + c1) + (c2 + c3);
+		return ((s0 + s1) + (s2 + s3) - c * c / m.length) / m.length;
+	}
+	
+	/**
+	 * Get the min of an array. Like {@link Math#min(double, double)}, NaN 
+	 * is returned if any element is NaN, and -0.0 is less than 0.0.
+	 * @param m
+	 * @return
+	 */
+	public static double min(double[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("min of empty array");
+		}
+		double min = m[0];
+		for (int i = 1; i < m.length; i++) {
+			min = Math.min(min, m[i]);
+		}
+		return min;
+	}
+	
+	/**
+	 * Get the max of an array. Like {@link Math#max(double, double)}, NaN 
+	 * is returned if any element is NaN, and -0.0 is less than 0.0.
+	 * @param m
+	 * @return
+	 */
+	public static double max(double[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("max of empty array");
+		}
+		double max = m[0];
+		for (int i = 1; i < m.length; i++) {
+			max = Math.max(max, m[i]);
+		}
+		return max;
+	}
+	
+	/**
+	 * Get the min and the max of an array in one pass
+	 * @param m
+	 * @return {min, max}
+	 */
+	public static double[] minMax(double[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("minMax of empty array");
+		}
+		double min = m[0];
+		double max = m[0];
+		for (int i = 1; i < m.length; i++) {
+			min = Math.min(min, m[i]);
+			max = Math.max(max, m[i]);
+		}
+		return new double[] {min, max};
+	}
+	
+	/**
+	 * Get the sum of an array. The sum is accumulated in doubles, in 4 
+	 * interleaved partial sums, which run in parallel on the CPU and 
+	 * round a bit less than one running sum.
+	 * @param m
+	 * @return
+	 */
+	public static double sum(double[] m) {
+		double s0 = 0;
+		double s1 = 0;
+		double s2 = 0;
+		double s3 = 0;
+		int i = 0;
+		for (int n = m.length & ~3; i < n; i += 4) {
+			s0 += m[i];
+			s1 += m[i + 1];
+			s2 += m[i + 2];
+			s3 += m[i + 3];
+		}
+		for (; i < m.length; i++) {
+			s0 += m[i];
+		}
+		return (s0 + s1) + (s2 + s3);
+	}
+	
+	/**
+	 * Get the arithmetic mean of an array
+	 * @param m
+	 * @return
+	 */
+	public static double mean(double[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("mean of empty array");
+		}
+		return sum(m) / m.length;
+	}
+	
+	/**
+	 * Get the population variance of an array, the mean of the squared 
+	 * deviations from the mean. Multiply by n / (n - 1) for the sample 
+	 * variance. This is computed in two passes, with the rounding error of 
+	 * the mean corrected, so it does not suffer from the cancellation of 
+	 * the one pass formula.
+	 * @param m
+	 * @return
+	 */
+	public static double variance(double[] m) {
+		double mean = mean(m);
+		double s0 = 0;
+		double s1 = 0;
+		double s2 = 0;
+		double s3 = 0;
+		double c0 = 0;
+		double c1 = 0;
+		double c2 = 0;
+		double c3 = 0;
+		int i = 0;
+		for (int n = m.length & ~3; i < n; i += 4) {
+			double d0 = m[i] - mean;
+			double d1 = m[i + 1] - mean;
+			double d2 = m[i + 2] - mean;
+			double d3 = m[i + 3] - mean;
+			s0 += d0 * d0;
+			s1 += d1 * d1;
+			s2 += d2 * d2;
+			s3 += d3 * d3;
+			c0 += d0;
+			c1 += d1;
+			c2 += d2;
+			c3 += d3;
+		}
+		for (; i < m.length; i++) {
+			double d = m[i] - mean;
+			s0 += d * d;
+			c0 += d;
+		}
+		double c = (c0 + c1) + (c2 + c3);
+		return ((s0 + s1) + (s2 + s3) - c * c / m.length) / m.length;
 	}
 	
 	/**
 	 * Get the median of an array. This method does not modify the original 
-	 * array.
+	 * array. If the array is not sorted, the median is found in linear time 
+	 * by selection on a copy, see {@link #medianInPlace(int[])}.
 	 * @param m
 	 * @param sorted whether the array is already sorted
 	 * @return
 	 */
-	public static double median(double[] m, boolean sorted) {
+	public static int median(int[] m, boolean sorted) {
 		if (m.length == 0) {
 			throw new IllegalArgumentException("median of empty array");
 		}
-		double[] mm;
-		if (sorted) {
-			mm = m;
-		} else {
-			mm = m.clone();
-			Arrays.parallelSort(mm);
+		if (!sorted) {
+			return medianInPlace(m.clone());
 		}
-		int mid = mm.length / 2;
-		if (mm.length % 2 == 1) {
-			return mm[mid];
+		int mid = m.length / 2;
+		if (m.length % 2 == 1) {
+			return m[mid];
 		} else {
-			return (mm[mid - 1] + mm[mid]) / 2;
+			return (m[mid - 1] + m[mid]) / 2;
 		}
 	}
 	
 	/**
-	 * Get the mode of an array.
+	 * Get the median of an array by selection, reordering the array. See 
+	 * {@link #kthSmallestInPlace(int[], int)}.
 	 * @param m
 	 * @return
 	 */
-	public static <T> List<T> mode(T[] m) {
+	public static int medianInPlace(int[] m) {
 		if (m.length == 0) {
-			throw new IllegalArgumentException("mode of empty array");
+			throw new IllegalArgumentException("median of empty array");
 		}
-		List<T> modes = new ArrayList<T>();
-		Map<T, Integer> countMap = new HashMap<T, Integer>();
-		int maxCount = -1;
-		for (T t : m) {
-			int count = 1;
-			if (countMap.containsKey(t)) {
-				count = countMap.get(t) + 1;
-			}
-			countMap.put(t, count);
+		return median(m, m.length);
+	}
+	
+	/**
+	 * Get the median of an array by selection on a scratch buffer, 
+	 * without modifying the original array or allocating
+	 * @param m
+	 * @param scratch a buffer at least as long as m
+	 * @return
+	 */
+	public static int median(int[] m, int[] scratch) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("median of empty array");
+		}
+		checkScratch(m.length, scratch.length);
+		System.arraycopy(m, 0, scratch, 0, m.length);
+		return median(scratch, m.length);
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0. This 
+	 * method does not modify the original array.
+	 * @param m
+	 * @param k
+	 * @return
+	 */
+	public static int kthSmallest(int[] m, int k) {
+		checkK(m.length, k);
+		return kthSmallestInPlace(m.clone(), k);
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0, by 
+	 * selection on a scratch buffer, without modifying the original array 
+	 * or allocating
+	 * @param m
+	 * @param k
+	 * @param scratch a buffer at least as long as m
+	 * @return
+	 */
+	public static int kthSmallest(int[] m, int k, int[] scratch) {
+		checkK(m.length, k);
+		checkScratch(m.length, scratch.length);
+		System.arraycopy(m, 0, scratch, 0, m.length);
+		return kthSmallest(scratch, m.length, k);
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0, in 
+	 * linear time by introselect. The array is reordered so that m[k] is 
+	 * the k-th smallest element, the elements before it are not greater 
+	 * and the elements after it are not smaller.
+	 * @param m
+	 * @param k
+	 * @return
+	 */
+	public static int kthSmallestInPlace(int[] m, int k) {
+		checkK(m.length, k);
+		return kthSmallest(m, m.length, k);
+	}
+	
+	/**
+	 * Get several quantiles of an array with linear interpolation. This 
+	 * method does not modify the original array.
+	 * @param m
+	 * @param qs quantiles between 0 and 1, such as 0.5 for the median
+	 * @return the quantiles in the same order as qs
+	 */
+	public static double[] quantiles(int[] m, double... qs) {
+		return quantiles(m, QuantileInterpolation.LINEAR, qs);
+	}
+	
+	/**
+	 * Get several quantiles of an array. This method does not modify the 
+	 * original array.
+	 * @param m
+	 * @param interpolation
+	 * @param qs quantiles between 0 and 1, such as 0.5 for the median
+	 * @return the quantiles in the same order as qs
+	 */
+	public static double[] quantiles(int[] m,
+			QuantileInterpolation interpolation, double... qs) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("quantiles of empty array");
+		}
+		return quantilesInPlace(m.clone(), interpolation, qs);
+	}
+	
+	/**
+	 * Get several quantiles of an array, reordering the array. All the 
+	 * quantiles are selected together in one multi-select pass, which 
+	 * only partitions the parts of the array that contain the ranks 
+	 * needed.
+	 * @param m
+	 * @param interpolation
+	 * @param qs quantiles between 0 and 1, such as 0.5 for the median
+	 * @return the quantiles in the same order as qs
+	 */
+	public static double[] quantilesInPlace(int[] m,
+			QuantileInterpolation interpolation, double... qs) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("quantiles of empty array");
+		}
+		int[] ranks = quantileRanks(m.length, qs);
+		multiSelect(m, 0, m.length, ranks, 0, ranks.length,
+				2 * (32 - Integer.numberOfLeadingZeros(m.length)));
+		double[] result = new double[qs.length];
+		for (int i = 0; i < qs.length; i++) {
+			double position = qs[i] * (m.length - 1);
+			result[i] = interpolation.interpolate(position,
+					m[(int) Math.floor(position)],
+					m[(int) Math.ceil(position)]);
+		}
+		return result;
+	}
+	
+	/**
+	 * Select the k-th smallest element of the first length elements
+	 */
+	protected static int kthSmallest(int[] a, int length, int k) {
+		select(a, 0, length, k);
+		return a[k];
+	}
+	
+	/**
+	 * Get the median of the first length elements, reordering them
+	 */
+	protected static int median(int[] a, int length) {
+		int mid = length / 2;
+		select(a, 0, length, mid);
+		if (length % 2 == 1) {
+			return a[mid];
+		}
+		// After the selection, the lower middle is the max of the left part
+		int lower = a[0];
+		for (int i = 1; i < mid; i++) {
+			if (a[i] > lower) {
+				lower = a[i];
+			}
+		}
+		return (lower + a[mid]) / 2;
+	}
+	
+	/**
+	 * Introselect: quickselect with 3-way partitioning, which falls back 
+	 * to sorting if the partitions keep being unbalanced
+	 * @param a
+	 * @param from
+	 * @param to
+	 * @param k
+	 */
+	protected static void select(int[] a, int from, int to, int k) {
+		int depth = 2 * (32 - Integer.numberOfLeadingZeros(to - from));
+		while (to - from > INSERTION_SORT_THRESHOLD) {
+			if (depth-- == 0) {
+				Arrays.sort(a, from, to);
+				return;
+			}
+			long bounds = partition(a, from, to);
+			int lt = (int) (bounds >>> 32);
+			int gt = (int) bounds;
+			if (k < lt) {
+				to = lt;
+			} else if (k >= gt) {
+				from = gt;
+			} else {
+				return;
+			}
+		}
+		insertionSort(a, from, to);
+	}
+	
+	/**
+	 * Select all the ranks in a range at once: partition once, then only 
+	 * recurse into the partitions that contain ranks. After this, every 
+	 * a[ranks[i]] is in its sorted position.
+	 * @param a
+	 * @param from
+	 * @param to
+	 * @param ranks sorted ranks
+	 * @param rFrom
+	 * @param rTo
+	 * @param depth how many more partitions before falling back to sorting
+	 */
+	protected static void multiSelect(int[] a, int from, int to, int[] ranks,
+			int rFrom, int rTo, int depth) {
+		while (rFrom < rTo) {
+			if (to - from <= INSERTION_SORT_THRESHOLD) {
+				insertionSort(a, from, to);
+				return;
+			}
+			if (depth-- == 0) {
+				Arrays.sort(a, from, to);
+				return;
+			}
+			long bounds = partition(a, from, to);
+			int lt = (int) (bounds >>> 32);
+			int gt = (int) bounds;
+			int r1 = lowerBound(ranks, rFrom, rTo, lt);
+			int r2 = lowerBound(ranks, r1, rTo, gt);
+			multiSelect(a, from, lt, ranks, rFrom, r1, depth);
+			from = gt;
+			rFrom = r2;
+		}
+	}
+	
+	/**
+	 * 3-way partition of a range around a pivot: [from, lt) &lt; pivot, 
+	 * [lt, gt) == pivot and [gt, to) &gt; pivot
+	 * @return lt in the high 32 bits and gt in the low 32 bits
+	 */
+	protected static long partition(int[] a, int from, int to) {
+		int pivot = pivot(a, from, to);
+		int lt = from;
+		int gt = to;
+		int i = from;
+		while (i < gt) {
+			int v = a[i];
+			if (v < pivot) {
+				a[i++] = a[lt];
+				a[lt++] = v;
+			} else if (v > pivot) {
+				a[i] = a[--gt];
+				a[gt] = v;
+			} else {
+				i++;
+			}
+		}
+		return (long) lt << 32 | gt;
+	}
+	
+	/**
+	 * Median of 3, or the median of the medians of 3 for large ranges
+	 */
+	protected static int pivot(int[] a, int from, int to) {
+		int n = to - from;
+		int mid = from + n / 2;
+		if (n < NINTHER_THRESHOLD) {
+			return medianOf3(a[from], a[mid], a[to - 1]);
+		}
+		int s = n / 8;
+		return medianOf3(
+				medianOf3(a[from], a[from + s], a[from + 2 * s]),
+				medianOf3(a[mid - s], a[mid], a[mid + s]),
+				medianOf3(a[to - 1 - 2 * s], a[to - 1 - s], a[to - 1]));
+	}
+	
+	protected static int medianOf3(int x, int y, int z) {
+		return x < y ? (y < z ? y : (x < z ? z : x))
+				: (x < z ? x : (y < z ? z : y));
+	}
+	
+	protected static void insertionSort(int[] a, int from, int to) {
+		for (int i = from + 1; i < to; i++) {
+			int v = a[i];
+			int j = i - 1;
+			while (j >= from && a[j] > v) {
+				a[j + 1] = a[j];
+				j--;
+			}
+			a[j + 1] = v;
+		}
+	}
+	
+	/**
+	 * Get the median of an array. This method does not modify the original 
+	 * array. If the array is not sorted, the median is found in linear time 
+	 * by selection on a copy, see {@link #medianInPlace(long[])}.
+	 * @param m
+	 * @param sorted whether the array is already sorted
+	 * @return
+	 */
+	public static long median(long[] m, boolean sorted) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("median of empty array");
+		}
+		if (!sorted) {
+			return medianInPlace(m.clone());
+		}
+		int mid = m.length / 2;
+		if (m.length % 2 == 1) {
+			return m[mid];
+		} else {
+			return (m[mid - 1] + m[mid]) / 2;
+		}
+	}
+	
+	/**
+	 * Get the median of an array by selection, reordering the array. See 
+	 * {@link #kthSmallestInPlace(long[], int)}.
+	 * @param m
+	 * @return
+	 */
+	public static long medianInPlace(long[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("median of empty array");
+		}
+		return median(m, m.length);
+	}
+	
+	/**
+	 * Get the median of an array by selection on a scratch buffer, 
+	 * without modifying the original array or allocating
+	 * @param m
+	 * @param scratch a buffer at least as long as m
+	 * @return
+	 */
+	public static long median(long[] m, long[] scratch) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("median of empty array");
+		}
+		checkScratch(m.length, scratch.length);
+		System.arraycopy(m, 0, scratch, 0, m.length);
+		return median(scratch, m.length);
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0. This 
+	 * method does not modify the original array.
+	 * @param m
+	 * @param k
+	 * @return
+	 */
+	public static long kthSmallest(long[] m, int k) {
+		checkK(m.length, k);
+		return kthSmallestInPlace(m.clone(), k);
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0, by 
+	 * selection on a scratch buffer, without modifying the original array 
+	 * or allocating
+	 * @param m
+	 * @param k
+	 * @param scratch a buffer at least as long as m
+	 * @return
+	 */
+	public static long kthSmallest(long[] m, int k, long[] scratch) {
+		checkK(m.length, k);
+		checkScratch(m.length, scratch.length);
+		System.arraycopy(m, 0, scratch, 0, m.length);
+		return kthSmallest(scratch, m.length, k);
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0, in 
+	 * linear time by introselect. The array is reordered so that m[k] is 
+	 * the k-th smallest element, the elements before it are not greater 
+	 * and the elements after it are not smaller.
+	 * @param m
+	 * @param k
+	 * @return
+	 */
+	public static long kthSmallestInPlace(long[] m, int k) {
+		checkK(m.length, k);
+		return kthSmallest(m, m.length, k);
+	}
+	
+	/**
+	 * Get several quantiles of an array with linear interpolation. This 
+	 * method does not modify the original array.
+	 * @param m
+	 * @param qs quantiles between 0 and 1, such as 0.5 for the median
+	 * @return the quantiles in the same order as qs
+	 */
+	public static double[] quantiles(long[] m, double... qs) {
+		return quantiles(m, QuantileInterpolation.LINEAR, qs);
+	}
+	
+	/**
+	 * Get several quantiles of an array. This method does not modify the 
+	 * original array.
+	 * @param m
+	 * @param interpolation
+	 * @param qs quantiles between 0 and 1, such as 0.5 for the median
+	 * @return the quantiles in the same order as qs
+	 */
+	public static double[] quantiles(long[] m,
+			QuantileInterpolation interpolation, double... qs) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("quantiles of empty array");
+		}
+		return quantilesInPlace(m.clone(), interpolation, qs);
+	}
+	
+	/**
+	 * Get several quantiles of an array, reordering the array. All the 
+	 * quantiles are selected together in one multi-select pass, which 
+	 * only partitions the parts of the array that contain the ranks 
+	 * needed.
+	 * @param m
+	 * @param interpolation
+	 * @param qs quantiles between 0 and 1, such as 0.5 for the median
+	 * @return the quantiles in the same order as qs
+	 */
+	public static double[] quantilesInPlace(long[] m,
+			QuantileInterpolation interpolation, double... qs) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("quantiles of empty array");
+		}
+		int[] ranks = quantileRanks(m.length, qs);
+		multiSelect(m, 0, m.length, ranks, 0, ranks.length,
+				2 * (32 - Integer.numberOfLeadingZeros(m.length)));
+		double[] result = new double[qs.length];
+		for (int i = 0; i < qs.length; i++) {
+			double position = qs[i] * (m.length - 1);
+			result[i] = interpolation.interpolate(position,
+					m[(int) Math.floor(position)],
+					m[(int) Math.ceil(position)]);
+		}
+		return result;
+	}
+	
+	/**
+	 * Select the k-th smallest element of the first length elements
+	 */
+	protected static long kthSmallest(long[] a, int length, int k) {
+		select(a, 0, length, k);
+		return a[k];
+	}
+	
+	/**
+	 * Get the median of the first length elements, reordering them
+	 */
+	protected static long median(long[] a, int length) {
+		int mid = length / 2;
+		select(a, 0, length, mid);
+		if (length % 2 == 1) {
+			return a[mid];
+		}
+		// After the selection, the lower middle is the max of the left part
+		long lower = a[0];
+		for (int i = 1; i < mid; i++) {
+			if (a[i] > lower) {
+				lower = a[i];
+			}
+		}
+		return (lower + a[mid]) / 2;
+	}
+	
+	/**
+	 * Introselect: quickselect with 3-way partitioning, which falls back 
+	 * to sorting if the partitions keep being unbalanced
+	 * @param a
+	 * @param from
+	 * @param to
+	 * @param k
+	 */
+	protected static void select(long[] a, int from, int to, int k) {
+		int depth = 2 * (32 - Integer.numberOfLeadingZeros(to - from));
+		while (to - from > INSERTION_SORT_THRESHOLD) {
+			if (depth-- == 0) {
+				Arrays.sort(a, from, to);
+				return;
+			}
+			long bounds = partition(a, from, to);
+			int lt = (int) (bounds >>> 32);
+			int gt = (int) bounds;
+			if (k < lt) {
+				to = lt;
+			} else if (k >= gt) {
+				from = gt;
+			} else {
+				return;
+			}
+		}
+		insertionSort(a, from, to);
+	}
+	
+	/**
+	 * Select all the ranks in a range at once: partition once, then only 
+	 * recurse into the partitions that contain ranks. After this, every 
+	 * a[ranks[i]] is in its sorted position.
+	 * @param a
+	 * @param from
+	 * @param to
+	 * @param ranks sorted ranks
+	 * @param rFrom
+	 * @param rTo
+	 * @param depth how many more partitions before falling back to sorting
+	 */
+	protected static void multiSelect(long[] a, int from, int to, int[] ranks,
+			int rFrom, int rTo, int depth) {
+		while (rFrom < rTo) {
+			if (to - from <= INSERTION_SORT_THRESHOLD) {
+				insertionSort(a, from, to);
+				return;
+			}
+			if (depth-- == 0) {
+				Arrays.sort(a, from, to);
+				return;
+			}
+			long bounds = partition(a, from, to);
+			int lt = (int) (bounds >>> 32);
+			int gt = (int) bounds;
+			int r1 = lowerBound(ranks, rFrom, rTo, lt);
+			int r2 = lowerBound(ranks, r1, rTo, gt);
+			multiSelect(a, from, lt, ranks, rFrom, r1, depth);
+			from = gt;
+			rFrom = r2;
+		}
+	}
+	
+	/**
+	 * 3-way partition of a range around a pivot: [from, lt) &lt; pivot, 
+	 * [lt, gt) == pivot and [gt, to) &gt; pivot
+	 * @return lt in the high 32 bits and gt in the low 32 bits
+	 */
+	protected static long partition(long[] a, int from, int to) {
+		long pivot = pivot(a, from, to);
+		int lt = from;
+		int gt = to;
+		int i = from;
+		while (i < gt) {
+			long v = a[i];
+			if (v < pivot) {
+				a[i++] = a[lt];
+				a[lt++] = v;
+			} else if (v > pivot) {
+				a[i] = a[--gt];
+				a[gt] = v;
+			} else {
+				i++;
+			}
+		}
+		return (long) lt << 32 | gt;
+	}
+	
+	/**
+	 * Median of 3, or the median of the medians of 3 for large ranges
+	 */
+	protected static long pivot(long[] a, int from, int to) {
+		int n = to - from;
+		int mid = from + n / 2;
+		if (n < NINTHER_THRESHOLD) {
+			return medianOf3(a[from], a[mid], a[to - 1]);
+		}
+		int s = n / 8;
+		return medianOf3(
+				medianOf3(a[from], a[from + s], a[from + 2 * s]),
+				medianOf3(a[mid - s], a[mid], a[mid + s]),
+				medianOf3(a[to - 1 - 2 * s], a[to - 1 - s], a[to - 1]));
+	}
+	
+	protected static long medianOf3(long x, long y, long z) {
+		return x < y ? (y < z ? y : (x < z ? z : x))
+				: (x < z ? x : (y < z ? z : y));
+	}
+	
+	protected static void insertionSort(long[] a, int from, int to) {
+		for (int i = from + 1; i < to; i++) {
+			long v = a[i];
+			int j = i - 1;
+			while (j >= from && a[j] > v) {
+				a[j + 1] = a[j];
+				j--;
+			}
+			a[j + 1] = v;
+		}
+	}
+	
+	/**
+	 * Get the median of an array. This method does not modify the original 
+	 * array. If the array is not sorted, the median is found in linear time 
+	 * by selection on a copy, see {@link #medianInPlace(float[])}.
+	 * @param m
+	 * @param sorted whether the array is already sorted
+	 * @return
+	 */
+	public static float median(float[] m, boolean sorted) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("median of empty array");
+		}
+		if (!sorted) {
+			return medianInPlace(m.clone());
+		}
+		int mid = m.length / 2;
+		if (m.length % 2 == 1) {
+			return m[mid];
+		} else {
+			return (m[mid - 1] + m[mid]) / 2;
+		}
+	}
+	
+	/**
+	 * Get the median of an array by selection, reordering the array. See 
+	 * {@link #kthSmallestInPlace(float[], int)}.
+	 * @param m
+	 * @return
+	 */
+	public static float medianInPlace(float[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("median of empty array");
+		}
+		return median(m, m.length);
+	}
+	
+	/**
+	 * Get the median of an array by selection on a scratch buffer, 
+	 * without modifying the original array or allocating
+	 * @param m
+	 * @param scratch a buffer at least as long as m
+	 * @return
+	 */
+	public static float median(float[] m, float[] scratch) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("median of empty array");
+		}
+		checkScratch(m.length, scratch.length);
+		System.arraycopy(m, 0, scratch, 0, m.length);
+		return median(scratch, m.length);
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0. This 
+	 * method does not modify the original array.
+	 * @param m
+	 * @param k
+	 * @return
+	 */
+	public static float kthSmallest(float[] m, int k) {
+		checkK(m.length, k);
+		return kthSmallestInPlace(m.clone(), k);
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0, by 
+	 * selection on a scratch buffer, without modifying the original array 
+	 * or allocating
+	 * @param m
+	 * @param k
+	 * @param scratch a buffer at least as long as m
+	 * @return
+	 */
+	public static float kthSmallest(float[] m, int k, float[] scratch) {
+		checkK(m.length, k);
+		checkScratch(m.length, scratch.length);
+		System.arraycopy(m, 0, scratch, 0, m.length);
+		return kthSmallest(scratch, m.length, k);
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0, in 
+	 * linear time by introselect. The array is reordered so that m[k] is 
+	 * the k-th smallest element, the elements before it are not greater 
+	 * and the elements after it are not smaller. NaNs are greater 
+	 * than all the other elements, and -0.0 is equal to 0.0.
+	 * @param m
+	 * @param k
+	 * @return
+	 */
+	public static float kthSmallestInPlace(float[] m, int k) {
+		checkK(m.length, k);
+		return kthSmallest(m, m.length, k);
+	}
+	
+	/**
+	 * Get several quantiles of an array with linear interpolation. This 
+	 * method does not modify the original array.
+	 * @param m
+	 * @param qs quantiles between 0 and 1, such as 0.5 for the median
+	 * @return the quantiles in the same order as qs
+	 */
+	public static double[] quantiles(float[] m, double... qs) {
+		return quantiles(m, QuantileInterpolation.LINEAR, qs);
+	}
+	
+	/**
+	 * Get several quantiles of an array. This method does not modify the 
+	 * original array.
+	 * @param m
+	 * @param interpolation
+	 * @param qs quantiles between 0 and 1, such as 0.5 for the median
+	 * @return the quantiles in the same order as qs
+	 */
+	public static double[] quantiles(float[] m,
+			QuantileInterpolation interpolation, double... qs) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("quantiles of empty array");
+		}
+		return quantilesInPlace(m.clone(), interpolation, qs);
+	}
+	
+	/**
+	 * Get several quantiles of an array, reordering the array. All the 
+	 * quantiles are selected together in one multi-select pass, which 
+	 * only partitions the parts of the array that contain the ranks 
+	 * needed. NaNs are greater than all the 
+	 * other elements.
+	 * @param m
+	 * @param interpolation
+	 * @param qs quantiles between 0 and 1, such as 0.5 for the median
+	 * @return the quantiles in the same order as qs
+	 */
+	public static double[] quantilesInPlace(float[] m,
+			QuantileInterpolation interpolation, double... qs) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("quantiles of empty array");
+		}
+		int[] ranks = quantileRanks(m.length, qs);
+		int n = moveNaNsToEnd(m, m.length);
+		multiSelect(m, 0, n, ranks, 0, lowerBound(ranks, 0, ranks.length, n),
+				2 * (32 - Integer.numberOfLeadingZeros(n)));
+		double[] result = new double[qs.length];
+		for (int i = 0; i < qs.length; i++) {
+			double position = qs[i] * (m.length - 1);
+			int lower = (int) Math.floor(position);
+			int upper = (int) Math.ceil(position);
+			result[i] = interpolation.interpolate(position,
+					lower < n ? m[lower] : Float.NaN,
+					upper < n ? m[upper] : Float.NaN);
+		}
+		return result;
+	}
+	
+	/**
+	 * Select the k-th smallest element of the first length elements
+	 */
+	protected static float kthSmallest(float[] a, int length, int k) {
+		int n = moveNaNsToEnd(a, length);
+		if (k >= n) {
+			return Float.NaN;
+		}
+		select(a, 0, n, k);
+		return a[k];
+	}
+	
+	/**
+	 * Get the median of the first length elements, reordering them
+	 */
+	protected static float median(float[] a, int length) {
+		int mid = length / 2;
+		int n = moveNaNsToEnd(a, length);
+		if (mid >= n) {
+			return Float.NaN;
+		}
+		select(a, 0, n, mid);
+		if (length % 2 == 1) {
+			return a[mid];
+		}
+		// After the selection, the lower middle is the max of the left part
+		float lower = a[0];
+		for (int i = 1; i < mid; i++) {
+			if (a[i] > lower) {
+				lower = a[i];
+			}
+		}
+		return (lower + a[mid]) / 2;
+	}
+	
+	/**
+	 * Introselect: quickselect with 3-way partitioning, which falls back 
+	 * to sorting if the partitions keep being unbalanced
+	 * @param a
+	 * @param from
+	 * @param to
+	 * @param k
+	 */
+	protected static void select(float[] a, int from, int to, int k) {
+		int depth = 2 * (32 - Integer.numberOfLeadingZeros(to - from));
+		while (to - from > INSERTION_SORT_THRESHOLD) {
+			if (depth-- == 0) {
+				Arrays.sort(a, from, to);
+				return;
+			}
+			long bounds = partition(a, from, to);
+			int lt = (int) (bounds >>> 32);
+			int gt = (int) bounds;
+			if (k < lt) {
+				to = lt;
+			} else if (k >= gt) {
+				from = gt;
+			} else {
+				return;
+			}
+		}
+		insertionSort(a, from, to);
+	}
+	
+	/**
+	 * Select all the ranks in a range at once: partition once, then only 
+	 * recurse into the partitions that contain ranks. After this, every 
+	 * a[ranks[i]] is in its sorted position.
+	 * @param a
+	 * @param from
+	 * @param to
+	 * @param ranks sorted ranks
+	 * @param rFrom
+	 * @param rTo
+	 * @param depth how many more partitions before falling back to sorting
+	 */
+	protected static void multiSelect(float[] a, int from, int to, int[] ranks,
+			int rFrom, int rTo, int depth) {
+		while (rFrom < rTo) {
+			if (to - from <= INSERTION_SORT_THRESHOLD) {
+				insertionSort(a, from, to);
+				return;
+			}
+			if (depth-- == 0) {
+				Arrays.sort(a, from, to);
+				return;
+			}
+			long bounds = partition(a, from, to);
+			int lt = (int) (bounds >>> 32);
+			int gt = (int) bounds;
+			int r1 = lowerBound(ranks, rFrom, rTo, lt);
+			int r2 = lowerBound(ranks, r1, rTo, gt);
+			multiSelect(a, from, lt, ranks, rFrom, r1, depth);
+			from = gt;
+			rFrom = r2;
+		}
+	}
+	
+	/**
+	 * 3-way partition of a range around a pivot: [from, lt) &lt; pivot, 
+	 * [lt, gt) == pivot and [gt, to) &gt; pivot
+	 * @return lt in the high 32 bits and gt in the low 32 bits
+	 */
+	protected static long partition(float[] a, int from, int to) {
+		float pivot = pivot(a, from, to);
+		int lt = from;
+		int gt = to;
+		int i = from;
+		while (i < gt) {
+			float v = a[i];
+			if (v < pivot) {
+				a[i++] = a[lt];
+				a[lt++] = v;
+			} else if (v > pivot) {
+				a[i] = a[--gt];
+				a[gt] = v;
+			} else {
+				i++;
+			}
+		}
+		return (long) lt << 32 | gt;
+	}
+	
+	/**
+	 * Median of 3, or the median of the medians of 3 for large ranges
+	 */
+	protected static float pivot(float[] a, int from, int to) {
+		int n = to - from;
+		int mid = from + n / 2;
+		if (n < NINTHER_THRESHOLD) {
+			return medianOf3(a[from], a[mid], a[to - 1]);
+		}
+		int s = n / 8;
+		return medianOf3(
+				medianOf3(a[from], a[from + s], a[from + 2 * s]),
+				medianOf3(a[mid - s], a[mid], a[mid + s]),
+				medianOf3(a[to - 1 - 2 * s], a[to - 1 - s], a[to - 1]));
+	}
+	
+	protected static float medianOf3(float x, float y, float z) {
+		return x < y ? (y < z ? y : (x < z ? z : x))
+				: (x < z ? x : (y < z ? z : y));
+	}
+	
+	protected static void insertionSort(float[] a, int from, int to) {
+		for (int i = from + 1; i < to; i++) {
+			float v = a[i];
+			int j = i - 1;
+			while (j >= from && a[j] > v) {
+				a[j + 1] = a[j];
+				j--;
+			}
+			a[j + 1] = v;
+		}
+	}
+	
+	/**
+	 * Move the NaNs among the first length elements to the end, so that 
+	 * the other elements can be compared with &lt; and &gt;
+	 * @return the number of elements that are not NaN
+	 */
+	protected static int moveNaNsToEnd(float[] a, int length) {
+		int n = length;
+		for (int i = 0; i < n;) {
+			if (a[i] != a[i]) {
+				float v = a[i];
+				a[i] = a[--n];
+				a[n] = v;
+			} else {
+				i++;
+			}
+		}
+		return n;
+	}
+	
+	/**
+	 * Get the median of an array. This method does not modify the original 
+	 * array. If the array is not sorted, the median is found in linear time 
+	 * by selection on a copy, see {@link #medianInPlace(double[])}.
+	 * @param m
+	 * @param sorted whether the array is already sorted
+	 * @return
+	 */
+	public static double median(double[] m, boolean sorted) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("median of empty array");
+		}
+		if (!sorted) {
+			return medianInPlace(m.clone());
+		}
+		int mid = m.length / 2;
+		if (m.length % 2 == 1) {
+			return m[mid];
+		} else {
+			return (m[mid - 1] + m[mid]) / 2;
+		}
+	}
+	
+	/**
+	 * Get the median of an array by selection, reordering the array. See 
+	 * {@link #kthSmallestInPlace(double[], int)}.
+	 * @param m
+	 * @return
+	 */
+	public static double medianInPlace(double[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("median of empty array");
+		}
+		return median(m, m.length);
+	}
+	
+	/**
+	 * Get the median of an array by selection on a scratch buffer, 
+	 * without modifying the original array or allocating
+	 * @param m
+	 * @param scratch a buffer at least as long as m
+	 * @return
+	 */
+	public static double median(double[] m, double[] scratch) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("median of empty array");
+		}
+		checkScratch(m.length, scratch.length);
+		System.arraycopy(m, 0, scratch, 0, m.length);
+		return median(scratch, m.length);
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0. This 
+	 * method does not modify the original array.
+	 * @param m
+	 * @param k
+	 * @return
+	 */
+	public static double kthSmallest(double[] m, int k) {
+		checkK(m.length, k);
+		return kthSmallestInPlace(m.clone(), k);
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0, by 
+	 * selection on a scratch buffer, without modifying the original array 
+	 * or allocating
+	 * @param m
+	 * @param k
+	 * @param scratch a buffer at least as long as m
+	 * @return
+	 */
+	public static double kthSmallest(double[] m, int k, double[] scratch) {
+		checkK(m.length, k);
+		checkScratch(m.length, scratch.length);
+		System.arraycopy(m, 0, scratch, 0, m.length);
+		return kthSmallest(scratch, m.length, k);
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0, in 
+	 * linear time by introselect. The array is reordered so that m[k] is 
+	 * the k-th smallest element, the elements before it are not greater 
+	 * and the elements after it are not smaller. NaNs are greater 
+	 * than all the other elements, and -0.0 is equal to 0.0.
+	 * @param m
+	 * @param k
+	 * @return
+	 */
+	public static double kthSmallestInPlace(double[] m, int k) {
+		checkK(m.length, k);
+		return kthSmallest(m, m.length, k);
+	}
+	
+	/**
+	 * Get several quantiles of an array with linear interpolation. This 
+	 * method does not modify the original array.
+	 * @param m
+	 * @param qs quantiles between 0 and 1, such as 0.5 for the median
+	 * @return the quantiles in the same order as qs
+	 */
+	public static double[] quantiles(double[] m, double... qs) {
+		return quantiles(m, QuantileInterpolation.LINEAR, qs);
+	}
+	
+	/**
+	 * Get several quantiles of an array. This method does not modify the 
+	 * original array.
+	 * @param m
+	 * @param interpolation
+	 * @param qs quantiles between 0 and 1, such as 0.5 for the median
+	 * @return the quantiles in the same order as qs
+	 */
+	public static double[] quantiles(double[] m,
+			QuantileInterpolation interpolation, double... qs) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("quantiles of empty array");
+		}
+		return quantilesInPlace(m.clone(), interpolation, qs);
+	}
+	
+	/**
+	 * Get several quantiles of an array, reordering the array. All the 
+	 * quantiles are selected together in one multi-select pass, which 
+	 * only partitions the parts of the array that contain the ranks 
+	 * needed. NaNs are greater than all the 
+	 * other elements.
+	 * @param m
+	 * @param interpolation
+	 * @param qs quantiles between 0 and 1, such as 0.5 for the median
+	 * @return the quantiles in the same order as qs
+	 */
+	public static double[] quantilesInPlace(double[] m,
+			QuantileInterpolation interpolation, double... qs) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("quantiles of empty array");
+		}
+		int[] ranks = quantileRanks(m.length, qs);
+		int n = moveNaNsToEnd(m, m.length);
+		multiSelect(m, 0, n, ranks, 0, lowerBound(ranks, 0, ranks.length, n),
+				2 * (32 - Integer.numberOfLeadingZeros(n)));
+		double[] result = new double[qs.length];
+		for (int i = 0; i < qs.length; i++) {
+			double position = qs[i] * (m.length - 1);
+			int lower = (int) Math.floor(position);
+			int upper = (int) Math.ceil(position);
+			result[i] = interpolation.interpolate(position,
+					lower < n ? m[lower] : Double.NaN,
+					upper < n ? m[upper] : Double.NaN);
+		}
+		return result;
+	}
+	
+	/**
+	 * Select the k-th smallest element of the first length elements
+	 */
+	protected static double kthSmallest(double[] a, int length, int k) {
+		int n = moveNaNsToEnd(a, length);
+		if (k >= n) {
+			return Double.NaN;
+		}
+		select(a, 0, n, k);
+		return a[k];
+	}
+	
+	/**
+	 * Get the median of the first length elements, reordering them
+	 */
+	protected static double median(double[] a, int length) {
+		int mid = length / 2;
+		int n = moveNaNsToEnd(a, length);
+		if (mid >= n) {
+			return Double.NaN;
+		}
+		select(a, 0, n, mid);
+		if (length % 2 == 1) {
+			return a[mid];
+		}
+		// After the selection, the lower middle is the max of the left part
+		double lower = a[0];
+		for (int i = 1; i < mid; i++) {
+			if (a[i] > lower) {
+				lower = a[i];
+			}
+		}
+		return (lower + a[mid]) / 2;
+	}
+	
+	/**
+	 * Introselect: quickselect with 3-way partitioning, which falls back 
+	 * to sorting if the partitions keep being unbalanced
+	 * @param a
+	 * @param from
+	 * @param to
+	 * @param k
+	 */
+	protected static void select(double[] a, int from, int to, int k) {
+		int depth = 2 * (32 - Integer.numberOfLeadingZeros(to - from));
+		while (to - from > INSERTION_SORT_THRESHOLD) {
+			if (depth-- == 0) {
+				Arrays.sort(a, from, to);
+				return;
+			}
+			long bounds = partition(a, from, to);
+			int lt = (int) (bounds >>> 32);
+			int gt = (int) bounds;
+			if (k < lt) {
+				to = lt;
+			} else if (k >= gt) {
+				from = gt;
+			} else {
+				return;
+			}
+		}
+		insertionSort(a, from, to);
+	}
+	
+	/**
+	 * Select all the ranks in a range at once: partition once, then only 
+	 * recurse into the partitions that contain ranks. After this, every 
+	 * a[ranks[i]] is in its sorted position.
+	 * @param a
+	 * @param from
+	 * @param to
+	 * @param ranks sorted ranks
+	 * @param rFrom
+	 * @param rTo
+	 * @param depth how many more partitions before falling back to sorting
+	 */
+	protected static void multiSelect(double[] a, int from, int to, int[] ranks,
+			int rFrom, int rTo, int depth) {
+		while (rFrom < rTo) {
+			if (to - from <= INSERTION_SORT_THRESHOLD) {
+				insertionSort(a, from, to);
+				return;
+			}
+			if (depth-- == 0) {
+				Arrays.sort(a, from, to);
+				return;
+			}
+			long bounds = partition(a, from, to);
+			int lt = (int) (bounds >>> 32);
+			int gt = (int) bounds;
+			int r1 = lowerBound(ranks, rFrom, rTo, lt);
+			int r2 = lowerBound(ranks, r1, rTo, gt);
+			multiSelect(a, from, lt, ranks, rFrom, r1, depth);
+			from = gt;
+			rFrom = r2;
+		}
+	}
+	
+	/**
+	 * 3-way partition of a range around a pivot: [from, lt) &lt; pivot, 
+	 * [lt, gt) == pivot and [gt, to) &gt; pivot
+	 * @return lt in the high 32 bits and gt in the low 32 bits
+	 */
+	protected static long partition(double[] a, int from, int to) {
+		double pivot = pivot(a, from, to);
+		int lt = from;
+		int gt = to;
+		int i = from;
+		while (i < gt) {
+			double v = a[i];
+			if (v < pivot) {
+				a[i++] = a[lt];
+				a[lt++] = v;
+			} else if (v > pivot) {
+				a[i] = a[--gt];
+				a[gt] = v;
+			} else {
+				i++;
+			}
+		}
+		return (long) lt << 32 | gt;
+	}
+	
+	/**
+	 * Median of 3, or the median of the medians of 3 for large ranges
+	 */
+	protected static double pivot(double[] a, int from, int to) {
+		int n = to - from;
+		int mid = from + n / 2;
+		if (n < NINTHER_THRESHOLD) {
+			return medianOf3(a[from], a[mid], a[to - 1]);
+		}
+		int s = n / 8;
+		return medianOf3(
+				medianOf3(a[from], a[from + s], a[from + 2 * s]),
+				medianOf3(a[mid - s], a[mid], a[mid + s]),
+				medianOf3(a[to - 1 - 2 * s], a[to - 1 - s], a[to - 1]));
+	}
+	
+	protected static double medianOf3(double x, double y, double z) {
+		return x < y ? (y < z ? y : (x < z ? z : x))
+				: (x < z ? x : (y < z ? z : y));
+	}
+	
+	protected static void insertionSort(double[] a, int from, int to) {
+		for (int i = from + 1; i < to; i++) {
+			double v = a[i];
+			int j = i - 1;
+			while (j >= from && a[j] > v) {
+				a[j + 1] = a[j];
+				j--;
+			}
+			a[j + 1] = v;
+		}
+	}
+	
+	/**
+	 * Move the NaNs among the first length elements to the end, so that 
+	 * the other elements can be compared with &lt; and &gt;
+	 * @return the number of elements that are not NaN
+	 */
+	protected static int moveNaNsToEnd(double[] a, int length) {
+		int n = length;
+		for (int i = 0; i < n;) {
+			if (a[i] != a[i]) {
+				double v = a[i];
+				a[i] = a[--n];
+				a[n] = v;
+			} else {
+				i++;
+			}
+		}
+		return n;
+	}
+	
+	/**
+	 * Get the sorted distinct ranks needed for some quantiles: the floor 
+	 * and ceiling of every position
+	 * @param length
+	 * @param qs
+	 * @return
+	 */
+	protected static int[] quantileRanks(int length, double[] qs) {
+		int[] ranks = new int[qs.length * 2];
+		for (int i = 0; i < qs.length; i++) {
+			double q = qs[i];
+			if (!(q >= 0 && q <= 1)) {
+				throw new IllegalArgumentException("invalid quantile: " + q);
+			}
+			double position = q * (length - 1);
+			ranks[2 * i] = (int) Math.floor(position);
+			ranks[2 * i + 1] = (int) Math.ceil(position);
+		}
+		Arrays.sort(ranks);
+		int n = 0;
+		for (int i = 0; i < ranks.length; i++) {
+			if (n == 0 || ranks[i] != ranks[n - 1]) {
+				ranks[n++] = ranks[i];
+			}
+		}
+		return Arrays.copyOf(ranks, n);
+	}
+	
+	/**
+	 * Get the index of the first element of a sorted range that is not 
+	 * less than a key
+	 */
+	protected static int lowerBound(int[] a, int from, int to, int key) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (a[mid] < key) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+	
+	protected static void checkK(int length, int k) {
+		if (k < 0 || k >= length) {
+			throw new IllegalArgumentException("k out of range: " + k
+					+ " for length " + length);
+		}
+	}
+	
+	protected static void checkScratch(int length, int scratchLength) {
+		if (scratchLength < length) {
+			throw new IllegalArgumentException("scratch buffer too small: "
+					+ scratchLength + " < " + length);
+		}
+	}
+	
+	/**
+	 * Get the modes of an array, counted in a primitive hash table without 
+	 * boxing. This method does not modify the original array.
+	 * @param m
+	 * @return the most frequent elements in ascending order
+	 */
+	public static int[] mode(int[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("mode of empty array");
+		}
+		IntCountTable table = new IntCountTable(
+				Math.min(m.length, INITIAL_COUNT_TABLE_KEYS));
+		for (int v : m) {
+			table.increment(v);
+		}
+		int[] modes = table.getModes();
+		Arrays.sort(modes);
+		return modes;
+	}
+	
+	/**
+	 * Get the modes of an array by sorting it, which needs no memory 
+	 * other than the result. The array is sorted.
+	 * @param m
+	 * @return the most frequent elements in ascending order
+	 */
+	public static int[] modeInPlace(int[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("mode of empty array");
+		}
+		Arrays.sort(m);
+		int maxCount = 0;
+		int modeCount = 0;
+		for (int i = 0; i < m.length;) {
+			int j = i + 1;
+			while (j < m.length && m[j] == m[i]) {
+				j++;
+			}
+			if (j - i > maxCount) {
+				maxCount = j - i;
+				modeCount = 1;
+			} else if (j - i == maxCount) {
+				modeCount++;
+			}
+			i = j;
+		}
+		int[] modes = new int[modeCount];
+		modeCount = 0;
+		for (int i = 0; i < m.length;) {
+			int j = i + 1;
+			while (j < m.length && m[j] == m[i]) {
+				j++;
+			}
+			if (j - i == maxCount) {
+				modes[modeCount++] = m[i];
+			}
+			i = j;
+		}
+		return modes;
+	}
+	
+	/**
+	 * Get the modes of an array, counted in a primitive hash table without 
+	 * boxing. This method does not modify the original array.
+	 * @param m
+	 * @return the most frequent elements in ascending order
+	 */
+	public static long[] mode(long[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("mode of empty array");
+		}
+		LongCountTable table = new LongCountTable(
+				Math.min(m.length, INITIAL_COUNT_TABLE_KEYS));
+		for (long v : m) {
+			table.increment(v);
+		}
+		long[] modes = table.getModes();
+		Arrays.sort(modes);
+		return modes;
+	}
+	
+	/**
+	 * Get the modes of an array by sorting it, which needs no memory 
+	 * other than the result. The array is sorted.
+	 * @param m
+	 * @return the most frequent elements in ascending order
+	 */
+	public static long[] modeInPlace(long[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("mode of empty array");
+		}
+		Arrays.sort(m);
+		int maxCount = 0;
+		int modeCount = 0;
+		for (int i = 0; i < m.length;) {
+			int j = i + 1;
+			while (j < m.length && m[j] == m[i]) {
+				j++;
+			}
+			if (j - i > maxCount) {
+				maxCount = j - i;
+				modeCount = 1;
+			} else if (j - i == maxCount) {
+				modeCount++;
+			}
+			i = j;
+		}
+		long[] modes = new long[modeCount];
+		modeCount = 0;
+		for (int i = 0; i < m.length;) {
+			int j = i + 1;
+			while (j < m.length && m[j] == m[i]) {
+				j++;
+			}
+			if (j - i == maxCount) {
+				modes[modeCount++] = m[i];
+			}
+			i = j;
+		}
+		return modes;
+	}
+	
+	/**
+	 * Get the modes of an array, counted in a primitive hash table without 
+	 * boxing. This method does not modify the original array. Elements are 
+	 * equal if they are equal as Floats: all NaNs are equal, and -0.0 is 
+	 * not equal to 0.0.
+	 * @param m
+	 * @return the most frequent elements in ascending order
+	 */
+	public static float[] mode(float[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("mode of empty array");
+		}
+		IntCountTable table = new IntCountTable(
+				Math.min(m.length, INITIAL_COUNT_TABLE_KEYS));
+		for (float v : m) {
+			table.increment(Float.floatToIntBits(v));
+		}
+		int[] bits = table.getModes();
+		float[] modes = new float[bits.length];
+		for (int i = 0; i < bits.length; i++) {
+			modes[i] = Float.intBitsToFloat(bits[i]);
+		}
+		Arrays.sort(modes);
+		return modes;
+	}
+	
+	/**
+	 * Get the modes of an array by sorting it, which needs no memory 
+	 * other than the result. The array is sorted. Elements are 
+	 * equal if they are equal as Floats: all NaNs are equal, and -0.0 is 
+	 * not equal to 0.0.
+	 * @param m
+	 * @return the most frequent elements in ascending order
+	 */
+	public static float[] modeInPlace(float[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("mode of empty array");
+		}
+		Arrays.sort(m);
+		int maxCount = 0;
+		int modeCount = 0;
+		for (int i = 0; i < m.length;) {
+			int j = i + 1;
+			while (j < m.length && Float.floatToIntBits(m[j])
+					== Float.floatToIntBits(m[i])) {
+				j++;
+			}
+			if (j - i > maxCount) {
+				maxCount = j - i;
+				modeCount = 1;
+			} else if (j - i == maxCount) {
+				modeCount++;
+			}
+			i = j;
+		}
+		float[] modes = new float[modeCount];
+		modeCount = 0;
+		for (int i = 0; i < m.length;) {
+			int j = i + 1;
+			while (j < m.length && Float.floatToIntBits(m[j])
+					== Float.floatToIntBits(m[i])) {
+				j++;
+			}
+			if (j - i == maxCount) {
+				modes[modeCount++] = m[i];
+			}
+			i = j;
+		}
+		return modes;
+	}
+	
+	/**
+	 * Get the modes of an array, counted in a primitive hash table without 
+	 * boxing. This method does not modify the original array. Elements are 
+	 * equal if they are equal as Doubles: all NaNs are equal, and -0.0 is 
+	 * not equal to 0.0.
+	 * @param m
+	 * @return the most frequent elements in ascending order
+	 */
+	public static double[] mode(double[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("mode of empty array");
+		}
+		LongCountTable table = new LongCountTable(
+				Math.min(m.length, INITIAL_COUNT_TABLE_KEYS));
+		for (double v : m) {
+			table.increment(Double.doubleToLongBits(v));
+		}
+		long[] bits = table.getModes();
+		double[] modes = new double[bits.length];
+		for (int i = 0; i < bits.length; i++) {
+			modes[i] = Double.longBitsToDouble(bits[i]);
+		}
+		Arrays.sort(modes);
+		return modes;
+	}
+	
+	/**
+	 * Get the modes of an array by sorting it, which needs no memory 
+	 * other than the result. The array is sorted. Elements are 
+	 * equal if they are equal as Doubles: all NaNs are equal, and -0.0 is 
+	 * not equal to 0.0.
+	 * @param m
+	 * @return the most frequent elements in ascending order
+	 */
+	public static double[] modeInPlace(double[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("mode of empty array");
+		}
+		Arrays.sort(m);
+		int maxCount = 0;
+		int modeCount = 0;
+		for (int i = 0; i < m.length;) {
+			int j = i + 1;
+			while (j < m.length && Double.doubleToLongBits(m[j])
+					== Double.doubleToLongBits(m[i])) {
+				j++;
+			}
+			if (j - i > maxCount) {
+				maxCount = j - i;
+				modeCount = 1;
+			} else if (j - i == maxCount) {
+				modeCount++;
+			}
+			i = j;
+		}
+		double[] modes = new double[modeCount];
+		modeCount = 0;
+		for (int i = 0; i < m.length;) {
+			int j = i + 1;
+			while (j < m.length && Double.doubleToLongBits(m[j])
+					== Double.doubleToLongBits(m[i])) {
+				j++;
+			}
+			if (j - i == maxCount) {
+				modes[modeCount++] = m[i];
+			}
+			i = j;
+		}
+		return modes;
+	}
+	
+	/**
+	 * Get the min of an off-heap array. 
+	 * @param m
+	 * @return
+	 */
+	public static long min(OffHeapLongArray m) {
+		if (m.length() == 0) {
+			throw new IllegalArgumentException("min of empty array");
+		}
+		long min = m.get(0);
+		for (long i = 1; i < m.length(); i++) {
+			min = Math.min(min, m.get(i));
+		}
+		return min;
+	}
+	
+	/**
+	 * Get the max of an off-heap array. 
+	 * @param m
+	 * @return
+	 */
+	public static long max(OffHeapLongArray m) {
+		if (m.length() == 0) {
+			throw new IllegalArgumentException("max of empty array");
+		}
+		long max = m.get(0);
+		for (long i = 1; i < m.length(); i++) {
+			max = Math.max(max, m.get(i));
+		}
+		return max;
+	}
+	
+	/**
+	 * Get the median of an off-heap array. This method does not modify 
+	 * the original array, but selects on an off-heap copy.
+	 * @param m
+	 * @return
+	 */
+	public static long median(OffHeapLongArray m) {
+		if (m.length() == 0) {
+			throw new IllegalArgumentException("median of empty array");
+		}
+		return medianInPlace(m.copy());
+	}
+	
+	/**
+	 * Get the median of an off-heap array by selection, reordering the 
+	 * array. See {@link #kthSmallestInPlace(OffHeapLongArray, long)}.
+	 * @param m
+	 * @return
+	 */
+	public static long medianInPlace(OffHeapLongArray m) {
+		long length = m.length();
+		if (length == 0) {
+			throw new IllegalArgumentException("median of empty array");
+		}
+		long mid = length / 2;
+		select(m, 0, length, mid);
+		if (length % 2 == 1) {
+			return m.get(mid);
+		}
+		// After the selection, the lower middle is the max of the left part
+		long lower = m.get(0);
+		for (long i = 1; i < mid; i++) {
+			if (m.get(i) > lower) {
+				lower = m.get(i);
+			}
+		}
+		return (lower + m.get(mid)) / 2;
+	}
+	
+	/**
+	 * Get the k-th smallest element of an off-heap array, counting from 0, 
+	 * in linear time by introselect. The array is reordered so that 
+	 * m.get(k) is the k-th smallest element, the elements before it are 
+	 * not greater and the elements after it are not smaller.
+	 * @param m
+	 * @param k
+	 * @return
+	 */
+	public static long kthSmallestInPlace(OffHeapLongArray m, long k) {
+		if (k < 0 || k >= m.length()) {
+			throw new IllegalArgumentException("k out of range: " + k
+					+ " for length " + m.length());
+		}
+		long n = m.length();
+		select(m, 0, n, k);
+		return m.get(k);
+	}
+	
+	/**
+	 * Get several quantiles of an off-heap array with linear 
+	 * interpolation. This method does not modify the original array, but 
+	 * selects on an off-heap copy.
+	 * @param m
+	 * @param qs quantiles between 0 and 1, such as 0.5 for the median
+	 * @return the quantiles in the same order as qs
+	 */
+	public static double[] quantiles(OffHeapLongArray m, double... qs) {
+		if (m.length() == 0) {
+			throw new IllegalArgumentException("quantiles of empty array");
+		}
+		return quantilesInPlace(m.copy(), QuantileInterpolation.LINEAR, qs);
+	}
+	
+	/**
+	 * Get several quantiles of an off-heap array, reordering the array. 
+	 * All the quantiles are selected together in one multi-select pass. 
+	 * See {@link #quantilesInPlace(long[], QuantileInterpolation, double...)}.
+	 * @param m
+	 * @param interpolation
+	 * @param qs quantiles between 0 and 1, such as 0.5 for the median
+	 * @return the quantiles in the same order as qs
+	 */
+	public static double[] quantilesInPlace(OffHeapLongArray m,
+			QuantileInterpolation interpolation, double... qs) {
+		long length = m.length();
+		if (length == 0) {
+			throw new IllegalArgumentException("quantiles of empty array");
+		}
+		long[] ranks = quantileRanks(length, qs);
+		multiSelect(m, 0, length, ranks, 0, ranks.length,
+				2 * (64 - Long.numberOfLeadingZeros(length)));
+		double[] result = new double[qs.length];
+		for (int i = 0; i < qs.length; i++) {
+			double position = qs[i] * (length - 1);
+			long lower = (long) Math.floor(position);
+			long upper = (long) Math.ceil(position);
+			result[i] = interpolation.interpolate(position,
+					m.get(lower), m.get(upper));
+		}
+		return result;
+	}
+	
+	/**
+	 * Get the modes of an off-heap array, counted in a primitive hash 
+	 * table on the heap, which takes memory for every distinct element. 
+	 * This method does not modify the array. If there are too many 
+	 * distinct elements for the table, the modes are found by 
+	 * {@link #modeInPlace(OffHeapLongArray)} on an off-heap copy.
+	 * @param m
+	 * @return the most frequent elements in ascending order
+	 */
+	public static long[] mode(OffHeapLongArray m) {
+		if (m.length() == 0) {
+			throw new IllegalArgumentException("mode of empty array");
+		}
+		OffHeapCountTable table = new OffHeapCountTable(
+				(int) Math.min(m.length(), INITIAL_COUNT_TABLE_KEYS));
+		for (long i = 0; i < m.length(); i++) {
+			if (table.isFull()) {
+				table = null;
+				try (OffHeapLongArray copy = m.copy()) {
+					return modeInPlace(copy);
+				}
+			}
+			table.increment(m.get(i));
+		}
+		long[] modes = table.getModes();
+		Arrays.sort(modes);
+		return modes;
+	}
+	
+	/**
+	 * Get the modes of an off-heap array by heapsort, which needs no 
+	 * memory other than the result. The array is sorted.
+	 * @param m
+	 * @return the most frequent elements in ascending order
+	 */
+	public static long[] modeInPlace(OffHeapLongArray m) {
+		long length = m.length();
+		if (length == 0) {
+			throw new IllegalArgumentException("mode of empty array");
+		}
+		heapSort(m, 0, length);
+		long maxCount = 0;
+		long modeCount = 0;
+		for (long i = 0; i < length;) {
+			long j = i + 1;
+			while (j < length && m.get(j) == m.get(i)) {
+				j++;
+			}
+			if (j - i > maxCount) {
+				maxCount = j - i;
+				modeCount = 1;
+			} else if (j - i == maxCount) {
+				modeCount++;
+			}
+			i = j;
+		}
+		long[] modes = new long[checkModeCount(modeCount)];
+		int n = 0;
+		for (long i = 0; i < length;) {
+			long j = i + 1;
+			while (j < length && m.get(j) == m.get(i)) {
+				j++;
+			}
+			if (j - i == maxCount) {
+				modes[n++] = m.get(i);
+			}
+			i = j;
+		}
+		return modes;
+	}
+	
+	/**
+	 * Introselect on an off-heap range, which falls back to heapsort if 
+	 * the partitions keep being unbalanced
+	 * @param a
+	 * @param from
+	 * @param to
+	 * @param k
+	 */
+	protected static void select(OffHeapLongArray a, long from, long to, long k) {
+		int depth = 2 * (64 - Long.numberOfLeadingZeros(to - from));
+		while (to - from > INSERTION_SORT_THRESHOLD) {
+			if (depth-- == 0) {
+				heapSort(a, from, to);
+				return;
+			}
+			long[] bounds = partition(a, from, to);
+			if (k < bounds[0]) {
+				to = bounds[0];
+			} else if (k >= bounds[1]) {
+				from = bounds[1];
+			} else {
+				return;
+			}
+		}
+		insertionSort(a, from, to);
+	}
+	
+	/**
+	 * Select all the ranks in an off-heap range at once. See 
+	 * {@link #multiSelect(long[], int, int, int[], int, int, int)}.
+	 */
+	protected static void multiSelect(OffHeapLongArray a, long from, long to,
+			long[] ranks, int rFrom, int rTo, int depth) {
+		while (rFrom < rTo) {
+			if (to - from <= INSERTION_SORT_THRESHOLD) {
+				insertionSort(a, from, to);
+				return;
+			}
+			if (depth-- == 0) {
+				heapSort(a, from, to);
+				return;
+			}
+			long[] bounds = partition(a, from, to);
+			int r1 = lowerBound(ranks, rFrom, rTo, bounds[0]);
+			int r2 = lowerBound(ranks, r1, rTo, bounds[1]);
+			multiSelect(a, from, bounds[0], ranks, rFrom, r1, depth);
+			from = bounds[1];
+			rFrom = r2;
+		}
+	}
+	
+	/**
+	 * 3-way partition of an off-heap range around a pivot: [from, lt) 
+	 * &lt; pivot, [lt, gt) == pivot and [gt, to) &gt; pivot
+	 * @return {lt, gt}
+	 */
+	protected static long[] partition(OffHeapLongArray a, long from, long to) {
+		long pivot = pivot(a, from, to);
+		long lt = from;
+		long gt = to;
+		long i = from;
+		while (i < gt) {
+			long v = a.get(i);
+			if (v < pivot) {
+				a.set(i++, a.get(lt));
+				a.set(lt++, v);
+			} else if (v > pivot) {
+				a.set(i, a.get(--gt));
+				a.set(gt, v);
+			} else {
+				i++;
+			}
+		}
+		return new long[] {lt, gt};
+	}
+	
+	protected static long pivot(OffHeapLongArray a, long from, long to) {
+		long n = to - from;
+		long mid = from + n / 2;
+		if (n < NINTHER_THRESHOLD) {
+			return medianOf3(a.get(from), a.get(mid), a.get(to - 1));
+		}
+		long s = n / 8;
+		return medianOf3(
+				medianOf3(a.get(from), a.get(from + s), a.get(from + 2 * s)),
+				medianOf3(a.get(mid - s), a.get(mid), a.get(mid + s)),
+				medianOf3(a.get(to - 1 - 2 * s), a.get(to - 1 - s),
+						a.get(to - 1)));
+	}
+	
+	protected static void insertionSort(OffHeapLongArray a, long from, long to) {
+		for (long i = from + 1; i < to; i++) {
+			long v = a.get(i);
+			long j = i - 1;
+			while (j >= from && a.get(j) > v) {
+				a.set(j + 1, a.get(j));
+				j--;
+			}
+			a.set(j + 1, v);
+		}
+	}
+	
+	protected static void heapSort(OffHeapLongArray a, long from, long to) {
+		long n = to - from;
+		for (long i = n / 2 - 1; i >= 0; i--) {
+			siftDown(a, from, i, n);
+		}
+		for (long end = n - 1; end > 0; end--) {
+			a.swap(from, from + end);
+			siftDown(a, from, 0, end);
+		}
+	}
+	
+	protected static void siftDown(OffHeapLongArray a, long from, long i, long n) {
+		long v = a.get(from + i);
+		while (2 * i + 1 < n) {
+			long child = 2 * i + 1;
+			if (child + 1 < n && a.get(from + child + 1)
+					> a.get(from + child)) {
+				child++;
+			}
+			if (a.get(from + child) <= v) {
+				break;
+			}
+			a.set(from + i, a.get(from + child));
+			i = child;
+		}
+		a.set(from + i, v);
+	}
+	
+	/**
+	 * Move the NaNs of an off-heap array to the end
+	 * @return the number of elements that are not NaN
+	 */
+	protected static long moveNaNsToEnd(OffHeapDoubleArray a) {
+		long n = a.length();
+		for (long i = 0; i < n;) {
+			if (a.get(i) != a.get(i)) {
+				a.swap(i, --n);
+			} else {
+				i++;
+			}
+		}
+		return n;
+	}
+	
+	/**
+	 * Get the sorted distinct ranks needed for some quantiles of an 
+	 * off-heap array. See {@link #quantileRanks(int, double[])}.
+	 */
+	protected static long[] quantileRanks(long length, double[] qs) {
+		long[] ranks = new long[qs.length * 2];
+		for (int i = 0; i < qs.length; i++) {
+			double q = qs[i];
+			if (!(q >= 0 && q <= 1)) {
+				throw new IllegalArgumentException("invalid quantile: " + q);
+			}
+			double position = q * (length - 1);
+			ranks[2 * i] = (long) Math.floor(position);
+			ranks[2 * i + 1] = (long) Math.ceil(position);
+		}
+		Arrays.sort(ranks);
+		int n = 0;
+		for (int i = 0; i < ranks.length; i++) {
+			if (n == 0 || ranks[i] != ranks[n - 1]) {
+				ranks[n++] = ranks[i];
+			}
+		}
+		return Arrays.copyOf(ranks, n);
+	}
+	
+	protected static int lowerBound(long[] a, int from, int to, long key) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (a[mid] < key) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+	
+	/**
+	 * Check that the modes of an off-heap array fit in an array
+	 * @param modeCount
+	 * @return modeCount as an int
+	 */
+	protected static int checkModeCount(long modeCount) {
+		if (modeCount > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("too many modes: "
+					+ modeCount);
+		}
+		return (int) modeCount;
+	}
+	
+	/**
+	 * Get the min of an off-heap array. Like 
+	 * {@link Math#min(double, double)}, NaN is returned if any element is 
+	 * NaN.
+	 * @param m
+	 * @return
+	 */
+	public static double min(OffHeapDoubleArray m) {
+		if (m.length() == 0) {
+			throw new IllegalArgumentException("min of empty array");
+		}
+		double min = m.get(0);
+		for (long i = 1; i < m.length(); i++) {
+			min = Math.min(min, m.get(i));
+		}
+		return min;
+	}
+	
+	/**
+	 * Get the max of an off-heap array. Like 
+	 * {@link Math#max(double, double)}, NaN is returned if any element is 
+	 * NaN.
+	 * @param m
+	 * @return
+	 */
+	public static double max(OffHeapDoubleArray m) {
+		if (m.length() == 0) {
+			throw new IllegalArgumentException("max of empty array");
+		}
+		double max = m.get(0);
+		for (long i = 1; i < m.length(); i++) {
+			max = Math.max(max, m.get(i));
+		}
+		return max;
+	}
+	
+	/**
+	 * Get the median of an off-heap array. This method does not modify 
+	 * the original array, but selects on an off-heap copy.
+	 * @param m
+	 * @return
+	 */
+	public static double median(OffHeapDoubleArray m) {
+		if (m.length() == 0) {
+			throw new IllegalArgumentException("median of empty array");
+		}
+		return medianInPlace(m.copy());
+	}
+	
+	/**
+	 * Get the median of an off-heap array by selection, reordering the 
+	 * array. See {@link #kthSmallestInPlace(OffHeapDoubleArray, long)}.
+	 * @param m
+	 * @return
+	 */
+	public static double medianInPlace(OffHeapDoubleArray m) {
+		long length = m.length();
+		if (length == 0) {
+			throw new IllegalArgumentException("median of empty array");
+		}
+		long mid = length / 2;
+		long n = moveNaNsToEnd(m);
+		if (mid >= n) {
+			return Double.NaN;
+		}
+		select(m, 0, n, mid);
+		if (length % 2 == 1) {
+			return m.get(mid);
+		}
+		// After the selection, the lower middle is the max of the left part
+		double lower = m.get(0);
+		for (long i = 1; i < mid; i++) {
+			if (m.get(i) > lower) {
+				lower = m.get(i);
+			}
+		}
+		return (lower + m.get(mid)) / 2;
+	}
+	
+	/**
+	 * Get the k-th smallest element of an off-heap array, counting from 0, 
+	 * in linear time by introselect. The array is reordered so that 
+	 * m.get(k) is the k-th smallest element, the elements before it are 
+	 * not greater and the elements after it are not smaller. NaNs 
+	 * are greater than all the other elements.
+	 * @param m
+	 * @param k
+	 * @return
+	 */
+	public static double kthSmallestInPlace(OffHeapDoubleArray m, long k) {
+		if (k < 0 || k >= m.length()) {
+			throw new IllegalArgumentException("k out of range: " + k
+					+ " for length " + m.length());
+		}
+		long n = moveNaNsToEnd(m);
+		if (k >= n) {
+			return Double.NaN;
+		}
+		select(m, 0, n, k);
+		return m.get(k);
+	}
+	
+	/**
+	 * Get several quantiles of an off-heap array with linear 
+	 * interpolation. This method does not modify the original array, but 
+	 * selects on an off-heap copy.
+	 * @param m
+	 * @param qs quantiles between 0 and 1, such as 0.5 for the median
+	 * @return the quantiles in the same order as qs
+	 */
+	public static double[] quantiles(OffHeapDoubleArray m, double... qs) {
+		if (m.length() == 0) {
+			throw new IllegalArgumentException("quantiles of empty array");
+		}
+		return quantilesInPlace(m.copy(), QuantileInterpolation.LINEAR, qs);
+	}
+	
+	/**
+	 * Get several quantiles of an off-heap array, reordering the array. 
+	 * All the quantiles are selected together in one multi-select pass. 
+	 * See {@link #quantilesInPlace(double[], QuantileInterpolation, double...)}.
+	 * @param m
+	 * @param interpolation
+	 * @param qs quantiles between 0 and 1, such as 0.5 for the median
+	 * @return the quantiles in the same order as qs
+	 */
+	public static double[] quantilesInPlace(OffHeapDoubleArray m,
+			QuantileInterpolation interpolation, double... qs) {
+		long length = m.length();
+		if (length == 0) {
+			throw new IllegalArgumentException("quantiles of empty array");
+		}
+		long[] ranks = quantileRanks(length, qs);
+		long n = moveNaNsToEnd(m);
+		multiSelect(m, 0, n, ranks, 0, lowerBound(ranks, 0, ranks.length, n),
+				2 * (64 - Long.numberOfLeadingZeros(n)));
+		double[] result = new double[qs.length];
+		for (int i = 0; i < qs.length; i++) {
+			double position = qs[i] * (length - 1);
+			long lower = (long) Math.floor(position);
+			long upper = (long) Math.ceil(position);
+			result[i] = interpolation.interpolate(position,
+					lower < n ? m.get(lower) : Double.NaN,
+					upper < n ? m.get(upper) : Double.NaN);
+		}
+		return result;
+	}
+	
+	/**
+	 * Get the modes of an off-heap array, counted in a primitive hash 
+	 * table on the heap, which takes memory for every distinct element. 
+	 * This method does not modify the array. Elements are equal if they 
+	 * are equal as Doubles. If there are too many distinct elements for 
+	 * the table, the modes are found by 
+	 * {@link #modeInPlace(OffHeapDoubleArray)} on an off-heap copy.
+	 * @param m
+	 * @return the most frequent elements in ascending order
+	 */
+	public static double[] mode(OffHeapDoubleArray m) {
+		if (m.length() == 0) {
+			throw new IllegalArgumentException("mode of empty array");
+		}
+		OffHeapCountTable table = new OffHeapCountTable(
+				(int) Math.min(m.length(), INITIAL_COUNT_TABLE_KEYS));
+		for (long i = 0; i < m.length(); i++) {
+			if (table.isFull()) {
+				table = null;
+				try (OffHeapDoubleArray copy = m.copy()) {
+					return modeInPlace(copy);
+				}
+			}
+			table.increment(Double.doubleToLongBits(m.get(i)));
+		}
+		long[] bits = table.getModes();
+		double[] modes = new double[bits.length];
+		for (int i = 0; i < bits.length; i++) {
+			modes[i] = Double.longBitsToDouble(bits[i]);
+		}
+		Arrays.sort(modes);
+		return modes;
+	}
+	
+	/**
+	 * Get the modes of an off-heap array by heapsort, which needs no 
+	 * memory other than the result. The array is sorted, with the NaNs 
+	 * at the end. Elements are equal if they are equal as Doubles: all 
+	 * NaNs are equal, and -0.0 is not equal to 0.0.
+	 * @param m
+	 * @return the most frequent elements in ascending order
+	 */
+	public static double[] modeInPlace(OffHeapDoubleArray m) {
+		long length = m.length();
+		if (length == 0) {
+			throw new IllegalArgumentException("mode of empty array");
+		}
+		long n = moveNaNsToEnd(m);
+		heapSort(m, 0, n);
+		// The heapsort leaves -0.0 and 0.0 mixed, so move the -0.0s first
+		long zero = 0;
+		while (zero < n && m.get(zero) < 0) {
+			zero++;
+		}
+		for (long i = zero; i < n && m.get(i) == 0; i++) {
+			if (Double.doubleToLongBits(m.get(i)) < 0) {
+				m.swap(i, zero++);
+			}
+		}
+		long maxCount = 0;
+		long modeCount = 0;
+		for (long i = 0; i < length;) {
+			long j = i + 1;
+			while (j < length && Double.doubleToLongBits(m.get(j))
+					== Double.doubleToLongBits(m.get(i))) {
+				j++;
+			}
+			if (j - i > maxCount) {
+				maxCount = j - i;
+				modeCount = 1;
+			} else if (j - i == maxCount) {
+				modeCount++;
+			}
+			i = j;
+		}
+		double[] modes = new double[checkModeCount(modeCount)];
+		int k = 0;
+		for (long i = 0; i < length;) {
+			long j = i + 1;
+			while (j < length && Double.doubleToLongBits(m.get(j))
+					== Double.doubleToLongBits(m.get(i))) {
+				j++;
+			}
+			if (j - i == maxCount) {
+				modes[k++] = m.get(i);
+			}
+			i = j;
+		}
+		return modes;
+	}
+	
+	/**
+	 * Introselect on an off-heap range, which falls back to heapsort if 
+	 * the partitions keep being unbalanced
+	 * @param a
+	 * @param from
+	 * @param to
+	 * @param k
+	 */
+	protected static void select(OffHeapDoubleArray a, long from, long to, long k) {
+		int depth = 2 * (64 - Long.numberOfLeadingZeros(to - from));
+		while (to - from > INSERTION_SORT_THRESHOLD) {
+			if (depth-- == 0) {
+				heapSort(a, from, to);
+				return;
+			}
+			long[] bounds = partition(a, from, to);
+			if (k < bounds[0]) {
+				to = bounds[0];
+			} else if (k >= bounds[1]) {
+				from = bounds[1];
+			} else {
+				return;
+			}
+		}
+		insertionSort(a, from, to);
+	}
+	
+	/**
+	 * Select all the ranks in an off-heap range at once. See 
+	 * {@link #multiSelect(double[], int, int, int[], int, int, int)}.
+	 */
+	protected static void multiSelect(OffHeapDoubleArray a, long from, long to,
+			long[] ranks, int rFrom, int rTo, int depth) {
+		while (rFrom < rTo) {
+			if (to - from <= INSERTION_SORT_THRESHOLD) {
+				insertionSort(a, from, to);
+				return;
+			}
+			if (depth-- == 0) {
+				heapSort(a, from, to);
+				return;
+			}
+			long[] bounds = partition(a, from, to);
+			int r1 = lowerBound(ranks, rFrom, rTo, bounds[0]);
+			int r2 = lowerBound(ranks, r1, rTo, bounds[1]);
+			multiSelect(a, from, bounds[0], ranks, rFrom, r1, depth);
+			from = bounds[1];
+			rFrom = r2;
+		}
+	}
+	
+	/**
+	 * 3-way partition of an off-heap range around a pivot: [from, lt) 
+	 * &lt; pivot, [lt, gt) == pivot and [gt, to) &gt; pivot
+	 * @return {lt, gt}
+	 */
+	protected static long[] partition(OffHeapDoubleArray a, long from, long to) {
+		double pivot = pivot(a, from, to);
+		long lt = from;
+		long gt = to;
+		long i = from;
+		while (i < gt) {
+			double v = a.get(i);
+			if (v < pivot) {
+				a.set(i++, a.get(lt));
+				a.set(lt++, v);
+			} else if (v > pivot) {
+				a.set(i, a.get(--gt));
+				a.set(gt, v);
+			} else {
+				i++;
+			}
+		}
+		return new long[] {lt, gt};
+	}
+	
+	protected static double pivot(OffHeapDoubleArray a, long from, long to) {
+		long n = to - from;
+		long mid = from + n / 2;
+		if (n < NINTHER_THRESHOLD) {
+			return medianOf3(a.get(from), a.get(mid), a.get(to - 1));
+		}
+		long s = n / 8;
+		return medianOf3(
+				medianOf3(a.get(from), a.get(from + s), a.get(from + 2 * s)),
+				medianOf3(a.get(mid - s), a.get(mid), a.get(mid + s)),
+				medianOf3(a.get(to - 1 - 2 * s), a.get(to - 1 - s),
+						a.get(to - 1)));
+	}
+	
+	protected static void insertionSort(OffHeapDoubleArray a, long from, long to) {
+		for (long i = from + 1; i < to; i++) {
+			double v = a.get(i);
+			long j = i - 1;
+			while (j >= from && a.get(j) > v) {
+				a.set(j + 1, a.get(j));
+				j--;
+			}
+			a.set(j + 1, v);
+		}
+	}
+	
+	protected static void heapSort(OffHeapDoubleArray a, long from, long to) {
+		long n = to - from;
+		for (long i = n / 2 - 1; i >= 0; i--) {
+			siftDown(a, from, i, n);
+		}
+		for (long end = n - 1; end > 0; end--) {
+			a.swap(from, from + end);
+			siftDown(a, from, 0, end);
+		}
+	}
+	
+	protected static void siftDown(OffHeapDoubleArray a, long from, long i, long n) {
+		double v = a.get(from + i);
+		while (2 * i + 1 < n) {
+			long child = 2 * i + 1;
+			if (child + 1 < n && a.get(from + child + 1)
+					> a.get(from + child)) {
+				child++;
+			}
+			if (a.get(from + child) <= v) {
+				break;
+			}
+			a.set(from + i, a.get(from + child));
+			i = child;
+		}
+		a.set(from + i, v);
+	}
+	
+	/**
+	 * Get the mode of an array.
+	 * @param m
+	 * @return
+	 */
+	public static <T> List<T> mode(T[] m) {
+		if (m.length == 0) {
+			throw new IllegalArgumentException("mode of empty array");
+		}
+		List<T> modes = new ArrayList<T>();
+		Map<T, Integer> countMap = new HashMap<T, Integer>();
+		int maxCount = -1;
+		for (T t : m) {
+			int count = countMap.merge(t, 1, Integer::sum);
 			if (count > maxCount) {
 				maxCount = count;
 			}
@@ -0,0 +1,1309 @@
+package io.ologn.common.collect;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BinaryOperator;
+
+/**
+ * Parallel versions of the primitive array operations of 
+ * {@link OlognArrays} for very large arrays, on the common ForkJoinPool 
+ * or a specified pool. Arrays shorter than {@link #PARALLEL_CUTOFF} are 
+ * handed to the sequential versions, since splitting them costs more than 
+ * it saves.<br>
+ * min and max are reduced over ranges. mode counts every range in its own 
+ * primitive hash table and merges the tables. k-th smallest and median 
+ * sample the array to pick two pivots that bracket the rank, count the 
+ * elements below and between the pivots in parallel, and gather the 
+ * elements between the pivots in parallel. Only that small part of the 
+ * array is then selected, again in parallel if it is still large. The 
+ * original array is never modified.
+ * @author lisq199
+ */
+public class OlognParallelArrays {
+	
+	/**
+	 * Arrays shorter than this use the sequential versions
+	 */
+	public static final int PARALLEL_CUTOFF = 1 << 18;
+	
+	/**
+	 * The minimum number of elements of a task that is not split
+	 */
+	protected static final int MIN_LEAF_SIZE = 1 << 14;
+	
+	/**
+	 * How many leaf tasks per thread of the pool, for load balancing
+	 */
+	protected static final int LEAVES_PER_THREAD = 4;
+	
+	/**
+	 * The sample size for choosing selection pivots
+	 */
+	protected static final int SAMPLE_SIZE = 1 << 14;
+	
+	/**
+	 * How many standard deviations of the sample rank the pivots are away 
+	 * from the wanted rank. With 3, the pivots miss the rank about once in 
+	 * 700 selections, and the sequential version is used then.
+	 */
+	protected static final double PIVOT_MARGIN = 3;
+	
+	/**
+	 * Get the min of an array on the common pool. See 
+	 * {@link OlognArrays#min(int[])}.
+	 * @param m
+	 * @return
+	 */
+	public static int min(int[] m) {
+		return min(m, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the min of an array on a pool. See {@link OlognArrays#min(int[])}.
+	 * @param m
+	 * @param pool
+	 * @return
+	 */
+	public static int min(int[] m, ForkJoinPool pool) {
+		if (m.length < PARALLEL_CUTOFF) {
+			return OlognArrays.min(m);
+		}
+		return pool.invoke(new RangeTask<Integer>(0, m.length,
+				leafSize(m.length, pool), (from, to) -> min(m, from, to),
+				Math::min));
+	}
+	
+	/**
+	 * Get the max of an array on the common pool. See 
+	 * {@link OlognArrays#max(int[])}.
+	 * @param m
+	 * @return
+	 */
+	public static int max(int[] m) {
+		return max(m, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the max of an array on a pool. See {@link OlognArrays#max(int[])}.
+	 * @param m
+	 * @param pool
+	 * @return
+	 */
+	public static int max(int[] m, ForkJoinPool pool) {
+		if (m.length < PARALLEL_CUTOFF) {
+			return OlognArrays.max(m);
+		}
+		return pool.invoke(new RangeTask<Integer>(0, m.length,
+				leafSize(m.length, pool), (from, to) -> max(m, from, to),
+				Math::max));
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0, on the 
+	 * common pool. See {@link OlognArrays#kthSmallest(int[], int)}.
+	 * @param m
+	 * @param k
+	 * @return
+	 */
+	public static int kthSmallest(int[] m, int k) {
+		return kthSmallest(m, k, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0, on a 
+	 * pool. See {@link OlognArrays#kthSmallest(int[], int)}.
+	 * @param m
+	 * @param k
+	 * @param pool
+	 * @return
+	 */
+	public static int kthSmallest(int[] m, int k, ForkJoinPool pool) {
+		OlognArrays.checkK(m.length, k);
+		return select(m, k, pool, false);
+	}
+	
+	/**
+	 * Get the median of an array on the common pool. See 
+	 * {@link OlognArrays#median(int[], boolean)}.
+	 * @param m
+	 * @return
+	 */
+	public static int median(int[] m) {
+		return median(m, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the median of an array on a pool. See 
+	 * {@link OlognArrays#median(int[], boolean)}.
+	 * @param m
+	 * @param pool
+	 * @return
+	 */
+	public static int median(int[] m, ForkJoinPool pool) {
+		if (m.length < PARALLEL_CUTOFF) {
+			return OlognArrays.median(m, false);
+		}
+		int mid = m.length / 2;
+		int k1 = m.length % 2 == 1 ? mid : mid - 1;
+		int[] base = new int[1];
+		int[] c = candidates(m, k1, mid, pool, base);
+		if (c == null) {
+			return OlognArrays.medianInPlace(m.clone());
+		}
+		int upper = select(c, mid - base[0], pool, true);
+		if (k1 == mid) {
+			return upper;
+		}
+		// c is still a permutation of the candidates
+		int lower = select(c, k1 - base[0], pool, true);
+		return (lower + upper) / 2;
+	}
+	
+	/**
+	 * Get the modes of an array on the common pool. See 
+	 * {@link OlognArrays#mode(int[])}.
+	 * @param m
+	 * @return the most frequent elements in ascending order
+	 */
+	public static int[] mode(int[] m) {
+		return mode(m, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the modes of an array on a pool. Every range is counted in its 
+	 * own table, and the tables are merged. See 
+	 * {@link OlognArrays#mode(int[])}.
+	 * @param m
+	 * @param pool
+	 * @return the most frequent elements in ascending order
+	 */
+	public static int[] mode(int[] m, ForkJoinPool pool) {
+		if (m.length < PARALLEL_CUTOFF) {
+			return OlognArrays.mode(m);
+		}
+		IntCountTable table = pool.invoke(new RangeTask<IntCountTable>(0, m.length,
+				leafSize(m.length, pool), (from, to) -> count(m, from, to),
+				OlognParallelArrays::merge));
+		int[] modes = table.getModes();
+		Arrays.sort(modes);
+		return modes;
+	}
+	
+	/**
+	 * Select the k-th smallest element by narrowing the array down to 
+	 * candidates until it is short enough for the sequential version
+	 * @param m
+	 * @param k
+	 * @param pool
+	 * @param inPlace whether m can be reordered
+	 * @return
+	 */
+	protected static int select(int[] m, int k, ForkJoinPool pool,
+			boolean inPlace) {
+		while (m.length >= PARALLEL_CUTOFF) {
+			int[] base = new int[1];
+			int[] c = candidates(m, k, k, pool, base);
+			if (c == null) {
+				break;
+			}
+			m = c;
+			k -= base[0];
+			inPlace = true;
+		}
+		return inPlace ? OlognArrays.kthSmallestInPlace(m, k)
+				: OlognArrays.kthSmallest(m, k);
+	}
+	
+	/**
+	 * Gather the elements that can be the k1-th to the k2-th smallest: 
+	 * pick two pivots around the ranks from a sample, count the elements 
+	 * below and between them, and gather the elements between them.
+	 * @param m
+	 * @param k1
+	 * @param k2
+	 * @param pool
+	 * @param base receives the rank of the first candidate in m
+	 * @return the candidates, or null if the pivots missed the ranks or 
+	 * did not narrow the array down
+	 */
+	protected static int[] candidates(int[] m, int k1, int k2,
+			ForkJoinPool pool, int[] base) {
+		int n = m.length;
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int[] sample = new int[SAMPLE_SIZE];
+		int s = 0;
+		for (int i = 0; i < SAMPLE_SIZE; i++) {
+			int v = m[random.nextInt(n)];
+			sample[s++] = v;
+		}
+		Arrays.sort(sample, 0, s);
+		int margin = (int) Math.ceil(PIVOT_MARGIN * Math.sqrt(s));
+		int low = sample[Math.max(0, (int) ((double) k1 * s / n) - margin)];
+		int high = sample[Math.min(s - 1,
+				(int) ((double) k2 * s / n) + margin)];
+		int leafSize = leafSize(n, pool);
+		long[] counts = pool.invoke(new RangeTask<long[]>(0, n, leafSize,
+				(from, to) -> count(m, from, to, low, high),
+				OlognParallelArrays::add));
+		long less = counts[0];
+		long between = counts[1];
+		if (k1 < less || k2 >= less + between || between == n) {
+			return null;
+		}
+		base[0] = (int) less;
+		return pool.invoke(new RangeTask<int[]>(0, n, leafSize,
+				(from, to) -> gather(m, from, to, low, high),
+				OlognParallelArrays::concat));
+	}
+	
+	protected static int min(int[] m, int from, int to) {
+		int min = m[from];
+		for (int i = from + 1; i < to; i++) {
+			min = Math.min(min, m[i]);
+		}
+		return min;
+	}
+	
+	protected static int max(int[] m, int from, int to) {
+		int max = m[from];
+		for (int i = from + 1; i < to; i++) {
+			max = Math.max(max, m[i]);
+		}
+		return max;
+	}
+	
+	/**
+	 * Count the elements of a range below low and between low and high
+	 * @return {less, between}
+	 */
+	protected static long[] count(int[] m, int from, int to, int low,
+			int high) {
+		long less = 0;
+		long between = 0;
+		for (int i = from; i < to; i++) {
+			int v = m[i];
+			if (v < low) {
+				less++;
+			} else if (v <= high) {
+				between++;
+			}
+		}
+		return new long[] {less, between};
+	}
+	
+	/**
+	 * Copy the elements of a range between low and high
+	 */
+	protected static int[] gather(int[] m, int from, int to, int low,
+			int high) {
+		int n = 0;
+		for (int i = from; i < to; i++) {
+			if (m[i] >= low && m[i] <= high) {
+				n++;
+			}
+		}
+		int[] result = new int[n];
+		n = 0;
+		for (int i = from; i < to; i++) {
+			if (m[i] >= low && m[i] <= high) {
+				result[n++] = m[i];
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Count the elements of a range in a new table
+	 */
+	protected static IntCountTable count(int[] m, int from, int to) {
+		IntCountTable table = new IntCountTable(
+				Math.min(to - from, OlognArrays.INITIAL_COUNT_TABLE_KEYS));
+		for (int i = from; i < to; i++) {
+			table.increment(m[i]);
+		}
+		return table;
+	}
+	
+	/**
+	 * Get the min of an array on the common pool. See 
+	 * {@link OlognArrays#min(long[])}.
+	 * @param m
+	 * @return
+	 */
+	public static long min(long[] m) {
+		return min(m, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the min of an array on a pool. See {@link OlognArrays#min(long[])}.
+	 * @param m
+	 * @param pool
+	 * @return
+	 */
+	public static long min(long[] m, ForkJoinPool pool) {
+		if (m.length < PARALLEL_CUTOFF) {
+			return OlognArrays.min(m);
+		}
+		return pool.invoke(new RangeTask<Long>(0, m.length,
+				leafSize(m.length, pool), (from, to) -> min(m, from, to),
+				Math::min));
+	}
+	
+	/**
+	 * Get the max of an array on the common pool. See 
+	 * {@link OlognArrays#max(long[])}.
+	 * @param m
+	 * @return
+	 */
+	public static long max(long[] m) {
+		return max(m, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the max of an array on a pool. See {@link OlognArrays#max(long[])}.
+	 * @param m
+	 * @param pool
+	 * @return
+	 */
+	public static long max(long[] m, ForkJoinPool pool) {
+		if (m.length < PARALLEL_CUTOFF) {
+			return OlognArrays.max(m);
+		}
+		return pool.invoke(new RangeTask<Long>(0, m.length,
+				leafSize(m.length, pool), (from, to) -> max(m, from, to),
+				Math::max));
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0, on the 
+	 * common pool. See {@link OlognArrays#kthSmallest(long[], int)}.
+	 * @param m
+	 * @param k
+	 * @return
+	 */
+	public static long kthSmallest(long[] m, int k) {
+		return kthSmallest(m, k, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0, on a 
+	 * pool. See {@link OlognArrays#kthSmallest(long[], int)}.
+	 * @param m
+	 * @param k
+	 * @param pool
+	 * @return
+	 */
+	public static long kthSmallest(long[] m, int k, ForkJoinPool pool) {
+		OlognArrays.checkK(m.length, k);
+		return select(m, k, pool, false);
+	}
+	
+	/**
+	 * Get the median of an array on the common pool. See 
+	 * {@link OlognArrays#median(long[], boolean)}.
+	 * @param m
+	 * @return
+	 */
+	public static long median(long[] m) {
+		return median(m, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the median of an array on a pool. See 
+	 * {@link OlognArrays#median(long[], boolean)}.
+	 * @param m
+	 * @param pool
+	 * @return
+	 */
+	public static long median(long[] m, ForkJoinPool pool) {
+		if (m.length < PARALLEL_CUTOFF) {
+			return OlognArrays.median(m, false);
+		}
+		int mid = m.length / 2;
+		int k1 = m.length % 2 == 1 ? mid : mid - 1;
+		int[] base = new int[1];
+		long[] c = candidates(m, k1, mid, pool, base);
+		if (c == null) {
+			return OlognArrays.medianInPlace(m.clone());
+		}
+		long upper = select(c, mid - base[0], pool, true);
+		if (k1 == mid) {
+			return upper;
+		}
+		// c is still a permutation of the candidates
+		long lower = select(c, k1 - base[0], pool, true);
+		return (lower + upper) / 2;
+	}
+	
+	/**
+	 * Get the modes of an array on the common pool. See 
+	 * {@link OlognArrays#mode(long[])}.
+	 * @param m
+	 * @return the most frequent elements in ascending order
+	 */
+	public static long[] mode(long[] m) {
+		return mode(m, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the modes of an array on a pool. Every range is counted in its 
+	 * own table, and the tables are merged. See 
+	 * {@link OlognArrays#mode(long[])}.
+	 * @param m
+	 * @param pool
+	 * @return the most frequent elements in ascending order
+	 */
+	public static long[] mode(long[] m, ForkJoinPool pool) {
+		if (m.length < PARALLEL_CUTOFF) {
+			return OlognArrays.mode(m);
+		}
+		LongCountTable table = pool.invoke(new RangeTask<LongCountTable>(0, m.length,
+				leafSize(m.length, pool), (from, to) -> count(m, from, to),
+				OlognParallelArrays::merge));
+		long[] modes = table.getModes();
+		Arrays.sort(modes);
+		return modes;
+	}
+	
+	/**
+	 * Select the k-th smallest element by narrowing the array down to 
+	 * candidates until it is short enough for the sequential version
+	 * @param m
+	 * @param k
+	 * @param pool
+	 * @param inPlace whether m can be reordered
+	 * @return
+	 */
+	protected static long select(long[] m, int k, ForkJoinPool pool,
+			boolean inPlace) {
+		while (m.length >= PARALLEL_CUTOFF) {
+			int[] base = new int[1];
+			long[] c = candidates(m, k, k, pool, base);
+			if (c == null) {
+				break;
+			}
+			m = c;
+			k -= base[0];
+			inPlace = true;
+		}
+		return inPlace ? OlognArrays.kthSmallestInPlace(m, k)
+				: OlognArrays.kthSmallest(m, k);
+	}
+	
+	/**
+	 * Gather the elements that can be the k1-th to the k2-th smallest: 
+	 * pick two pivots around the ranks from a sample, count the elements 
+	 * below and between them, and gather the elements between them.
+	 * @param m
+	 * @param k1
+	 * @param k2
+	 * @param pool
+	 * @param base receives the rank of the first candidate in m
+	 * @return the candidates, or null if the pivots missed the ranks or 
+	 * did not narrow the array down
+	 */
+	protected static long[] candidates(long[] m, int k1, int k2,
+			ForkJoinPool pool, int[] base) {
+		int n = m.length;
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long[] sample = new long[SAMPLE_SIZE];
+		int s = 0;
+		for (int i = 0; i < SAMPLE_SIZE; i++) {
+			long v = m[random.nextInt(n)];
+			sample[s++] = v;
+		}
+		Arrays.sort(sample, 0, s);
+		int margin = (int) Math.ceil(PIVOT_MARGIN * Math.sqrt(s));
+		long low = sample[Math.max(0, (int) ((double) k1 * s / n) - margin)];
+		long high = sample[Math.min(s - 1,
+				(int) ((double) k2 * s / n) + margin)];
+		int leafSize = leafSize(n, pool);
+		long[] counts = pool.invoke(new RangeTask<long[]>(0, n, leafSize,
+				(from, to) -> count(m, from, to, low, high),
+				OlognParallelArrays::add));
+		long less = counts[0];
+		long between = counts[1];
+		if (k1 < less || k2 >= less + between || between == n) {
+			return null;
+		}
+		base[0] = (int) less;
+		return pool.invoke(new RangeTask<long[]>(0, n, leafSize,
+				(from, to) -> gather(m, from, to, low, high),
+				OlognParallelArrays::concat));
+	}
+	
+	protected static long min(long[] m, int from, int to) {
+		long min = m[from];
+		for (int i = from + 1; i < to; i++) {
+			min = Math.min(min, m[i]);
+		}
+		return min;
+	}
+	
+	protected static long max(long[] m, int from, int to) {
+		long max = m[from];
+		for (int i = from + 1; i < to; i++) {
+			max = Math.max(max, m[i]);
+		}
+		return max;
+	}
+	
+	/**
+	 * Count the elements of a range below low and between low and high
+	 * @return {less, between}
+	 */
+	protected static long[] count(long[] m, int from, int to, long low,
+			long high) {
+		long less = 0;
+		long between = 0;
+		for (int i = from; i < to; i++) {
+			long v = m[i];
+			if (v < low) {
+				less++;
+			} else if (v <= high) {
+				between++;
+			}
+		}
+		return new long[] {less, between};
+	}
+	
+	/**
+	 * Copy the elements of a range between low and high
+	 */
+	protected static long[] gather(long[] m, int from, int to, long low,
+			long high) {
+		int n = 0;
+		for (int i = from; i < to; i++) {
+			if (m[i] >= low && m[i] <= high) {
+				n++;
+			}
+		}
+		long[] result = new long[n];
+		n = 0;
+		for (int i = from; i < to; i++) {
+			if (m[i] >= low && m[i] <= high) {
+				result[n++] = m[i];
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Count the elements of a range in a new table
+	 */
+	protected static LongCountTable count(long[] m, int from, int to) {
+		LongCountTable table = new LongCountTable(
+				Math.min(to - from, OlognArrays.INITIAL_COUNT_TABLE_KEYS));
+		for (int i = from; i < to; i++) {
+			table.increment(m[i]);
+		}
+		return table;
+	}
+	
+	/**
+	 * Get the min of an array on the common pool. See 
+	 * {@link OlognArrays#min(float[])}.
+	 * @param m
+	 * @return
+	 */
+	public static float min(float[] m) {
+		return min(m, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the min of an array on a pool. See {@link OlognArrays#min(float[])}.
+	 * @param m
+	 * @param pool
+	 * @return
+	 */
+	public static float min(float[] m, ForkJoinPool pool) {
+		if (m.length < PARALLEL_CUTOFF) {
+			return OlognArrays.min(m);
+		}
+		return pool.invoke(new RangeTask<Float>(0, m.length,
+				leafSize(m.length, pool), (from, to) -> min(m, from, to),
+				Math::min));
+	}
+	
+	/**
+	 * Get the max of an array on the common pool. See 
+	 * {@link OlognArrays#max(float[])}.
+	 * @param m
+	 * @return
+	 */
+	public static float max(float[] m) {
+		return max(m, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the max of an array on a pool. See {@link OlognArrays#max(float[])}.
+	 * @param m
+	 * @param pool
+	 * @return
+	 */
+	public static float max(float[] m, ForkJoinPool pool) {
+		if (m.length < PARALLEL_CUTOFF) {
+			return OlognArrays.max(m);
+		}
+		return pool.invoke(new RangeTask<Float>(0, m.length,
+				leafSize(m.length, pool), (from, to) -> max(m, from, to),
+				Math::max));
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0, on the 
+	 * common pool. See {@link OlognArrays#kthSmallest(float[], int)}.
+	 * @param m
+	 * @param k
+	 * @return
+	 */
+	public static float kthSmallest(float[] m, int k) {
+		return kthSmallest(m, k, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0, on a 
+	 * pool. See {@link OlognArrays#kthSmallest(float[], int)}.
+	 * @param m
+	 * @param k
+	 * @param pool
+	 * @return
+	 */
+	public static float kthSmallest(float[] m, int k, ForkJoinPool pool) {
+		OlognArrays.checkK(m.length, k);
+		return select(m, k, pool, false);
+	}
+	
+	/**
+	 * Get the median of an array on the common pool. See 
+	 * {@link OlognArrays#median(float[], boolean)}.
+	 * @param m
+	 * @return
+	 */
+	public static float median(float[] m) {
+		return median(m, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the median of an array on a pool. See 
+	 * {@link OlognArrays#median(float[], boolean)}.
+	 * @param m
+	 * @param pool
+	 * @return
+	 */
+	public static float median(float[] m, ForkJoinPool pool) {
+		if (m.length < PARALLEL_CUTOFF) {
+			return OlognArrays.median(m, false);
+		}
+		int mid = m.length / 2;
+		int k1 = m.length % 2 == 1 ? mid : mid - 1;
+		int[] base = new int[1];
+		float[] c = candidates(m, k1, mid, pool, base);
+		if (c == null) {
+			return OlognArrays.medianInPlace(m.clone());
+		}
+		float upper = select(c, mid - base[0], pool, true);
+		if (k1 == mid) {
+			return upper;
+		}
+		// c is still a permutation of the candidates
+		float lower = select(c, k1 - base[0], pool, true);
+		return (lower + upper) / 2;
+	}
+	
+	/**
+	 * Get the modes of an array on the common pool. See 
+	 * {@link OlognArrays#mode(float[])}.
+	 * @param m
+	 * @return the most frequent elements in ascending order
+	 */
+	public static float[] mode(float[] m) {
+		return mode(m, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the modes of an array on a pool. Every range is counted in its 
+	 * own table, and the tables are merged. See 
+	 * {@link OlognArrays#mode(float[])}.
+	 * @param m
+	 * @param pool
+	 * @return the most frequent elements in ascending order
+	 */
+	public static float[] mode(float[] m, ForkJoinPool pool) {
+		if (m.length < PARALLEL_CUTOFF) {
+			return OlognArrays.mode(m);
+		}
+		IntCountTable table = pool.invoke(new RangeTask<IntCountTable>(0, m.length,
+				leafSize(m.length, pool), (from, to) -> count(m, from, to),
+				OlognParallelArrays::merge));
+		int[] bits = table.getModes();
+		float[] modes = new float[bits.length];
+		for (int i = 0; i < bits.length; i++) {
+			modes[i] = Float.intBitsToFloat(bits[i]);
+		}
+		Arrays.sort(modes);
+		return modes;
+	}
+	
+	/**
+	 * Select the k-th smallest element by narrowing the array down to 
+	 * candidates until it is short enough for the sequential version
+	 * @param m
+	 * @param k
+	 * @param pool
+	 * @param inPlace whether m can be reordered
+	 * @return
+	 */
+	protected static float select(float[] m, int k, ForkJoinPool pool,
+			boolean inPlace) {
+		while (m.length >= PARALLEL_CUTOFF) {
+			int[] base = new int[1];
+			float[] c = candidates(m, k, k, pool, base);
+			if (c == null) {
+				break;
+			}
+			m = c;
+			k -= base[0];
+			inPlace = true;
+		}
+		return inPlace ? OlognArrays.kthSmallestInPlace(m, k)
+				: OlognArrays.kthSmallest(m, k);
+	}
+	
+	/**
+	 * Gather the elements that can be the k1-th to the k2-th smallest: 
+	 * pick two pivots around the ranks from a sample, count the elements 
+	 * below and between them, and gather the elements between them.
+	 * @param m
+	 * @param k1
+	 * @param k2
+	 * @param pool
+	 * @param base receives the rank of the first candidate in m
+	 * @return the candidates, or null if the pivots missed the ranks or 
+	 * did not narrow the array down
+	 */
+	protected static float[] candidates(float[] m, int k1, int k2,
+			ForkJoinPool pool, int[] base) {
+		int n = m.length;
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		float[] sample = new float[SAMPLE_SIZE];
+		int s = 0;
+		for (int i = 0; i < SAMPLE_SIZE; i++) {
+			float v = m[random.nextInt(n)];
+			if (v != v) {
+				continue;
+			}
+			sample[s++] = v;
+		}
+		if (s == 0) {
+			return null;
+		}
+		Arrays.sort(sample, 0, s);
+		int margin = (int) Math.ceil(PIVOT_MARGIN * Math.sqrt(s));
+		float low = sample[Math.max(0, (int) ((double) k1 * s / n) - margin)];
+		float high = sample[Math.min(s - 1,
+				(int) ((double) k2 * s / n) + margin)];
+		int leafSize = leafSize(n, pool);
+		long[] counts = pool.invoke(new RangeTask<long[]>(0, n, leafSize,
+				(from, to) -> count(m, from, to, low, high),
+				OlognParallelArrays::add));
+		long less = counts[0];
+		long between = counts[1];
+		long nans = counts[2];
+		if (k1 >= n - nans) {
+			// NaNs are greater than all the other elements
+			base[0] = k1;
+			float[] result = new float[k2 - k1 + 1];
+			Arrays.fill(result, Float.NaN);
+			return result;
+		}
+		if (k1 < less || k2 >= less + between || between == n) {
+			return null;
+		}
+		base[0] = (int) less;
+		return pool.invoke(new RangeTask<float[]>(0, n, leafSize,
+				(from, to) -> gather(m, from, to, low, high),
+				OlognParallelArrays::concat));
+	}
+	
+	protected static float min(float[] m, int from, int to) {
+		float min = m[from];
+		for (int i = from + 1; i < to; i++) {
+			min = Math.min(min, m[i]);
+		}
+		return min;
+	}
+	
+	protected static float max(float[] m, int from, int to) {
+		float max = m[from];
+		for (int i = from + 1; i < to; i++) {
+			max = Math.max(max, m[i]);
+		}
+		return max;
+	}
+	
+	/**
+	 * Count the elements of a range below low and between low and high
+	 * @return {less, between, NaNs}
+	 */
+	protected static long[] count(float[] m, int from, int to, float low,
+			float high) {
+		long less = 0;
+		long between = 0;
+		long nans = 0;
+		for (int i = from; i < to; i++) {
+			float v = m[i];
+			if (v < low) {
+				less++;
+			} else if (v <= high) {
+				between++;
+			} else if (v != v) {
+				nans++;
+			}
+		}
+		return new long[] {less, between, nans};
+	}
+	
+	/**
+	 * Copy the elements of a range between low and high
+	 */
+	protected static float[] gather(float[] m, int from, int to, float low,
+			float high) {
+		int n = 0;
+		for (int i = from; i < to; i++) {
+			if (m[i] >= low && m[i] <= high) {
+				n++;
+			}
+		}
+		float[] result = new float[n];
+		n = 0;
+		for (int i = from; i < to; i++) {
+			if (m[i] >= low && m[i] <= high) {
+				result[n++] = m[i];
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Count the elements of a range in a new table
+	 */
+	protected static IntCountTable count(float[] m, int from, int to) {
+		IntCountTable table = new IntCountTable(
+				Math.min(to - from, OlognArrays.INITIAL_COUNT_TABLE_KEYS));
+		for (int i = from; i < to; i++) {
+			table.increment(Float.floatToIntBits(m[i]));
+		}
+		return table;
+	}
+	
+	/**
+	 * Get the min of an array on the common pool. See 
+	 * {@link OlognArrays#min(double[])}.
+	 * @param m
+	 * @return
+	 */
+	public static double min(double[] m) {
+		return min(m, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the min of an array on a pool. See {@link OlognArrays#min(double[])}.
+	 * @param m
+	 * @param pool
+	 * @return
+	 */
+	public static double min(double[] m, ForkJoinPool pool) {
+		if (m.length < PARALLEL_CUTOFF) {
+			return OlognArrays.min(m);
+		}
+		return pool.invoke(new RangeTask<Double>(0, m.length,
+				leafSize(m.length, pool), (from, to) -> min(m, from, to),
+				Math::min));
+	}
+	
+	/**
+	 * Get the max of an array on the common pool. See 
+	 * {@link OlognArrays#max(double[])}.
+	 * @param m
+	 * @return
+	 */
+	public static double max(double[] m) {
+		return max(m, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the max of an array on a pool. See {@link OlognArrays#max(double[])}.
+	 * @param m
+	 * @param pool
+	 * @return
+	 */
+	public static double max(double[] m, ForkJoinPool pool) {
+		if (m.length < PARALLEL_CUTOFF) {
+			return OlognArrays.max(m);
+		}
+		return pool.invoke(new RangeTask<Double>(0, m.length,
+				leafSize(m.length, pool), (from, to) -> max(m, from, to),
+				Math::max));
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0, on the 
+	 * common pool. See {@link OlognArrays#kthSmallest(double[], int)}.
+	 * @param m
+	 * @param k
+	 * @return
+	 */
+	public static double kthSmallest(double[] m, int k) {
+		return kthSmallest(m, k, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the k-th smallest element of an array, counting from 0, on a 
+	 * pool. See {@link OlognArrays#kthSmallest(double[], int)}.
+	 * @param m
+	 * @param k
+	 * @param pool
+	 * @return
+	 */
+	public static double kthSmallest(double[] m, int k, ForkJoinPool pool) {
+		OlognArrays.checkK(m.length, k);
+		return select(m, k, pool, false);
+	}
+	
+	/**
+	 * Get the median of an array on the common pool. See 
+	 * {@link OlognArrays#median(double[], boolean)}.
+	 * @param m
+	 * @return
+	 */
+	public static double median(double[] m) {
+		return median(m, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the median of an array on a pool. See 
+	 * {@link OlognArrays#median(double[], boolean)}.
+	 * @param m
+	 * @param pool
+	 * @return
+	 */
+	public static double median(double[] m, ForkJoinPool pool) {
+		if (m.length < PARALLEL_CUTOFF) {
+			return OlognArrays.median(m, false);
+		}
+		int mid = m.length / 2;
+		int k1 = m.length % 2 == 1 ? mid : mid - 1;
+		int[] base = new int[1];
+		double[] c = candidates(m, k1, mid, pool, base);
+		if (c == null) {
+			return OlognArrays.medianInPlace(m.clone());
+		}
+		double upper = select(c, mid - base[0], pool, true);
+		if (k1 == mid) {
+			return upper;
+		}
+		// c is still a permutation of the candidates
+		double lower = select(c, k1 - base[0], pool, true);
+		return (lower + upper) / 2;
+	}
+	
+	/**
+	 * Get the modes of an array on the common pool. See 
+	 * {@link OlognArrays#mode(double[])}.
+	 * @param m
+	 * @return the most frequent elements in ascending order
+	 */
+	public static double[] mode(double[] m) {
+		return mode(m, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Get the modes of an array on a pool. Every range is counted in its 
+	 * own table, and the tables are merged. See 
+	 * {@link OlognArrays#mode(double[])}.
+	 * @param m
+	 * @param pool
+	 * @return the most frequent elements in ascending order
+	 */
+	public static double[] mode(double[] m, ForkJoinPool pool) {
+		if (m.length < PARALLEL_CUTOFF) {
+			return OlognArrays.mode(m);
+		}
+		LongCountTable table = pool.invoke(new RangeTask<LongCountTable>(0, m.length,
+				leafSize(m.length, pool), (from, to) -> count(m, from, to),
+				OlognParallelArrays::merge));
+		long[] bits = table.getModes();
+		double[] modes = new double[bits.length];
+		for (int i = 0; i < bits.length; i++) {
+			modes[i] = Double.longBitsToDouble(bits[i]);
+		}
+		Arrays.sort(modes);
+		return modes;
+	}
+	
+	/**
+	 * Select the k-th smallest element by narrowing the array down to 
+	 * candidates until it is short enough for the sequential version
+	 * @param m
+	 * @param k
+	 * @param pool
+	 * @param inPlace whether m can be reordered
+	 * @return
+	 */
+	protected static double select(double[] m, int k, ForkJoinPool pool,
+			boolean inPlace) {
+		while (m.length >= PARALLEL_CUTOFF) {
+			int[] base = new int[1];
+			double[] c = candidates(m, k, k, pool, base);
+			if (c == null) {
+				break;
+			}
+			m = c;
+			k -= base[0];
+			inPlace = true;
+		}
+		return inPlace ? OlognArrays.kthSmallestInPlace(m, k)
+				: OlognArrays.kthSmallest(m, k);
+	}
+	
+	/**
+	 * Gather the elements that can be the k1-th to the k2-th smallest: 
+	 * pick two pivots around the ranks from a sample, count the elements 
+	 * below and between them, and gather the elements between them.
+	 * @param m
+	 * @param k1
+	 * @param k2
+	 * @param pool
+	 * @param base receives the rank of the first candidate in m
+	 * @return the candidates, or null if the pivots missed the ranks or 
+	 * did not narrow the array down
+	 */
+	protected static double[] candidates(double[] m, int k1, int k2,
+			ForkJoinPool pool, int[] base) {
+		int n = m.length;
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		double[] sample = new double[SAMPLE_SIZE];
+		int s = 0;
+		for (int i = 0; i < SAMPLE_SIZE; i++) {
+			double v = m[random.nextInt(n)];
+			if (v != v) {
+				continue;
+			}
+			sample[s++] = v;
+		}
+		if (s == 0) {
+			return null;
+		}
+		Arrays.sort(sample, 0, s);
+		int margin = (int) Math.ceil(PIVOT_MARGIN * Math.sqrt(s));
+		double low = sample[Math.max(0, (int) ((double) k1 * s / n) - margin)];
+		double high = sample[Math.min(s - 1,
+				(int) ((double) k2 * s / n) + margin)];
+		int leafSize = leafSize(n, pool);
+		long[] counts = pool.invoke(new RangeTask<long[]>(0, n, leafSize,
+				(from, to) -> count(m, from, to, low, high),
+				OlognParallelArrays::add));
+		long less = counts[0];
+		long between = counts[1];
+		long nans = counts[2];
+		if (k1 >= n - nans) {
+			// NaNs are greater than all the other elements
+			base[0] = k1;
+			double[] result = new double[k2 - k1 + 1];
+			Arrays.fill(result, Double.NaN);
+			return result;
+		}
+		if (k1 < less || k2 >= less + between || between == n) {
+			return null;
+		}
+		base[0] = (int) less;
+		return pool.invoke(new RangeTask<double[]>(0, n, leafSize,
+				(from, to) -> gather(m, from, to, low, high),
+				OlognParallelArrays::concat));
+	}
+	
+	protected static double min(double[] m, int from, int to) {
+		double min = m[from];
+		for (int i = from + 1; i < to; i++) {
+			min = Math.min(min, m[i]);
+		}
+		return min;
+	}
+	
+	protected static double max(double[] m, int from, int to) {
+		double max = m[from];
+		for (int i = from + 1; i < to; i++) {
+			max = Math.max(max, m[i]);
+		}
+		return max;
+	}
+	
+	/**
+	 * Count the elements of a range below low and between low and high
+	 * @return {less, between, NaNs}
+	 */
+	protected static long[] count(double[] m, int from, int to, double low,
+			double high) {
+		long less = 0;
+		long between = 0;
+		long nans = 0;
+		for (int i = from; i < to; i++) {
+			double v = m[i];
+			if (v < low) {
+				less++;
+			} else if (v <= high) {
+				between++;
+			} else if (v != v) {
+				nans++;
+			}
+		}
+		return new long[] {less, between, nans};
+	}
+	
+	/**
+	 * Copy the elements of a range between low and high
+	 */
+	protected static double[] gather(double[] m, int from, int to, double low,
+			double high) {
+		int n = 0;
+		for (int i = from; i < to; i++) {
+			if (m[i] >= low && m[i] <= high) {
+				n++;
+			}
+		}
+		double[] result = new double[n];
+		n = 0;
+		for (int i = from; i < to; i++) {
+			if (m[i] >= low && m[i] <= high) {
+				result[n++] = m[i];
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Count the elements of a range in a new table
+	 */
+	protected static LongCountTable count(double[] m, int from, int to) {
+		LongCountTable table = new LongCountTable(
+				Math.min(to - from, OlognArrays.INITIAL_COUNT_TABLE_KEYS));
+		for (int i = from; i < to; i++) {
+			table.increment(Double.doubleToLongBits(m[i]));
+		}
+		return table;
+	}
+	
+	/**
+	 * Merge the smaller table into the larger one
+	 */
+	protected static IntCountTable merge(IntCountTable a, IntCountTable b) {
+		if (a.size() < b.size()) {
+			b.addAll(a);
+			return b;
+		}
+		a.addAll(b);
+		return a;
+	}
+	
+	/**
+	 * Merge the smaller table into the larger one
+	 */
+	protected static LongCountTable merge(LongCountTable a,
+			LongCountTable b) {
+		if (a.size() < b.size()) {
+			b.addAll(a);
+			return b;
+		}
+		a.addAll(b);
+		return a;
+	}
+	
+	protected static long[] add(long[] a, long[] b) {
+		for (int i = 0; i < a.length; i++) {
+			a[i] += b[i];
+		}
+		return a;
+	}
+	
+	/**
+	 * Concatenate two primitive arrays of the same type
+	 */
+	@SuppressWarnings("unchecked")
+	protected static <A> A concat(A a, A b) {
+		int na = Array.getLength(a);
+		int nb = Array.getLength(b);
+		if (nb == 0) {
+			return a;
+		} else if (na == 0) {
+			return b;
+		}
+		A c = (A) Array.newInstance(a.getClass().getComponentType(),
+				na + nb);
+		System.arraycopy(a, 0, c, 0, na);
+		System.arraycopy(b, 0, c, na, nb);
+		return c;
+	}
+	
+	/**
+	 * Split the array into about {@link #LEAVES_PER_THREAD} leaves per 
+	 * thread, but not smaller than {@link #MIN_LEAF_SIZE}
+	 */
+	protected static int leafSize(int length, ForkJoinPool pool) {
+		return Math.max(MIN_LEAF_SIZE,
+				length / (pool.getParallelism() * LEAVES_PER_THREAD));
+	}
+	
+	/**
+	 * Computes a result for a range of an array
+	 */
+	@FunctionalInterface
+	protected interface RangeFunction<R> {
+		
+		R apply(int from, int to);
+		
+	}
+	
+	/**
+	 * Splits a range in halves until it is not larger than the leaf size, 
+	 * computes the leaves and combines the results in order
+	 */
+	protected static class RangeTask<R> extends RecursiveTask<R> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		protected final int from;
+		protected final int to;
+		protected final int leafSize;
+		protected final RangeFunction<R> leaf;
+		protected final BinaryOperator<R> combiner;
+		
+		protected RangeTask(int from, int to, int leafSize,
+				RangeFunction<R> leaf, BinaryOperator<R> combiner) {
+			this.from = from;
+			this.to = to;
+			this.leafSize = leafSize;
+			this.leaf = leaf;
+			this.combiner = combiner;
+		}
+		
+		@Override
+		protected R compute() {
+			if (to - from <= leafSize) {
+				return leaf.apply(from, to);
+			}
+			int mid = (from + to) >>> 1;
+			RangeTask<R> left = new RangeTask<R>(from, mid, leafSize, leaf,
+					combiner);
+			left.fork();
+			R right = new RangeTask<R>(mid, to, leafSize, leaf, combiner)
+					.compute();
+			return combiner.apply(left.join(), right);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,75 @@
+package io.ologn.common.collect;
+
+/**
+ * How a quantile is computed when it falls between two elements of the
+ * sorted data. The position of quantile q in n sorted elements is
+ * q * (n - 1), with the lower element at the floor of the position and
+ * the upper element at the ceiling. These are the same methods as the
+ * interpolation options of NumPy's percentile.<br>
+ * See {@link OlognArrays#quantiles(double[], QuantileInterpolation, double...)}.
+ * @author lisq199
+ */
+public enum QuantileInterpolation {
+
+	/**
+	 * The lower element plus the fraction of the position times the
+	 * difference of the elements
+	 */
+	LINEAR {
+		@Override
+		public double interpolate(double position, double lower,
+				double upper) {
+			if (lower == upper) {
+				// Also avoids inf - inf
+				return lower;
+			}
+			return lower + (position - Math.floor(position)) * (upper - lower);
+		}
+	},
+	LOWER {
+		@Override
+		public double interpolate(double position, double lower,
+				double upper) {
+			return lower;
+		}
+	},
+	HIGHER {
+		@Override
+		public double interpolate(double position, double lower,
+				double upper) {
+			return upper;
+		}
+	},
+	/**
+	 * The nearest element, or the one with the even index at exactly half
+	 */
+	NEAREST {
+		@Override
+		public double interpolate(double position, double lower,
+				double upper) {
+			return Math.rint(position) == Math.floor(position) ? lower
+					: upper;
+		}
+	},
+	/**
+	 * The average of the lower and upper elements
+	 */
+	MIDPOINT {
+		@Override
+		public double interpolate(double position, double lower,
+				double upper) {
+			return lower == upper ? lower : (lower + upper) / 2;
+		}
+	};
+
+	/**
+	 * Compute a quantile from the two elements around its position
+	 * @param position the position of the quantile in the sorted data
+	 * @param lower the element at the floor of the position
+	 * @param upper the element at the ceiling of the position
+	 * @return
+	 */
+	public abstract double interpolate(double position, double lower,
+			double upper);
+
+}
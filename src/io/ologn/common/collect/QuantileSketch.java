@@ -0,0 +1,489 @@
+package io.ologn.common.collect;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * KLL sketch for estimating the quantiles and the CDF of a stream of 
+ * doubles in bounded memory, for streams that are too long to keep in an 
+ * array for {@link OlognArrays#quantiles(double[], double...)}.<br>
+ * The values are kept in levels, where a value of level h stands for 2^h 
+ * values of the stream. When the sketch is full, the lowest full level is 
+ * sorted and every other value of it, starting at a random one of the 
+ * first two, is promoted to the next level. The capacities of the levels 
+ * shrink by 2/3 from the top level down, so the sketch keeps O(k) values, 
+ * and the rank of a value is off by about {@link #normalizedRankError()} 
+ * of the stream length (about 1.3% with the default k of 200, with 99% 
+ * confidence).<br>
+ * The min and the max are exact. NaNs are ignored. The sketch is not 
+ * thread-safe: give every thread or node its own sketch and 
+ * {@link #merge(QuantileSketch)} them, or send {@link #toBytes()} to 
+ * another node and merge it there.<br>
+ * Source of algorithm: <a href="https://arxiv.org/abs/1603.05346">link</a> 
+ * <br>
+ * Typical usage: {@code QuantileSketch.init().add(a).add(b).quantile(0.99);}
+ * @author lisq199
+ */
+public class QuantileSketch {
+	
+	public static final int MIN_K = 8;
+	public static final int MAX_K = 1 << 16;
+	public static final int DEFAULT_K = 200;
+	
+	protected static final byte VERSION = 1;
+	protected static final int MIN_LEVEL_CAPACITY = 8;
+	protected static final double LEVEL_CAPACITY_RATIO = 2.0 / 3;
+	protected static final int MAX_LEVELS = 62;
+	/**
+	 * version, k, n, min, max and the number of levels
+	 */
+	protected static final int HEADER_SIZE = 1 + 4 + 8 + 8 + 8 + 4;
+	
+	protected final int k;
+	protected long n;
+	protected double min = Double.NaN;
+	protected double max = Double.NaN;
+	
+	/**
+	 * The values of every level, where a value of level h has weight 2^h. 
+	 * Only the first levelSizes[h] values of a level are used.
+	 */
+	protected double[][] levels;
+	protected int[] levelSizes;
+	protected int numLevels;
+	
+	/**
+	 * The capacity of every level, which depends on the number of levels
+	 */
+	protected int[] levelCapacities;
+	
+	/**
+	 * The number of values kept, and the number at which to compress
+	 */
+	protected int size;
+	protected int capacity;
+	
+	/**
+	 * The kept values sorted, with the sum of the weights up to and 
+	 * including every value, or null if values were added since
+	 */
+	protected double[] sortedValues;
+	protected long[] cumulativeWeights;
+	
+	protected QuantileSketch(int k) {
+		if (k < MIN_K || k > MAX_K) {
+			throw new IllegalArgumentException("k must be in [" + MIN_K
+					+ ", " + MAX_K + "]");
+		}
+		this.k = k;
+		this.levels = new double[1][];
+		this.levelSizes = new int[1];
+		this.levels[0] = new double[k];
+		this.numLevels = 1;
+		updateCapacities();
+	}
+	
+	public int getK() {
+		return k;
+	}
+	
+	/**
+	 * Get the number of values added, not counting NaNs
+	 * @return
+	 */
+	public long getN() {
+		return n;
+	}
+	
+	public boolean isEmpty() {
+		return n == 0;
+	}
+	
+	/**
+	 * Get the exact min
+	 * @return the min, or NaN if the sketch is empty
+	 */
+	public double getMin() {
+		return min;
+	}
+	
+	/**
+	 * Get the exact max
+	 * @return the max, or NaN if the sketch is empty
+	 */
+	public double getMax() {
+		return max;
+	}
+	
+	/**
+	 * Get the number of values kept by the sketch
+	 * @return
+	 */
+	public int getRetained() {
+		return size;
+	}
+	
+	/**
+	 * The error of the ranks of {@link #quantile(double)} and 
+	 * {@link #cdf(double)} as a fraction of {@link #getN()}, with 99% 
+	 * confidence. This is the empirical formula of the DataSketches KLL 
+	 * implementation.
+	 * @return
+	 */
+	public double normalizedRankError() {
+		return 2.296 / Math.pow(k, 0.9723);
+	}
+	
+	/**
+	 * Add a value. NaNs are ignored.
+	 * @param value
+	 * @return this
+	 */
+	public QuantileSketch add(double value) {
+		if (value != value) {
+			return this;
+		}
+		if (n == 0) {
+			min = value;
+			max = value;
+		} else if (value < min) {
+			min = value;
+		} else if (value > max) {
+			max = value;
+		}
+		n++;
+		append(0, value);
+		if (size >= capacity) {
+			compress();
+		}
+		sortedValues = null;
+		return this;
+	}
+	
+	/**
+	 * Add all the values of an array. NaNs are ignored.
+	 * @param values
+	 * @return this
+	 */
+	public QuantileSketch addAll(double... values) {
+		for (double v : values) {
+			add(v);
+		}
+		return this;
+	}
+	
+	/**
+	 * Merge another sketch into this one. Both must have the same k. The 
+	 * other sketch is not modified.
+	 * @param other
+	 * @return this
+	 */
+	public QuantileSketch merge(QuantileSketch other) {
+		if (other.k != k) {
+			throw new IllegalArgumentException("different k");
+		}
+		if (other.n == 0) {
+			return this;
+		}
+		if (n == 0 || other.min < min) {
+			min = other.min;
+		}
+		if (n == 0 || other.max > max) {
+			max = other.max;
+		}
+		n += other.n;
+		while (numLevels < other.numLevels) {
+			addLevel();
+		}
+		for (int h = 0; h < other.numLevels; h++) {
+			for (int i = 0; i < other.levelSizes[h]; i++) {
+				append(h, other.levels[h][i]);
+			}
+		}
+		while (size >= capacity) {
+			compress();
+		}
+		sortedValues = null;
+		return this;
+	}
+	
+	/**
+	 * Estimate a quantile. 0 gives the exact min and 1 the exact max.
+	 * @param q in [0, 1]
+	 * @return a value whose rank is about q * {@link #getN()}, or NaN if
+	 * the sketch is empty
+	 */
+	public double quantile(double q) {
+		if (!(q >= 0 && q <= 1)) {
+			throw new IllegalArgumentException("quantile must be in [0, 1]");
+		}
+		if (n == 0) {
+			return Double.NaN;
+		} else if (q == 0) {
+			return min;
+		} else if (q == 1) {
+			return max;
+		}
+		sort();
+		long rank = Math.max(1, (long) Math.ceil(q * n));
+		int i = Arrays.binarySearch(cumulativeWeights, rank);
+		return sortedValues[i >= 0 ? i : -i - 1];
+	}
+	
+	/**
+	 * Estimate some quantiles
+	 * @param qs in [0, 1]
+	 * @return the quantiles in the same order
+	 */
+	public double[] quantiles(double... qs) {
+		double[] result = new double[qs.length];
+		for (int i = 0; i < qs.length; i++) {
+			result[i] = quantile(qs[i]);
+		}
+		return result;
+	}
+	
+	/**
+	 * Estimate the fraction of the values that are less than or equal to 
+	 * x
+	 * @param x
+	 * @return the fraction in [0, 1], or NaN if the sketch is empty
+	 */
+	public double cdf(double x) {
+		if (n == 0) {
+			return Double.NaN;
+		} else if (x < min) {
+			return 0;
+		} else if (x >= max) {
+			return 1;
+		}
+		sort();
+		// The last value <= x
+		int lo = 0;
+		int hi = sortedValues.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (sortedValues[mid] <= x) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo == 0 ? 0 : (double) cumulativeWeights[lo - 1] / n;
+	}
+	
+	/**
+	 * Serialize the sketch: k, n, min and max followed by the values of 
+	 * every level
+	 * @return
+	 */
+	public byte[] toBytes() {
+		ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE + 4 * numLevels
+				+ 8 * size);
+		b.put(VERSION);
+		b.putInt(k);
+		b.putLong(n);
+		b.putDouble(min);
+		b.putDouble(max);
+		b.putInt(numLevels);
+		for (int h = 0; h < numLevels; h++) {
+			b.putInt(levelSizes[h]);
+			for (int i = 0; i < levelSizes[h]; i++) {
+				b.putDouble(levels[h][i]);
+			}
+		}
+		return b.array();
+	}
+	
+	@Override
+	public String toString() {
+		return "QuantileSketch[k: " + k + ", n: " + n + ", retained: "
+				+ size + ", levels: " + numLevels + ", min: " + min
+				+ ", max: " + max + "]";
+	}
+	
+	protected void append(int h, double value) {
+		double[] level = levels[h];
+		if (levelSizes[h] == level.length) {
+			level = Arrays.copyOf(level, Math.max(MIN_LEVEL_CAPACITY,
+					level.length * 2));
+			levels[h] = level;
+		}
+		level[levelSizes[h]++] = value;
+		size++;
+	}
+	
+	/**
+	 * Compact the lowest level that is at its capacity: sort it and 
+	 * promote every other value, starting at a random one of the first 
+	 * two, to the next level. One value stays if the level has an odd 
+	 * size.
+	 */
+	protected void compress() {
+		int h = 0;
+		while (h < numLevels - 1 && levelSizes[h] < levelCapacities[h]) {
+			h++;
+		}
+		if (h == numLevels - 1) {
+			addLevel();
+		}
+		double[] level = levels[h];
+		int length = levelSizes[h];
+		Arrays.sort(level, 0, length);
+		int start = length % 2;
+		int offset = ThreadLocalRandom.current().nextBoolean() ? 1 : 0;
+		for (int i = start + offset; i < length; i += 2) {
+			append(h + 1, level[i]);
+		}
+		// The smallest value stays if the size is odd
+		levelSizes[h] = start;
+		size -= length - start;
+	}
+	
+	protected void addLevel() {
+		if (numLevels == levels.length) {
+			levels = Arrays.copyOf(levels, numLevels * 2);
+			levelSizes = Arrays.copyOf(levelSizes, numLevels * 2);
+		}
+		levels[numLevels] = new double[MIN_LEVEL_CAPACITY];
+		numLevels++;
+		updateCapacities();
+	}
+	
+	/**
+	 * Get the capacity of a level, which is k for the top level and 2/3 of 
+	 * that for every level below, but not less than 
+	 * {@link #MIN_LEVEL_CAPACITY}
+	 * @param h
+	 * @return
+	 */
+	protected int levelCapacity(int h) {
+		return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(
+				LEVEL_CAPACITY_RATIO, numLevels - 1 - h)));
+	}
+	
+	protected void updateCapacities() {
+		levelCapacities = new int[numLevels];
+		capacity = 0;
+		for (int h = 0; h < numLevels; h++) {
+			levelCapacities[h] = levelCapacity(h);
+			capacity += levelCapacities[h];
+		}
+	}
+	
+	/**
+	 * Sort the kept values with their weights, if not sorted since the 
+	 * last change
+	 */
+	protected void sort() {
+		if (sortedValues != null) {
+			return;
+		}
+		// Merge the sorted levels one by one, from the top level down
+		double[] values = new double[0];
+		long[] weights = new long[0];
+		for (int h = numLevels - 1; h >= 0; h--) {
+			double[] level = Arrays.copyOf(levels[h], levelSizes[h]);
+			Arrays.sort(level);
+			double[] mergedValues = new double[values.length + level.length];
+			long[] mergedWeights = new long[mergedValues.length];
+			int i = 0;
+			int j = 0;
+			for (int m = 0; m < mergedValues.length; m++) {
+				if (j == level.length
+						|| (i < values.length && values[i] <= level[j])) {
+					mergedValues[m] = values[i];
+					mergedWeights[m] = weights[i++];
+				} else {
+					mergedValues[m] = level[j++];
+					mergedWeights[m] = 1L << h;
+				}
+			}
+			values = mergedValues;
+			weights = mergedWeights;
+		}
+		for (int i = 1; i < weights.length; i++) {
+			weights[i] += weights[i - 1];
+		}
+		sortedValues = values;
+		cumulativeWeights = weights;
+	}
+	
+	/**
+	 * Initialize with the default k (200), which keeps about 600 values 
+	 * and has a rank error of about 1.3%.
+	 * @return
+	 */
+	public static QuantileSketch init() {
+		return init(DEFAULT_K);
+	}
+	
+	/**
+	 * Initialize with a specified k. The memory grows linearly and the 
+	 * error shrinks about linearly with k.
+	 * @param k in [8, 65536]
+	 * @return
+	 */
+	public static QuantileSketch init(int k) {
+		return new QuantileSketch(k);
+	}
+	
+	/**
+	 * Deserialize a sketch created by {@link #toBytes()}. The header is 
+	 * checked against the length of the bytes, so corrupt bytes throw 
+	 * instead of allocating levels for a bogus size.
+	 * @param bytes
+	 * @return
+	 */
+	public static QuantileSketch fromBytes(byte[] bytes) {
+		ByteBuffer b = ByteBuffer.wrap(bytes);
+		if (b.remaining() < HEADER_SIZE) {
+			throw new IllegalArgumentException("truncated header");
+		}
+		if (b.get() != VERSION) {
+			throw new IllegalArgumentException("unknown version");
+		}
+		QuantileSketch sketch = new QuantileSketch(b.getInt());
+		sketch.n = b.getLong();
+		sketch.min = b.getDouble();
+		sketch.max = b.getDouble();
+		int numLevels = b.getInt();
+		if (sketch.n < 0) {
+			throw new IllegalArgumentException("negative n: " + sketch.n);
+		}
+		// A value of level h has weight 2^h, which must fit in a long
+		if (numLevels < 1 || numLevels > MAX_LEVELS) {
+			throw new IllegalArgumentException("number of levels must be "
+					+ "in [1, " + MAX_LEVELS + "]: " + numLevels);
+		}
+		while (sketch.numLevels < numLevels) {
+			sketch.addLevel();
+		}
+		long weight = 0;
+		for (int h = 0; h < numLevels; h++) {
+			if (b.remaining() < 4) {
+				throw new IllegalArgumentException("truncated level " + h);
+			}
+			int levelSize = b.getInt();
+			if (levelSize < 0 || levelSize > b.remaining() / 8) {
+				throw new IllegalArgumentException("invalid size of level "
+						+ h + ": " + levelSize);
+			}
+			// levelSize << h without overflow
+			if (levelSize > (sketch.n - weight) >> h) {
+				throw new IllegalArgumentException("levels weigh more than n");
+			}
+			weight += (long) levelSize << h;
+			for (int i = 0; i < levelSize; i++) {
+				sketch.append(h, b.getDouble());
+			}
+		}
+		if (weight != sketch.n) {
+			throw new IllegalArgumentException("levels weigh " + weight
+					+ ", not n: " + sketch.n);
+		}
+		return sketch;
+	}
+
+}
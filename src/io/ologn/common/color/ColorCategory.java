@@ -6,6 +6,7 @@ import java.util.List;
 
 import org.apache.commons.lang3.ArrayUtils;
 
+import io.ologn.common.CachedHashCode;
 import io.ologn.common.OlognHashCode;
 import io.ologn.common.math.LinearScale;
 
@@ -13,11 +14,12 @@ import io.ologn.common.math.LinearScale;
  * As the name suggests, this class is for storing categories of colors. 
  * Internally, colors are stored as CSS color strings (of any style), 
  * because they are designed to be used in HTML. The objects are 
- * supposed to be immutable once they are created.
+ * supposed to be immutable once they are created, so the hash code is 
+ * only computed once.
  * @author lisq199
  *
  */
-public class ColorCategory {
+public class ColorCategory extends CachedHashCode {
 	
 	/**
 	 * Source: <a href="https://github.com/mbostock/d3/wiki/Ordinal-Scales">
@@ -157,10 +159,8 @@ public class ColorCategory {
 	}
 	
 	@Override
-	public int hashCode() {
-		return OlognHashCode.init()
-				.addArray(colorStrings)
-				.get();
+	protected int computeHashCode() {
+		return OlognHashCode.hash(Arrays.hashCode(colorStrings));
 	}
 	
 	@Override
@@ -147,21 +147,21 @@ public class LinearScale {
 	
 	@Override
 	public int hashCode() {
-		return OlognHashCode.init()
-				.addDouble(domainMin)
-				.addDouble(domainMax)
-				.addDouble(rangeMin)
-				.addDouble(rangeMax)
-				.get();
+		return OlognHashCode.hash(
+				OlognHashCode.hashOf(domainMin),
+				OlognHashCode.hashOf(domainMax),
+				OlognHashCode.hashOf(rangeMin),
+				OlognHashCode.hashOf(rangeMax));
 	}
 	
 	@Override
 	public boolean equals(Object obj) {
+		// Compared like Double.equals, so that it agrees with hashCode
 		return OlognHashCode.equals(this, obj,
-				(a, b) -> a.getDomainMin() == b.getDomainMin()
-				&& a.getDomainMax() == b.getDomainMax()
-				&& a.getRangeMin() == b.getRangeMin()
-				&& a.getRangeMax() == b.getRangeMax());
+				(a, b) -> Double.compare(a.domainMin, b.domainMin) == 0
+				&& Double.compare(a.domainMax, b.domainMax) == 0
+				&& Double.compare(a.rangeMin, b.rangeMin) == 0
+				&& Double.compare(a.rangeMax, b.rangeMax) == 0);
 	}
 	
 	@Override
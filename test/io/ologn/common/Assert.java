@@ -0,0 +1,58 @@
+package io.ologn.common;
+
+import java.util.Objects;
+
+/**
+ * Assertions for the tests run by {@link ClassRunner}
+ * @author lisq199
+ */
+public class Assert {
+	
+	public static void assertTrue(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+	
+	public static void assertEquals(Object expected, Object actual) {
+		if (!Objects.equals(expected, actual)) {
+			throw new AssertionError("expected " + expected + " but was "
+					+ actual);
+		}
+	}
+	
+	public static void assertEquals(long expected, long actual) {
+		if (expected != actual) {
+			throw new AssertionError("expected " + expected + " but was "
+					+ actual);
+		}
+	}
+	
+	/**
+	 * Check that some code throws an exception of a type
+	 * @param type
+	 * @param code
+	 * @return the exception
+	 */
+	public static <T extends Throwable> T assertThrows(Class<T> type,
+			Code code) {
+		try {
+			code.run();
+		} catch (Throwable e) {
+			if (type.isInstance(e)) {
+				return type.cast(e);
+			}
+			throw new AssertionError("expected " + type.getName()
+					+ " but was " + e, e);
+		}
+		throw new AssertionError("expected " + type.getName());
+	}
+	
+	@FunctionalInterface
+	public interface Code {
+		
+		void run() throws Exception;
+		
+	}
+	
+}
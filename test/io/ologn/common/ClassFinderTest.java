@@ -0,0 +1,76 @@
+package io.ologn.common;
+
+import static io.ologn.common.Assert.assertEquals;
+import static io.ologn.common.Assert.assertThrows;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Run with {@link ClassRunner}
+ * @author lisq199
+ */
+public class ClassFinderTest {
+	
+	public void testGetClassesParallel() throws ClassNotFoundException,
+			IOException {
+		ClassLoader loader = ClassFinderTest.class.getClassLoader();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			List<String> names = new ArrayList<String>();
+			for (Class<?> c : ClassFinder.getClassesParallel(
+					"io.ologn.common.collect", loader, pool)) {
+				names.add(c.getName());
+			}
+			assertEquals(ClassFinder.getClassNamesParallel(
+					"io.ologn.common.collect", loader, pool), names);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * The exceptions of the class loader are thrown as they are, not 
+	 * wrapped by the pool
+	 */
+	public void testGetClassesParallelFailures() throws IOException {
+		Path cp = Files.createTempDirectory("classfinder");
+		Files.createDirectories(cp.resolve("missing"));
+		Files.createDirectories(cp.resolve("broken"));
+		for (int i = 0; i < 8; i++) {
+			Files.write(cp.resolve("missing/A" + i + ".class"), new byte[0]);
+			Files.write(cp.resolve("broken/A" + i + ".class"), new byte[0]);
+		}
+		ForkJoinPool pool = new ForkJoinPool(4);
+		// The empty class files are not valid, and the classes of the
+		// missing package are not found
+		try (URLClassLoader loader = new URLClassLoader(
+				new URL[] {cp.toUri().toURL()}, null) {
+			@Override
+			protected Class<?> loadClass(String name, boolean resolve)
+					throws ClassNotFoundException {
+				if (name.startsWith("missing.")) {
+					throw new ClassNotFoundException(name);
+				}
+				return super.loadClass(name, resolve);
+			}
+		}) {
+			assertThrows(ClassNotFoundException.class,
+					() -> ClassFinder.getClassesParallel("missing", loader,
+							pool));
+			assertThrows(ClassFormatError.class,
+					() -> ClassFinder.getClassesParallel("broken", loader,
+							pool));
+		} finally {
+			pool.shutdown();
+			ClassWatcherTest.delete(cp);
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package io.ologn.common;
+
+import static io.ologn.common.Assert.assertEquals;
+import static io.ologn.common.Assert.assertThrows;
+import static io.ologn.common.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Run with {@link ClassRunner}
+ * @author lisq199
+ */
+public class ClassIndexTest {
+	
+	/**
+	 * Every single corrupted byte either still reads or fails with an 
+	 * IOException
+	 */
+	public void testCorruptedIndex() throws IOException {
+		Path dir = Files.createTempDirectory("classindex");
+		try {
+			Path root = writeClasses(dir.resolve("root"));
+			Path file = dir.resolve("index");
+			ClassIndex.build(root.toFile()).writeTo(file);
+			byte[] bytes = Files.readAllBytes(file);
+			assertEquals(2, ClassIndex.readFrom(file).size());
+			for (int i = 0; i < bytes.length; i++) {
+				for (int v : new int[] {0x00, 0x7F, 0x80, 0xFF}) {
+					byte[] corrupted = bytes.clone();
+					corrupted[i] = (byte) v;
+					Files.write(file, corrupted);
+					try {
+						ClassIndex.readFrom(file);
+					} catch (IOException e) {
+						// Expected for most bytes
+					}
+				}
+			}
+			Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+			assertThrows(IOException.class, () -> ClassIndex.readFrom(file));
+		} finally {
+			delete(dir);
+		}
+	}
+	
+	public void testLoadRebuildsCorruptedIndex() throws IOException {
+		Path dir = Files.createTempDirectory("classindex");
+		try {
+			Path root = writeClasses(dir.resolve("root"));
+			Path cache = dir.resolve("cache");
+			ClassIndex.load(root.toFile(), cache);
+			Path file;
+			try (Stream<Path> files = Files.list(cache)) {
+				file = files.findFirst().get();
+			}
+			// A negative string count
+			byte[] bytes = Files.readAllBytes(file);
+			ByteBuffer b = ByteBuffer.wrap(bytes);
+			int rootLength = b.getInt(16);
+			b.putInt(20 + rootLength, -1);
+			Files.write(file, bytes);
+			assertThrows(IOException.class, () -> ClassIndex.readFrom(file));
+			assertEquals(Arrays.asList("io.ologn.common.Assert",
+					"io.ologn.common.ClassIndexTest"),
+					ClassIndex.load(root.toFile(), cache).getClassNames(""));
+			assertTrue(ClassIndex.readFrom(file) != null, "rewritten");
+		} finally {
+			delete(dir);
+		}
+	}
+	
+	/**
+	 * Copy 2 class files of the tests into a directory root
+	 */
+	protected static Path writeClasses(Path root) throws IOException {
+		for (Class<?> c : new Class<?>[] {Assert.class, ClassIndexTest.class}) {
+			Path p = root.resolve(c.getName().replace('.', '/') + ".class");
+			Files.createDirectories(p.getParent());
+			try (InputStream in = c.getResourceAsStream(
+					c.getSimpleName() + ".class")) {
+				Files.copy(in, p);
+			}
+		}
+		return root;
+	}
+	
+	protected static void delete(Path dir) throws IOException {
+		try (Stream<Path> paths = Files.walk(dir)) {
+			for (Path p : (Iterable<Path>) paths.sorted(
+					Comparator.reverseOrder())::iterator) {
+				Files.delete(p);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,101 @@
+package io.ologn.common;
+
+import static io.ologn.common.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Run with {@link ClassRunner}
+ * @author lisq199
+ */
+public class ClassWatcherTest {
+	
+	protected static final long TIMEOUT_MILLIS = 10000;
+	
+	/**
+	 * A clean build deletes the package directories and creates them 
+	 * again
+	 */
+	public void testDeleteAndRecreate() throws IOException,
+			InterruptedException {
+		Path cp = Files.createTempDirectory("classwatcher");
+		try (URLClassLoader loader = loader(cp)) {
+			Path p = Files.createDirectories(cp.resolve("w/p"));
+			Files.write(p.resolve("A.class"), new byte[0]);
+			Files.write(p.resolve("B.class"), new byte[0]);
+			try (ClassWatcher watcher = ClassWatcher.init("w.p", loader)) {
+				assertEquals(Arrays.asList("w.p.A", "w.p.B"),
+						waitFor(watcher, "w.p.A", "w.p.B"));
+				delete(p);
+				assertEquals(Collections.emptyList(), waitFor(watcher));
+				Files.createDirectories(p);
+				Files.write(p.resolve("A.class"), new byte[0]);
+				assertEquals(Arrays.asList("w.p.A"),
+						waitFor(watcher, "w.p.A"));
+				// Also the parent of the root
+				delete(cp.resolve("w"));
+				assertEquals(Collections.emptyList(), waitFor(watcher));
+				Files.createDirectories(p.resolve("q"));
+				Files.write(p.resolve("q/C.class"), new byte[0]);
+				assertEquals(Arrays.asList("w.p.q.C"),
+						waitFor(watcher, "w.p.q.C"));
+			}
+		} finally {
+			delete(cp);
+		}
+	}
+	
+	public void testRootCreatedLater() throws IOException,
+			InterruptedException {
+		Path cp = Files.createTempDirectory("classwatcher");
+		try (URLClassLoader loader = loader(cp);
+				ClassWatcher watcher = ClassWatcher.init("w.p", loader)) {
+			assertEquals(Collections.emptyList(), waitFor(watcher));
+			Path p = Files.createDirectories(cp.resolve("w/p"));
+			Files.write(p.resolve("A.class"), new byte[0]);
+			assertEquals(Arrays.asList("w.p.A"), waitFor(watcher, "w.p.A"));
+		} finally {
+			delete(cp);
+		}
+	}
+	
+	protected static URLClassLoader loader(Path cp) throws IOException {
+		return new URLClassLoader(new URL[] {cp.toUri().toURL()}, null);
+	}
+	
+	/**
+	 * Wait until the watcher has exactly some classes, or time out
+	 * @return the classes of the watcher at the end
+	 */
+	protected static List<String> waitFor(ClassWatcher watcher,
+			String... names) throws InterruptedException {
+		Set<String> expected = new TreeSet<String>(Arrays.asList(names));
+		long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (!watcher.getClassNames().equals(expected)
+				&& System.currentTimeMillis() < end) {
+			Thread.sleep(20);
+		}
+		return Arrays.asList(watcher.getClassNames().toArray(new String[0]));
+	}
+	
+	protected static void delete(Path dir) throws IOException {
+		try (Stream<Path> paths = Files.walk(dir)) {
+			for (Path p : (Iterable<Path>) paths.sorted(
+					Comparator.reverseOrder())::iterator) {
+				Files.delete(p);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,40 @@
+package io.ologn.common;
+
+import static io.ologn.common.Assert.assertThrows;
+import static io.ologn.common.Assert.assertTrue;
+
+/**
+ * Run with {@link ClassRunner}
+ * @author lisq199
+ */
+public class ConsistentHashTest {
+	
+	protected static final long[] NODES = {11, 22, 33};
+	
+	public void testWeightedRendezvous() {
+		double[] weights = {1, 2, 5};
+		int[] counts = new int[NODES.length];
+		for (long key = 0; key < 80000; key++) {
+			counts[ConsistentHash.rendezvous(key, NODES, weights)]++;
+		}
+		for (int i = 0; i < NODES.length; i++) {
+			int expected = (int) (weights[i] * 10000);
+			assertTrue(Math.abs(counts[i] - expected) < expected * 0.05,
+					"node " + i + ": " + counts[i]);
+		}
+	}
+	
+	public void testInvalidWeights() {
+		double[] invalid = {0, -1, Double.NaN, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY};
+		for (double w : invalid) {
+			double[] weights = {1, w, 1};
+			assertThrows(IllegalArgumentException.class,
+					() -> ConsistentHash.rendezvous(1, NODES, weights));
+			assertThrows(IllegalArgumentException.class,
+					() -> ConsistentHash.rendezvous(new long[] {1}, NODES,
+							weights, new int[1]));
+		}
+	}
+
+}
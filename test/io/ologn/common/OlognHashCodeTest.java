@@ -0,0 +1,46 @@
+package io.ologn.common;
+
+import static io.ologn.common.Assert.assertEquals;
+
+/**
+ * Run with {@link ClassRunner}
+ * @author lisq199
+ */
+public class OlognHashCodeTest {
+	
+	protected static class Fields {
+		
+		protected int i = -5;
+		protected short s = -6;
+		protected byte b = -7;
+		protected char c = 'x';
+		protected long l = -8;
+	
+	}
+	
+	/**
+	 * The static API, the builder and ValueSpec agree for negative values 
+	 * of every integral type
+	 */
+	public void testIntegralHashes() {
+		for (int i : new int[] {0, 1, -1, -5, Integer.MIN_VALUE}) {
+			assertEquals(Integer.hashCode(i), OlognHashCode.hashOf(i));
+			assertEquals(OlognHashCode.init().addInt(i).get(),
+					OlognHashCode.hash(OlognHashCode.hashOf(i)));
+			assertEquals(OlognHashCode.init().addShort((short) i).get(),
+					OlognHashCode.hash(OlognHashCode.hashOf((short) i)));
+			assertEquals(OlognHashCode.init().addByte((byte) i).get(),
+					OlognHashCode.hash(OlognHashCode.hashOf((byte) i)));
+			assertEquals(OlognHashCode.init().addLong(i).get(),
+					OlognHashCode.hash(OlognHashCode.hashOf((long) i)));
+		}
+		Fields f = new Fields();
+		int expected = OlognHashCode.init().addInt(f.i).addShort(f.s)
+				.addByte(f.b).addChar(f.c).addLong(f.l).get();
+		assertEquals(expected, OlognHashCode.hash(OlognHashCode.hashOf(f.i),
+				OlognHashCode.hashOf(f.s), OlognHashCode.hashOf(f.b),
+				OlognHashCode.hashOf(f.c), OlognHashCode.hashOf(f.l)));
+		assertEquals(expected, ValueSpec.forClass(Fields.class).hashCode(f));
+	}
+
+}
@@ -0,0 +1,172 @@
+package io.ologn.common;
+
+import static io.ologn.common.Assert.assertEquals;
+import static io.ologn.common.Assert.assertThrows;
+import static io.ologn.common.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Run with {@link ClassRunner}
+ * @author lisq199
+ */
+public class ZipDirectoryTest {
+	
+	protected static final byte[] PREFIX = ("#!/bin/sh\n"
+			+ "exec java -jar \"$0\" \"$@\"\n").getBytes(
+					StandardCharsets.UTF_8);
+	
+	public void testEntries() throws IOException {
+		Path jar = writeJar(new byte[0], new byte[0]);
+		try {
+			checkEntries(jar);
+		} finally {
+			Files.delete(jar);
+		}
+	}
+	
+	/**
+	 * An executable JAR with a launcher script before the archive, whose 
+	 * offsets do not include the script
+	 */
+	public void testPrefixedJar() throws IOException {
+		Path jar = writeJar(PREFIX, new byte[0]);
+		try {
+			try (JarFile jarFile = new JarFile(jar.toFile())) {
+				assertEquals(4, jarFile.size());
+			}
+			checkEntries(jar);
+			try (URLClassLoader loader = new URLClassLoader(
+					new URL[] {jar.toUri().toURL()}, null)) {
+				List<String> names = new ArrayList<String>(
+						ClassFinder.getClassNames("p", loader));
+				Collections.sort(names);
+				assertEquals(Arrays.asList("p.A", "p.q.B"), names);
+			}
+		} finally {
+			Files.delete(jar);
+		}
+	}
+	
+	/**
+	 * Padding after the archive, with a stray end record signature whose 
+	 * comment does not fit
+	 */
+	public void testTrailingBytes() throws IOException {
+		ByteBuffer suffix = ByteBuffer.allocate(64)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		suffix.putInt(20, 0x06054b50);
+		suffix.putShort(40, (short) 1000);
+		Path jar = writeJar(PREFIX, suffix.array());
+		try {
+			checkEntries(jar);
+		} finally {
+			Files.delete(jar);
+		}
+	}
+	
+	public void testMissingZip64Field() throws IOException {
+		Path jar = writeJar(new byte[0], new byte[0]);
+		try {
+			// The size in the central directory record of the last entry, 
+			// which says that it is in a ZIP64 extra field
+			byte[] bytes = Files.readAllBytes(jar);
+			byte[] name = "p/q/B.class".getBytes(StandardCharsets.UTF_8);
+			int record = lastIndexOf(bytes, name) - 46;
+			ByteBuffer.wrap(bytes).putInt(record + 24, 0xFFFFFFFF);
+			Files.write(jar, bytes);
+			try (ZipDirectory zip = ZipDirectory.open(jar)) {
+				int i = zip.find("p/q/B.class");
+				assertThrows(ZipException.class, () -> zip.getSize(i));
+				assertThrows(ZipException.class, () -> zip.read(i));
+				assertEquals(classBytes("p.A").length,
+						zip.getSize(zip.find("p/A.class")));
+			}
+		} finally {
+			Files.delete(jar);
+		}
+	}
+	
+	protected void checkEntries(Path jar) throws IOException {
+		try (ZipDirectory zip = ZipDirectory.open(jar)) {
+			assertEquals(4, zip.size());
+			assertEquals("p/", zip.getName(0));
+			assertTrue(zip.isDirectory(0), "p/ is a directory");
+			assertEquals(1, zip.find("p/A.class"));
+			assertTrue(Arrays.equals(classBytes("p.A"), zip.read(
+					zip.find("p/A.class"))), "deflated data");
+			assertTrue(Arrays.equals(classBytes("p.q.B"), zip.read(
+					zip.find("p/q/B.class"))), "stored data");
+		}
+	}
+	
+	/**
+	 * Write a JAR with two directories, a deflated entry and a stored 
+	 * entry after some data
+	 */
+	protected static Path writeJar(byte[] prefix, byte[] suffix)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+			out.putNextEntry(new ZipEntry("p/"));
+			out.putNextEntry(new ZipEntry("p/A.class"));
+			out.write(classBytes("p.A"));
+			out.putNextEntry(new ZipEntry("p/q/"));
+			byte[] b = classBytes("p.q.B");
+			ZipEntry stored = new ZipEntry("p/q/B.class");
+			stored.setMethod(ZipEntry.STORED);
+			stored.setSize(b.length);
+			CRC32 crc = new CRC32();
+			crc.update(b);
+			stored.setCrc(crc.getValue());
+			out.putNextEntry(stored);
+			out.write(b);
+		}
+		Path jar = Files.createTempFile("ZipDirectoryTest", ".jar");
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		file.write(prefix);
+		bytes.writeTo(file);
+		file.write(suffix);
+		Files.write(jar, file.toByteArray());
+		return jar;
+	}
+	
+	protected static int lastIndexOf(byte[] bytes, byte[] key) {
+		for (int i = bytes.length - key.length; i >= 0; i--) {
+			if (Arrays.equals(key, Arrays.copyOfRange(bytes, i,
+					i + key.length))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Not a valid class file, which is fine for listing names
+	 */
+	protected static byte[] classBytes(String name) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			sb.append(name).append(i);
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+	
+}
@@ -0,0 +1,94 @@
+package io.ologn.common.collect;
+
+import static io.ologn.common.Assert.assertEquals;
+import static io.ologn.common.Assert.assertThrows;
+import static io.ologn.common.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Run with {@link io.ologn.common.ClassRunner}
+ * @author lisq199
+ */
+public class BloomFilterTest {
+	
+	public void testRoundTrip() throws IOException {
+		for (BloomFilter f : new BloomFilter[] {
+				BloomFilter.init(100000, 0.01),
+				BlockedBloomFilter.init(100000, 0.01)}) {
+			for (long key = 0; key < 1000; key++) {
+				f.put(key);
+			}
+			BloomFilter read = read(write(f));
+			assertEquals(f.getClass(), read.getClass());
+			assertEquals(f.bitCount(), read.bitCount());
+			assertEquals(f.numHashes(), read.numHashes());
+			for (long key = 0; key < 1000; key++) {
+				assertTrue(read.mightContain(key), "key " + key);
+			}
+		}
+	}
+	
+	/**
+	 * Invalid headers fail with an IOException before the bits are 
+	 * allocated
+	 */
+	public void testInvalidHeader() throws IOException {
+		byte[] standard = write(BloomFilter.init(1000, 0.01));
+		byte[] blocked = write(BlockedBloomFilter.init(1000, 0.01));
+		// type at 4, hashes at 5, words at 9
+		byte[] type = standard.clone();
+		type[4] = 7;
+		assertThrows(IOException.class, () -> read(type));
+		for (int hashes : new int[] {0, -1, 1 << 20}) {
+			assertThrows(IOException.class,
+					() -> read(withInt(standard, 5, hashes)));
+		}
+		for (int words : new int[] {0, -1, Integer.MAX_VALUE}) {
+			assertThrows(IOException.class,
+					() -> read(withInt(standard, 9, words)));
+		}
+		assertThrows(IOException.class, () -> read(withInt(blocked, 9, 12)));
+		Path file = Files.createTempFile("bloom", ".bin");
+		try {
+			// Larger than the file, which is only checked for files
+			Files.write(file, withInt(standard, 9, 1 << 28));
+			try (FileChannel channel = FileChannel.open(file,
+					StandardOpenOption.READ)) {
+				assertThrows(IOException.class,
+						() -> BloomFilter.readFrom(channel));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	protected static byte[] write(BloomFilter f) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		f.writeTo(Channels.newChannel(out));
+		return out.toByteArray();
+	}
+	
+	protected static BloomFilter read(byte[] bytes) throws IOException {
+		return BloomFilter.readFrom(Channels.newChannel(
+				new ByteArrayInputStream(bytes)));
+	}
+	
+	/**
+	 * Copy the bytes with the int at an offset replaced
+	 */
+	protected static byte[] withInt(byte[] bytes, int offset, int v) {
+		return ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN)
+				.putInt(offset, v).array();
+	}
+
+}
@@ -0,0 +1,85 @@
+package io.ologn.common.collect;
+
+import static io.ologn.common.Assert.assertEquals;
+import static io.ologn.common.Assert.assertTrue;
+
+/**
+ * Run with {@link io.ologn.common.ClassRunner}
+ * @author lisq199
+ */
+public class HyperLogLogTest {
+	
+	protected static final int PRECISION = 14;
+	protected static final int TRIALS = 16;
+	
+	public void testEmpty() {
+		assertEquals(0, HyperLogLog.init().cardinality());
+	}
+	
+	public void testSmall() {
+		HyperLogLog hll = HyperLogLog.init(PRECISION);
+		for (int i = 0; i < 1000; i++) {
+			hll.add(i).add(i);
+		}
+		assertTrue(hll.isSparse(), "still sparse");
+		assertTrue(Math.abs(hll.cardinality() - 1000) <= 10,
+				"cardinality " + hll.cardinality());
+	}
+	
+	/**
+	 * Between 2.5 and 5 times the number of registers, where the raw 
+	 * estimate of the original paper is biased
+	 */
+	public void testAccuracyAroundLinearCountingThreshold() {
+		int m = 1 << PRECISION;
+		double expected = HyperLogLog.init(PRECISION).relativeError();
+		for (double ratio = 2.5; ratio <= 5; ratio += 0.5) {
+			checkAccuracy((int) (ratio * m), expected);
+		}
+	}
+	
+	public void testAccuracyLarge() {
+		checkAccuracy(1 << 20, HyperLogLog.init(PRECISION).relativeError());
+	}
+	
+	public void testMergeAndBytes() {
+		HyperLogLog a = HyperLogLog.init(PRECISION);
+		HyperLogLog b = HyperLogLog.init(PRECISION);
+		for (int i = 0; i < 50000; i++) {
+			a.add(i);
+			b.add(i + 25000);
+		}
+		long merged = HyperLogLog.fromBytes(a.toBytes()).merge(b)
+				.cardinality();
+		assertTrue(Math.abs(merged - 75000) < 75000 * 0.05,
+				"merged " + merged);
+	}
+	
+	/**
+	 * Check the RMS error over independent trials, and that no trial is 
+	 * far off
+	 * @param n
+	 * @param expected the expected standard error
+	 */
+	protected static void checkAccuracy(int n, double expected) {
+		double squares = 0;
+		double worst = 0;
+		for (int t = 0; t < TRIALS; t++) {
+			HyperLogLog hll = HyperLogLog.init(PRECISION);
+			long first = (long) t << 32;
+			for (long key = first; key < first + n; key++) {
+				hll.add(key);
+			}
+			double error = (double) (hll.cardinality() - n) / n;
+			squares += error * error;
+			worst = Math.max(worst, Math.abs(error));
+		}
+		double rms = Math.sqrt(squares / TRIALS);
+		// With 16 trials, the RMS is within about 1.5 times the standard
+		// error unless the estimate is biased
+		assertTrue(rms < 1.5 * expected, "n " + n + ": RMS error " + rms);
+		assertTrue(worst < 4 * expected, "n " + n + ": worst error "
+				+ worst);
+	}
+
+}
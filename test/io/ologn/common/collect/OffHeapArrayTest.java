@@ -0,0 +1,109 @@
+package io.ologn.common.collect;
+
+import static io.ologn.common.Assert.assertEquals;
+import static io.ologn.common.Assert.assertThrows;
+import static io.ologn.common.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Run with {@link io.ologn.common.ClassRunner}
+ * @author lisq199
+ */
+public class OffHeapArrayTest {
+	
+	public void testLongIndexOutOfRange() {
+		// 4 chunks of 4 elements, so an index past the end would wrap to
+		// a valid chunk without the check
+		OffHeapLongArray a = OffHeapLongArray.init(16, 2);
+		a.set(15, 7);
+		assertEquals(7, a.get(15));
+		for (long i : new long[] {-1, 16, 1L << 32 | 3, Long.MIN_VALUE}) {
+			assertThrows(IndexOutOfBoundsException.class, () -> a.get(i));
+			assertThrows(IndexOutOfBoundsException.class, () -> a.set(i, 1));
+			assertThrows(IndexOutOfBoundsException.class,
+					() -> a.swap(0, i));
+		}
+		assertEquals(0, a.get(3));
+	}
+	
+	public void testDoubleIndexOutOfRange() {
+		OffHeapDoubleArray a = OffHeapDoubleArray.init(16, 2);
+		a.set(15, 0.5);
+		assertEquals(0.5, a.get(15));
+		for (long i : new long[] {-1, 16, 1L << 32 | 3, Long.MIN_VALUE}) {
+			assertThrows(IndexOutOfBoundsException.class, () -> a.get(i));
+			assertThrows(IndexOutOfBoundsException.class, () -> a.set(i, 1));
+			assertThrows(IndexOutOfBoundsException.class,
+					() -> a.swap(i, 0));
+		}
+		assertEquals(0.0, a.get(3));
+	}
+	
+	public void testClose() {
+		assertTrue(OffHeapLongArray.FREE != null, "buffers can be freed");
+		OffHeapLongArray a = OffHeapLongArray.init(new long[] {3, 1, 2});
+		OffHeapDoubleArray b = OffHeapDoubleArray.init(new double[] {1.5});
+		try (OffHeapLongArray c = a; OffHeapDoubleArray d = b) {
+			assertEquals(2, OlognArrays.median(c));
+			assertEquals(1.5, d.get(0));
+		}
+		assertEquals(0, a.length());
+		assertEquals(0, b.length());
+		assertThrows(IndexOutOfBoundsException.class, () -> a.get(0));
+		assertThrows(IndexOutOfBoundsException.class, () -> b.set(0, 1));
+		a.close();
+		assertEquals(0, a.toArray().length);
+	}
+	
+	public void testLongMode() {
+		Random random = new Random(1);
+		long[] values = new long[10000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextInt(500) - 250;
+		}
+		long[] expected = OlognArrays.modeInPlace(values.clone());
+		try (OffHeapLongArray a = OffHeapLongArray.init(values)) {
+			assertTrue(Arrays.equals(expected, OlognArrays.mode(a)),
+					"mode");
+			assertTrue(Arrays.equals(expected, OlognArrays.modeInPlace(a)),
+					"mode in place");
+			for (long i = 1; i < a.length(); i++) {
+				assertTrue(a.get(i - 1) <= a.get(i), "sorted");
+			}
+		}
+	}
+	
+	public void testDoubleMode() {
+		Random random = new Random(2);
+		double[] specials = {0.0, -0.0, Double.NaN,
+				Double.longBitsToDouble(0x7ff8000000000123L)};
+		double[] values = new double[10000];
+		for (int i = 0; i < values.length; i++) {
+			int r = random.nextInt(100);
+			values[i] = r < specials.length ? specials[r] : r / 8.0 - 6;
+		}
+		double[] expected = OlognArrays.modeInPlace(values.clone());
+		try (OffHeapDoubleArray a = OffHeapDoubleArray.init(values)) {
+			assertTrue(Arrays.equals(expected, OlognArrays.mode(a)),
+					"mode");
+			assertTrue(Arrays.equals(expected, OlognArrays.modeInPlace(a)),
+					"mode in place");
+		}
+		// -0.0 and 0.0 are counted apart, and all NaNs are equal
+		double[] zeros = {0.0, -0.0, 0.0, Double.NaN, -0.0, 1,
+				Double.longBitsToDouble(0x7ff8000000000123L), 0.0, -0.0};
+		try (OffHeapDoubleArray a = OffHeapDoubleArray.init(zeros)) {
+			assertTrue(Arrays.equals(new double[] {-0.0, 0.0},
+					OlognArrays.modeInPlace(a)), "zeros");
+		}
+		double[] nans = {Double.NaN, 2, Double.longBitsToDouble(
+				0x7ff8000000000123L), 2, Double.NaN};
+		try (OffHeapDoubleArray a = OffHeapDoubleArray.init(nans)) {
+			assertTrue(Arrays.equals(new double[] {Double.NaN},
+					OlognArrays.modeInPlace(a)), "NaNs");
+		}
+	}
+
+}
@@ -0,0 +1,134 @@
+package io.ologn.common.collect;
+
+import static io.ologn.common.Assert.assertEquals;
+import static io.ologn.common.Assert.assertThrows;
+import static io.ologn.common.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Run with {@link io.ologn.common.ClassRunner}
+ * @author lisq199
+ */
+public class QuantileSketchTest {
+	
+	protected static final int N = 1 << 20;
+	
+	public void testEmpty() {
+		QuantileSketch sketch = QuantileSketch.init();
+		assertTrue(Double.isNaN(sketch.quantile(0.5)), "NaN if empty");
+		QuantileSketch copy = QuantileSketch.fromBytes(sketch.toBytes());
+		assertTrue(copy.isEmpty(), "still empty");
+		assertEquals(0, copy.getRetained());
+	}
+	
+	public void testRankError() {
+		QuantileSketch sketch = QuantileSketch.init();
+		for (int v : shuffled(N, 1)) {
+			sketch.add(v);
+		}
+		assertEquals(0.0, sketch.getMin());
+		assertEquals((double) N - 1, sketch.getMax());
+		assertTrue(sketch.getRetained() < 4 * sketch.getK(),
+				"retained " + sketch.getRetained());
+		checkRanks(sketch, N);
+	}
+	
+	public void testMerge() {
+		QuantileSketch a = QuantileSketch.init();
+		QuantileSketch b = QuantileSketch.init();
+		int[] values = shuffled(N, 2);
+		for (int i = 0; i < N; i++) {
+			(i % 3 == 0 ? a : b).add(values[i]);
+		}
+		a.merge(b);
+		assertEquals(N, a.getN());
+		assertEquals((double) N - 1, a.getMax());
+		checkRanks(a, N);
+		assertThrows(IllegalArgumentException.class,
+				() -> a.merge(QuantileSketch.init(100)));
+	}
+	
+	public void testBytes() {
+		QuantileSketch sketch = QuantileSketch.init(64);
+		for (int v : shuffled(N, 3)) {
+			sketch.add(v);
+		}
+		QuantileSketch copy = QuantileSketch.fromBytes(sketch.toBytes());
+		assertEquals(sketch.toString(), copy.toString());
+		for (double q = 0; q <= 1; q += 0.125) {
+			assertEquals(sketch.quantile(q), copy.quantile(q));
+		}
+		checkRanks(copy.add(N), N + 1);
+	}
+	
+	public void testCorruptBytes() {
+		QuantileSketch sketch = QuantileSketch.init();
+		for (int i = 0; i < 10000; i++) {
+			sketch.add(i);
+		}
+		byte[] bytes = sketch.toBytes();
+		// Offsets of n and of the number of levels
+		int nOffset = 1 + 4;
+		int levelsOffset = nOffset + 8 + 8 + 8;
+		for (int numLevels : new int[] {0, -1, 63, Integer.MAX_VALUE}) {
+			byte[] corrupt = bytes.clone();
+			ByteBuffer.wrap(corrupt).putInt(levelsOffset, numLevels);
+			assertThrows(IllegalArgumentException.class,
+					() -> QuantileSketch.fromBytes(corrupt));
+		}
+		for (int levelSize : new int[] {-1, 1 << 20, Integer.MAX_VALUE}) {
+			byte[] corrupt = bytes.clone();
+			ByteBuffer.wrap(corrupt).putInt(levelsOffset + 4, levelSize);
+			assertThrows(IllegalArgumentException.class,
+					() -> QuantileSketch.fromBytes(corrupt));
+		}
+		for (long n : new long[] {-1, 9999, 10001, Long.MAX_VALUE}) {
+			byte[] corrupt = bytes.clone();
+			ByteBuffer.wrap(corrupt).putLong(nOffset, n);
+			assertThrows(IllegalArgumentException.class,
+					() -> QuantileSketch.fromBytes(corrupt));
+		}
+		for (int length : new int[] {0, levelsOffset, bytes.length - 1}) {
+			byte[] truncated = Arrays.copyOf(bytes, length);
+			assertThrows(IllegalArgumentException.class,
+					() -> QuantileSketch.fromBytes(truncated));
+		}
+	}
+	
+	/**
+	 * Check that the ranks of the quantiles of the values 0 to n - 1 are 
+	 * within the error of the sketch
+	 * @param sketch
+	 * @param n
+	 */
+	protected static void checkRanks(QuantileSketch sketch, int n) {
+		double error = sketch.normalizedRankError();
+		for (int i = 1; i < 100; i++) {
+			double q = i / 100.0;
+			double rank = (sketch.quantile(q) + 1) / n;
+			assertTrue(Math.abs(rank - q) <= error, "quantile " + q
+					+ ": rank " + rank);
+			double cdf = sketch.cdf(q * n);
+			assertTrue(Math.abs(cdf - q) <= error, "cdf " + q + ": " + cdf);
+		}
+	}
+	
+	protected static int[] shuffled(int n, long seed) {
+		int[] values = new int[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = i;
+		}
+		Random random = new Random(seed);
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int t = values[i];
+			values[i] = values[j];
+			values[j] = t;
+		}
+		return values;
+	}
+
+}